@@ -0,0 +1,644 @@
+package datalist.index;
+
+import datalist.io.ChannelBuilder;
+import datalist.io.ReadBuffer;
+import datalist.io.WriteBuffer;
+import datalist.list.DatabaseBrokenError;
+import datalist.stream.FixedSizeDataStreamer;
+import datalist.types.Range;
+import datalist.types.SortedIntSet;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntConsumer;
+
+/**
+ * Page-based B+tree of (key, row) pairs. Unlike {@link SortedIndex}, new rows are inserted in place by
+ * {@link #append(KeyToIndexBuffer)}, so appending 1% of data touches about 1% of index pages.<br>
+ * Leaves keep pairs sorted by key, then by row and linked to the next leaf for range scans.
+ * {@link #recreate(KeyToIndexBuffer)} builds tree bottom-up, leaves are filled for 90% to leave place for inserts.<br>
+ * Pages are "datalist.btree_page_size" bytes (4KB by default), "datalist.btree_cache_pages" pages (1024 by default)
+ * are cached. Modified pages are written at the end of each append.<br><br>
+ *
+ * Implementation details: this index works only with fixed size values.<br><br>
+ *
+ * File structure:<br>
+ * page 0: 8 bytes for pairs count, 4 bytes for root page (-1 for empty index), 4 bytes for pages count,
+ * 4 bytes for count of indexed list rows<br>
+ * other pages: 1 byte leaf flag, 4 bytes for entries count, 4 bytes for next leaf, entries (key and row),
+ * children page numbers for inner page (entries count + 1)<br><br>
+ * Reads are thread-safe, append and recreate block readers. If storage fails, UncheckedIOException will be thrown.
+ * @param <T> the type of keys
+ * @author SergeyT
+ */
+public class BTreeIndex<T extends Comparable<T>> implements Index<T>, AutoCloseable
+{
+  private static final int PAGE_SIZE = Integer.getInteger("datalist.btree_page_size", 4096);
+  private static final int CACHE_PAGES = Integer.getInteger("datalist.btree_cache_pages", 1024);
+  private static final double FILL_FACTOR = 0.9;
+  private static final int PAGE_HEADER = 9;
+
+  private final FileChannel fc;
+  private final FixedSizeDataStreamer<T> keysHandler;
+  private final int pageSize;
+  private final int leafCapacity;
+  private final int innerCapacity;
+  private final Comparator<T> comparator = Comparator.nullsLast(Comparator.naturalOrder());
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private final LinkedHashMap<Integer, Page> cache = new LinkedHashMap<Integer, Page>(16, 0.75f, true)
+  {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Integer, Page> eldest)
+    {
+      return size() > CACHE_PAGES && !eldest.getValue().dirty;
+    }
+  };
+  private long size;
+  private int root = -1;
+  private int pages = 1; //meta page
+  private int indexedRows;
+
+  private final class Page
+  {
+    final int num;
+    final boolean leaf;
+    int count; //entries for leaf, separators for inner page
+    final Object[] keys;
+    final int[] rows;
+    final int[] children;
+    int next = -1;
+    boolean dirty;
+
+    Page(int num, boolean leaf)
+    {
+      this.num = num;
+      this.leaf = leaf;
+      int capacity = leaf ? leafCapacity : innerCapacity;
+      keys = new Object[capacity + 1]; //one more for overflow before split
+      rows = new int[capacity + 1];
+      children = leaf ? null : new int[capacity + 2];
+    }
+
+    @SuppressWarnings("unchecked")
+    T key(int i)
+    {
+      return (T)keys[i];
+    }
+
+    /** Returns count of entries less than (key, row), or not greater if 'inclusive' */
+    int position(T key, int row, boolean inclusive)
+    {
+      int low = 0;
+      int high = count;
+      while (low < high)
+      {
+        int middle = (low + high) >>> 1;
+        int cmp = compare(key(middle), rows[middle], key, row);
+        if (cmp < 0 || inclusive && cmp == 0)
+          low = middle + 1;
+        else
+          high = middle;
+      }
+      return low;
+    }
+  }
+
+  /** Result of page split: the first entry of right page goes to parent */
+  private final class Split
+  {
+    final T key;
+    final int row;
+    final Page right;
+
+    Split(T key, int row, Page right)
+    {
+      this.key = key;
+      this.row = row;
+      this.right = right;
+    }
+  }
+
+  public BTreeIndex(File storage, FixedSizeDataStreamer<T> keysHandler) throws IOException
+  {
+    this(storage, keysHandler, PAGE_SIZE);
+  }
+
+  BTreeIndex(File storage, FixedSizeDataStreamer<T> keysHandler, int pageSize) throws IOException
+  {
+    fc = ChannelBuilder.forReadWrite(storage).build();
+    this.keysHandler = keysHandler;
+    this.pageSize = pageSize;
+    leafCapacity = (pageSize - PAGE_HEADER) / (keysHandler.itemSize() + 4);
+    innerCapacity = (pageSize - PAGE_HEADER - 4) / (keysHandler.itemSize() + 8);
+    if (leafCapacity < 3 || innerCapacity < 3)
+      throw new IllegalArgumentException("Page size " + pageSize + " is too small for keys");
+    if (fc.size() >= 16)
+    {
+      try (ReadBuffer rdr = new ReadBuffer(fc, 20))
+      {
+        size = rdr.getLong();
+        root = rdr.getInt();
+        pages = rdr.getInt();
+        indexedRows = rdr.hasRemaining() ? rdr.getInt() : 0;
+      }
+    }
+  }
+
+  private int compare(T key1, int row1, T key2, int row2)
+  {
+    int cmp = comparator.compare(key1, key2);
+    return cmp != 0 ? cmp : Integer.compare(row1, row2);
+  }
+
+  private Page page(int num)
+  {
+    synchronized (cache)
+    {
+      Page res = cache.get(num);
+      if (res != null)
+        return res;
+    }
+    Page res = readPage(num);
+    synchronized (cache)
+    {
+      Page cached = cache.putIfAbsent(num, res);
+      return cached != null ? cached : res;
+    }
+  }
+
+  private Page readPage(int num)
+  {
+    try (ReadBuffer rdr = new ReadBuffer(fc, pageSize))
+    {
+      rdr.position((long)num * pageSize);
+      Page res = new Page(num, rdr.getByte() != 0);
+      res.count = rdr.getInt();
+      res.next = rdr.getInt();
+      if (res.count > res.keys.length - 1)
+        throw new DatabaseBrokenError("Wrong entries count " + res.count + " at page " + num);
+      for (int i = 0; i < res.count; ++i)
+      {
+        res.keys[i] = keysHandler.read(rdr);
+        res.rows[i] = rdr.getInt();
+      }
+      if (!res.leaf)
+        for (int i = 0; i <= res.count; ++i)
+          res.children[i] = rdr.getInt();
+      return res;
+    }
+  }
+
+  private void writePage(WriteBuffer writer, Page page)
+  {
+    writer.position((long)page.num * pageSize);
+    writer.put((byte)(page.leaf ? 1 : 0));
+    writer.putInt(page.count);
+    writer.putInt(page.next);
+    for (int i = 0; i < page.count; ++i)
+    {
+      keysHandler.write(writer, page.key(i));
+      writer.putInt(page.rows[i]);
+    }
+    if (!page.leaf)
+      for (int i = 0; i <= page.count; ++i)
+        writer.putInt(page.children[i]);
+    page.dirty = false;
+  }
+
+  private void writeMeta(WriteBuffer writer)
+  {
+    writer.position(0);
+    writer.putLong(size);
+    writer.putInt(root);
+    writer.putInt(pages);
+    writer.putInt(indexedRows);
+  }
+
+  private Page newPage(boolean leaf)
+  {
+    Page res = new Page(pages++, leaf);
+    markDirty(res);
+    return res;
+  }
+
+  /** Page is returned to cache, it might be evicted while it was clean */
+  private void markDirty(Page page)
+  {
+    page.dirty = true;
+    synchronized (cache)
+    {
+      cache.put(page.num, page);
+    }
+  }
+
+  /** Write modified pages and evict pages over cache limit */
+  private void flush()
+  {
+    synchronized (cache)
+    {
+      try (WriteBuffer writer = new WriteBuffer(fc, -1))
+      {
+        cache.values().stream().filter(x -> x.dirty).sorted(Comparator.comparingInt(x -> x.num))
+          .forEachOrdered(x -> writePage(writer, x));
+        writeMeta(writer);
+      }
+      Iterator<Page> it = cache.values().iterator();
+      for (int i = cache.size() - CACHE_PAGES; i > 0; --i)
+      {
+        it.next();
+        it.remove();
+      }
+    }
+  }
+
+  @Override
+  public boolean canAppend()
+  {
+    return true;
+  }
+
+  @Override
+  public int indexedRows()
+  {
+    return indexedRows;
+  }
+
+  @Override
+  public void setIndexedRows(int rows)
+  {
+    lock.writeLock().lock();
+    try (WriteBuffer writer = new WriteBuffer(fc, 32))
+    {
+      indexedRows = rows;
+      writeMeta(writer);
+    }
+    finally
+    {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** Insert pairs of new rows */
+  @Override
+  public void append(KeyToIndexBuffer<T> values)
+  {
+    values.sort();
+    lock.writeLock().lock();
+    try
+    {
+      PrimitiveIterator.OfInt rows = values.rows();
+      for (int i = 0; i < values.keysCount(); ++i)
+      {
+        T key = values.key(i);
+        for (int cnt = values.count(i); cnt > 0; --cnt)
+          insert(key, rows.nextInt());
+      }
+      flush();
+    }
+    finally
+    {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void insert(T key, int row)
+  {
+    if (root < 0)
+      root = newPage(true).num;
+    Split split = insert(page(root), key, row);
+    if (split != null)
+    {
+      Page newRoot = newPage(false);
+      newRoot.count = 1;
+      newRoot.keys[0] = split.key;
+      newRoot.rows[0] = split.row;
+      newRoot.children[0] = root;
+      newRoot.children[1] = split.right.num;
+      root = newRoot.num;
+    }
+    ++size;
+  }
+
+  /** Insert pair to subtree. Returns split of page or null */
+  private Split insert(Page page, T key, int row)
+  {
+    int pos = page.position(key, row, true);
+    if (page.leaf)
+    {
+      insertEntry(page, pos, key, row);
+      return page.count > leafCapacity ? splitLeaf(page) : null;
+    }
+    Split child = insert(page(page.children[pos]), key, row);
+    if (child == null)
+      return null;
+    insertEntry(page, pos, child.key, child.row);
+    System.arraycopy(page.children, pos + 1, page.children, pos + 2, page.count - pos - 1);
+    page.children[pos + 1] = child.right.num;
+    return page.count > innerCapacity ? splitInner(page) : null;
+  }
+
+  private void insertEntry(Page page, int pos, T key, int row)
+  {
+    System.arraycopy(page.keys, pos, page.keys, pos + 1, page.count - pos);
+    System.arraycopy(page.rows, pos, page.rows, pos + 1, page.count - pos);
+    page.keys[pos] = key;
+    page.rows[pos] = row;
+    ++page.count;
+    markDirty(page);
+  }
+
+  private Split splitLeaf(Page page)
+  {
+    Page right = newPage(true);
+    int half = page.count / 2;
+    right.count = page.count - half;
+    System.arraycopy(page.keys, half, right.keys, 0, right.count);
+    System.arraycopy(page.rows, half, right.rows, 0, right.count);
+    page.count = half;
+    right.next = page.next;
+    page.next = right.num;
+    return new Split(right.key(0), right.rows[0], right);
+  }
+
+  private Split splitInner(Page page)
+  {
+    Page right = newPage(false);
+    int half = page.count / 2; //this separator goes to parent
+    right.count = page.count - half - 1;
+    System.arraycopy(page.keys, half + 1, right.keys, 0, right.count);
+    System.arraycopy(page.rows, half + 1, right.rows, 0, right.count);
+    System.arraycopy(page.children, half + 1, right.children, 0, right.count + 1);
+    page.count = half;
+    return new Split(page.key(half), page.rows[half], right);
+  }
+
+  @Override
+  public void recreate(KeyToIndexBuffer<T> values)
+  {
+    values.sort();
+    lock.writeLock().lock();
+    try
+    {
+      doClear();
+      if (values.size() == 0)
+        return;
+      try (WriteBuffer writer = new WriteBuffer(fc, -1).sequential())
+      {
+        //leaves, then each level of inner pages. Entries are the first pairs of pages of the level
+        List<Object> levelKeys = new ArrayList<>();
+        List<Integer> levelRows = new ArrayList<>();
+        List<Integer> levelPages = new ArrayList<>();
+        int fill = Math.max((int)(leafCapacity * FILL_FACTOR), 2);
+        Page leaf = null;
+        PrimitiveIterator.OfInt rows = values.rows();
+        for (int i = 0; i < values.keysCount(); ++i)
+        {
+          T key = values.key(i);
+          for (int cnt = values.count(i); cnt > 0; --cnt)
+          {
+            if (leaf == null || leaf.count == fill)
+            {
+              Page prev = leaf;
+              leaf = new Page(pages++, true);
+              if (prev != null)
+              {
+                prev.next = leaf.num;
+                writePage(writer, prev);
+              }
+              levelPages.add(leaf.num);
+            }
+            leaf.keys[leaf.count] = key;
+            leaf.rows[leaf.count] = rows.nextInt();
+            if (leaf.count++ == 0)
+            {
+              levelKeys.add(key);
+              levelRows.add(leaf.rows[0]);
+            }
+            ++size;
+          }
+        }
+        writePage(writer, leaf);
+
+        fill = Math.max((int)(innerCapacity * FILL_FACTOR), 2);
+        while (levelPages.size() > 1)
+        {
+          List<Object> upKeys = new ArrayList<>();
+          List<Integer> upRows = new ArrayList<>();
+          List<Integer> upPages = new ArrayList<>();
+          for (int from = 0; from < levelPages.size(); from += fill + 1)
+          {
+            int till = Math.min(from + fill + 1, levelPages.size());
+            Page inner = new Page(pages++, false);
+            for (int i = from; i < till; ++i)
+            {
+              if (i > from)
+              {
+                inner.keys[inner.count] = levelKeys.get(i);
+                inner.rows[inner.count] = levelRows.get(i);
+                ++inner.count;
+              }
+              inner.children[i - from] = levelPages.get(i);
+            }
+            writePage(writer, inner);
+            upKeys.add(levelKeys.get(from));
+            upRows.add(levelRows.get(from));
+            upPages.add(inner.num);
+          }
+          levelKeys = upKeys;
+          levelRows = upRows;
+          levelPages = upPages;
+        }
+        root = levelPages.get(0);
+        writeMeta(writer);
+      }
+    }
+    finally
+    {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void clear()
+  {
+    lock.writeLock().lock();
+    try
+    {
+      doClear();
+    }
+    finally
+    {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void doClear()
+  {
+    try
+    {
+      fc.truncate(0);
+    }
+    catch (IOException ex)
+    {
+      throw new UncheckedIOException(ex);
+    }
+    synchronized (cache)
+    {
+      cache.clear();
+    }
+    size = 0;
+    root = -1;
+    pages = 1;
+    indexedRows = 0;
+  }
+
+  public boolean isEmpty()
+  {
+    return size == 0;
+  }
+
+  /** Call 'action' for each row of keys from 'min' to 'max'. Returns count of rows */
+  private int scan(T min, T max, IntConsumer action)
+  {
+    lock.readLock().lock();
+    try
+    {
+      if (root < 0)
+        return 0;
+      Page page = page(root);
+      while (!page.leaf)
+        page = page(page.children[page.position(min, Integer.MIN_VALUE, true)]);
+      int res = 0;
+      int pos = page.position(min, Integer.MIN_VALUE, false);
+      while (true)
+      {
+        for (; pos < page.count; ++pos)
+        {
+          if (comparator.compare(page.key(pos), max) > 0)
+            return res;
+          if (action != null)
+            action.accept(page.rows[pos]);
+          ++res;
+        }
+        if (page.next < 0)
+          return res;
+        page = page(page.next);
+        pos = 0;
+      }
+    }
+    finally
+    {
+      lock.readLock().unlock();
+    }
+  }
+
+  private SortedIntSet doValuesFor(T min, T max)
+  {
+    if ((min == null) != (max == null))
+      throw new IllegalStateException();
+    SortedIntSet res = new SortedIntSet();
+    scan(min, max, res::add);
+    return res;
+  }
+
+  private void checkRange(T min, T max)
+  {
+    if (min == null || max == null)
+      throw new IllegalArgumentException("Range with nulls not allowed");
+    if (comparator.compare(min, max) > 0)
+      throw new IllegalArgumentException("Inverse range");
+  }
+
+  @Override
+  public SortedIntSet valuesFor(T key)
+  {
+    return doValuesFor(key, key);
+  }
+
+  @Override
+  public SortedIntSet valuesFor(T min, T max)
+  {
+    checkRange(min, max);
+    return doValuesFor(min, max);
+  }
+
+  @Override
+  public SortedIntSet valuesFor(Collection<T> keys)
+  {
+    List<SortedIntSet> found = new ArrayList<>(keys.size());
+    for (T key: keys)
+      found.add(doValuesFor(key, key));
+    return SortedIntSet.unionAll(found);
+  }
+
+  @Override
+  public SortedIntSet valuesFor(Range<T>... ranges)
+  {
+    List<SortedIntSet> found = new ArrayList<>(ranges.length);
+    for (Range<T> range: ranges)
+      found.add(doValuesFor(range.getMin(), range.getMax()));
+    return SortedIntSet.unionAll(found);
+  }
+
+  @Override
+  public int countFor(T key)
+  {
+    return scan(key, key, null);
+  }
+
+  @Override
+  public int countFor(T min, T max)
+  {
+    checkRange(min, max);
+    return scan(min, max, null);
+  }
+
+  @Override
+  public List<T> allKeys(boolean includeNull)
+  {
+    List<T> res = new ArrayList<>();
+    lock.readLock().lock();
+    try
+    {
+      if (root < 0)
+        return res;
+      Page page = page(root);
+      while (!page.leaf)
+        page = page(page.children[0]);
+      while (true)
+      {
+        for (int i = 0; i < page.count; ++i)
+        {
+          T key = page.key(i);
+          if ((res.isEmpty() || !Objects.equals(res.get(res.size() - 1), key)) && (includeNull || key != null))
+            res.add(key);
+        }
+        if (page.next < 0)
+          return res;
+        page = page(page.next);
+      }
+    }
+    finally
+    {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    fc.close();
+  }
+}
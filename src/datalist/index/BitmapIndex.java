@@ -0,0 +1,303 @@
+package datalist.index;
+
+import datalist.io.ChannelBuilder;
+import datalist.io.ReadBuffer;
+import datalist.io.WriteBuffer;
+import datalist.list.DatabaseBrokenError;
+import datalist.stream.DBDataStreamer;
+import datalist.types.IntBitmap;
+import datalist.types.Range;
+import datalist.types.SortedIntSet;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.function.Predicate;
+import static java.util.Comparator.comparing;
+import static java.util.Comparator.naturalOrder;
+import static java.util.Comparator.nullsLast;
+
+/**
+ * This index loads all keys to RAM and keeps compressed bitmap ({@link IntBitmap}) of rows for each key.
+ * Useful for enum-like fields with few key values (enums, flags). Found rows are bitmap-backed {@link SortedIntSet},
+ * so few keys are united by bitmap OR and intersections with other results works with bitmaps too.<br><br>
+ *
+ * File structure:<br>
+ * 4 bytes for header size, 4 bytes for keys count<br>
+ * for each key: key, 8 bytes for bitmap offset (after header), 4 bytes for bitmap size, 4 bytes for rows count<br>
+ * bitmaps<br><br>
+ * If storage fails, UncheckedIOException will be thrown.
+ * @param <T> the type of keys
+ * @author SergeyT
+ */
+public class BitmapIndex<T extends Comparable<T>> implements Index<T>, AutoCloseable
+{
+  private static final int buffSizeR = Integer.getInteger("setindex_read_buffer_size", -1);
+  private static final int buffSizeW = Integer.getInteger("setindex_write_buffer_size", -1);
+
+  private final Comparator<KeyWithBitmap<T>> comparator = comparing(kb -> kb.key, nullsLast(naturalOrder()));
+  private final FileChannel fc;
+  private final DBDataStreamer<T> keysHandler;
+  private volatile List<KeyWithBitmap<T>> keys;
+  private volatile int headerSize;
+
+  public BitmapIndex(File storage, DBDataStreamer<T> keysHandler) throws IOException
+  {
+    fc = ChannelBuilder.forReadWrite(storage).build();
+    this.keysHandler = keysHandler;
+    keys = fc.size() == 0 ? Collections.emptyList() : loadKeys();
+  }
+
+  private List<KeyWithBitmap<T>> loadKeys()
+  {
+    try (ReadBuffer reader = new ReadBuffer(fc, buffSizeR).sequential())
+    {
+      headerSize = reader.getInt();
+      int keysCount = reader.getInt();
+      List<KeyWithBitmap<T>> res = new ArrayList<>(keysCount);
+      while (--keysCount >= 0)
+        res.add(new KeyWithBitmap<>(keysHandler.read(reader), reader.getLong(), reader.getInt(), reader.getInt()));
+      return Collections.unmodifiableList(res);
+    }
+  }
+
+  @Override
+  public void recreate(KeyToIndexBuffer<T> values)
+  {
+    values.sort();
+    try
+    {
+      fc.truncate(0);
+    }
+    catch (IOException ex)
+    {
+      throw new UncheckedIOException(ex);
+    }
+    int keysCount = values.keysCount();
+    List<IntBitmap> bitmaps = new ArrayList<>(keysCount);
+    List<KeyWithBitmap<T>> res = new ArrayList<>(keysCount);
+    PrimitiveIterator.OfInt rows = values.rows();
+    long offs = 0;
+    for (int i = 0; i < keysCount; ++i)
+    {
+      int[] keyRows = new int[values.count(i)];
+      int cnt = 0;
+      for (int j = 0; j < keyRows.length; ++j)
+      {
+        int row = rows.nextInt();
+        if (cnt == 0 || keyRows[cnt - 1] != row) //the same row for multicast index
+          keyRows[cnt++] = row;
+      }
+      IntBitmap bitmap = IntBitmap.of(keyRows, 0, cnt);
+      bitmaps.add(bitmap);
+      res.add(new KeyWithBitmap<>(values.key(i), offs, bitmap.serializedSize(), cnt));
+      offs += bitmap.serializedSize();
+    }
+
+    try (WriteBuffer writer = new WriteBuffer(fc, buffSizeW).sequential())
+    {
+      writer.putInt(-1); //not calculated header size
+      writer.putInt(keysCount);
+      for (KeyWithBitmap<T> key: res)
+      {
+        keysHandler.write(writer, key.key);
+        writer.putLong(key.offset);
+        writer.putInt(key.bytes);
+        writer.putInt(key.count);
+      }
+      int newHeaderSize = (int)writer.position();
+      for (IntBitmap bitmap: bitmaps)
+      {
+        ByteBuffer bb = ByteBuffer.allocate(bitmap.serializedSize());
+        bitmap.writeTo(bb);
+        bb.flip();
+        writer.put(bb);
+      }
+      writer.position(0);
+      writer.putInt(newHeaderSize);
+      headerSize = newHeaderSize;
+    }
+    keys = Collections.unmodifiableList(res);
+  }
+
+  @Override
+  public void clear()
+  {
+    try
+    {
+      fc.truncate(0);
+    }
+    catch (IOException ex)
+    {
+      throw new UncheckedIOException(ex);
+    }
+    keys = Collections.emptyList();
+  }
+
+  @Override
+  public List<T> allKeys(boolean includeNull)
+  {
+    List<T> res = new ArrayList<>(keys.size());
+    for (KeyWithBitmap<T> key: keys)
+      if (includeNull || key.key != null)
+        res.add(key.key);
+    return res;
+  }
+
+  private KeyWithBitmap<T> find(List<KeyWithBitmap<T>> all, T key)
+  {
+    int idx = Collections.binarySearch(all, new KeyWithBitmap<>(key, 0, 0, 0), comparator);
+    return idx < 0 ? null : all.get(idx);
+  }
+
+  private IntBitmap read(ReadBuffer rdr, int header, KeyWithBitmap<T> key)
+  {
+    ByteBuffer bb = ByteBuffer.allocate(key.bytes);
+    rdr.position(header + key.offset);
+    try
+    {
+      rdr.get(bb);
+      bb.flip();
+      return IntBitmap.readFrom(bb);
+    }
+    catch (RuntimeException ex)
+    {
+      throw new DatabaseBrokenError("Wrong bitmap of key " + key.key, ex);
+    }
+  }
+
+  /** Returns union of bitmaps for keys */
+  private SortedIntSet union(List<KeyWithBitmap<T>> found)
+  {
+    if (found.isEmpty())
+      return SortedIntSet.empty();
+    int header = headerSize;
+    try (ReadBuffer rdr = new ReadBuffer(fc, buffSizeR))
+    {
+      IntBitmap res = null;
+      for (KeyWithBitmap<T> key: found)
+      {
+        IntBitmap bitmap = read(rdr, header, key);
+        res = res == null ? bitmap : res.or(bitmap);
+      }
+      return SortedIntSet.wrap(res);
+    }
+  }
+
+  /** Returns keys satisfying 'filter' */
+  private List<KeyWithBitmap<T>> select(Predicate<T> filter)
+  {
+    List<KeyWithBitmap<T>> res = new ArrayList<>();
+    for (KeyWithBitmap<T> key: keys)
+      if (filter.test(key.key))
+        res.add(key);
+    return res;
+  }
+
+  @Override
+  public SortedIntSet valuesFor(T key)
+  {
+    KeyWithBitmap<T> found = find(keys, key);
+    return found == null ? SortedIntSet.empty() : union(Collections.singletonList(found));
+  }
+
+  @Override
+  public SortedIntSet valuesFor(Collection<T> keys)
+  {
+    List<KeyWithBitmap<T>> all = this.keys;
+    List<KeyWithBitmap<T>> found = new ArrayList<>(keys.size());
+    for (T key: keys)
+    {
+      KeyWithBitmap<T> item = find(all, key);
+      if (item != null && !found.contains(item))
+        found.add(item);
+    }
+    return union(found);
+  }
+
+  @Override
+  public SortedIntSet valuesFor(T min, T max)
+  {
+    checkRange(min, max);
+    return union(select(key -> key != null && key.compareTo(min) >= 0 && key.compareTo(max) <= 0));
+  }
+
+  @Override
+  public SortedIntSet valuesFor(Range<T>... ranges)
+  {
+    return union(select(key ->
+    {
+      if (key != null)
+        for (Range<T> range: ranges)
+          if (range.includeValue(key))
+            return true;
+      return false;
+    }));
+  }
+
+  /** Returns all rows for keys satisfying 'filter' (null key is tested too) */
+  public SortedIntSet valuesFor(Predicate<T> filter)
+  {
+    return union(select(filter));
+  }
+
+  @Override
+  public int countFor(T key)
+  {
+    KeyWithBitmap<T> found = find(keys, key);
+    return found == null ? 0 : found.count;
+  }
+
+  @Override
+  public int countFor(T min, T max)
+  {
+    checkRange(min, max);
+    int res = 0;
+    for (KeyWithBitmap<T> key: select(key -> key != null && key.compareTo(min) >= 0 && key.compareTo(max) <= 0))
+      res += key.count;
+    return res;
+  }
+
+  private static <T extends Comparable<T>> void checkRange(T min, T max)
+  {
+    if (min == null || max == null)
+      throw new IllegalArgumentException("Range with nulls not allowed");
+    if (min.compareTo(max) > 0)
+      throw new IllegalArgumentException("Inverse range");
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    fc.close();
+  }
+
+  private static final class KeyWithBitmap<T extends Comparable<T>>
+  {
+    final T key;
+    final long offset;
+    final int bytes;
+    final int count;
+
+    KeyWithBitmap(T key, long offset, int bytes, int count)
+    {
+      this.key = key;
+      this.offset = offset;
+      this.bytes = bytes;
+      this.count = count;
+    }
+
+    @Override
+    public String toString()
+    {
+      return key + " -> from " + offset + ", " + count + " items";
+    }
+  }
+}
@@ -0,0 +1,272 @@
+package datalist.index;
+
+import datalist.io.ChannelBuilder;
+import datalist.io.ReadBuffer;
+import datalist.io.WriteBuffer;
+import datalist.stream.FixedSizeDataStreamer;
+import datalist.types.SortedIntSet;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.function.IntFunction;
+
+/**
+ * Index of keys like {@link SortedIndex}, that keeps extra fixed size value (for example, {@link datalist.types.Tuple}
+ * of few fields) of each row after row numbers. {@link #entriesFor(Comparable, Comparable)} returns rows with keys and
+ * extra values without reading of data file. Use {@link datalist.list.DataList#withCoveringIndex} to add it to list.<br>
+ * It is not {@link Index}, because it could not be recreated by key-row pairs only, extra values are required.
+ * Use {@link datalist.list.DataList#where(CoveringIndex, Comparable)} to filter rows by it.<br><br>
+ *
+ * File structure:<br>
+ * structure of {@link SortedIndex}<br>
+ * count*sizeof(extra) for extra values, in the same order as rows
+ * @param <T> the type of keys
+ * @param <V> the type of extra values
+ * @author SergeyT
+ */
+public class CoveringIndex<T extends Comparable<T>, V> implements AutoCloseable
+{
+  private final SortedIndex<T> index;
+  private final FixedSizeDataStreamer<V> extrasHandler;
+
+  public CoveringIndex(File storage, FixedSizeDataStreamer<T> keysHandler, FixedSizeDataStreamer<V> extrasHandler) throws IOException
+  {
+    this.index = new SortedIndex<>(storage, keysHandler);
+    this.extrasHandler = extrasHandler;
+  }
+
+  /**
+   * Recreates index by buffer 'values' and extra values of rows.<br><br>
+   * <strong>You must guarantee that no one reads the data in the process of rebuild index.</strong>
+   */
+  public void recreate(KeyToIndexBuffer<T> values, IntFunction<V> extraForRow)
+  {
+    index.recreate(values);
+    try (WriteBuffer writer = new WriteBuffer(index.fc, SortedIndex.buffSizeW).sequential())
+    {
+      writer.position(extrasOffset());
+      for (PrimitiveIterator.OfInt it = values.rows(); it.hasNext();)
+        extrasHandler.write(writer, extraForRow.apply(it.nextInt()));
+      writer.truncateTail();
+    }
+  }
+
+  /**
+   * Recreates index by buffer 'values' and extra values of rows, collected to 'extras'.
+   * Extra values are copied as bytes, they are not read to java heap.<br><br>
+   * <strong>You must guarantee that no one reads the data in the process of rebuild index.</strong>
+   */
+  public void recreate(KeyToIndexBuffer<T> values, Extras extras)
+  {
+    index.recreate(values);
+    byte[] extra = new byte[extrasHandler.itemSize()];
+    try (WriteBuffer writer = new WriteBuffer(index.fc, SortedIndex.buffSizeW).sequential();
+         ReadBuffer reader = new ReadBuffer(extras.fc, SortedIndex.buffSizeR))
+    {
+      writer.position(extrasOffset());
+      for (PrimitiveIterator.OfInt it = values.rows(); it.hasNext();)
+      {
+        int row = it.nextInt();
+        if (row < extras.from || row >= extras.till)
+          throw new IllegalArgumentException("No extra value for row " + row);
+        reader.position((long)(row - extras.from) * extra.length);
+        reader.get(extra);
+        writer.put(extra);
+      }
+      writer.truncateTail();
+    }
+  }
+
+  /** Clear whole index */
+  public void clear()
+  {
+    index.clear();
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    index.close();
+  }
+
+  /** Returns count of key-row pairs */
+  public long pairsCount()
+  {
+    return index.pairsCount();
+  }
+
+  /** Returns all rows for key */
+  public SortedIntSet valuesFor(T key)
+  {
+    return index.valuesFor(key);
+  }
+
+  /** Returns all rows for range (inclusive) */
+  public SortedIntSet valuesFor(T min, T max)
+  {
+    return index.valuesFor(min, max);
+  }
+
+  /** Returns count of rows for key. Rows are not read */
+  public int countFor(T key)
+  {
+    return index.countFor(key);
+  }
+
+  /** Returns count of rows for range (inclusive). Rows are not read */
+  public int countFor(T min, T max)
+  {
+    return index.countFor(min, max);
+  }
+
+  /** Returns all keys
+   * @param includeNull helps you avoid NullPointerException (removes null value)
+   */
+  public List<T> allKeys(boolean includeNull)
+  {
+    return index.allKeys(includeNull);
+  }
+
+  /** Creates temporary storage for extra values of rows [from, till) */
+  public Extras newExtras(int from, int till)
+  {
+    return new Extras(from, till);
+  }
+
+  private long extrasOffset()
+  {
+    return 8 + index.pairsCount() * (index.keysHandler.itemSize() + 4);
+  }
+
+  /** Returns rows, keys and extra values for key (null is allowed) */
+  public List<Entry<T, V>> entriesFor(T key)
+  {
+    return doEntriesFor(key, key);
+  }
+
+  /** Returns rows, keys and extra values for range (inclusive) in order of keys */
+  public List<Entry<T, V>> entriesFor(T min, T max)
+  {
+    if (min == null || max == null)
+      throw new IllegalArgumentException("Range with nulls not allowed");
+    return doEntriesFor(min, max);
+  }
+
+  private List<Entry<T, V>> doEntriesFor(T min, T max)
+  {
+    FixedSizeDataStreamer<T> keysHandler = index.keysHandler;
+    long[] range;
+    try (ReadBuffer rdr = new ReadBuffer(index.fc, SortedIndex.buffSizeR))
+    {
+      range = index.findRange(rdr, min, max);
+    }
+    int cnt = (int)(range[1] - range[0]);
+    List<Entry<T, V>> res = new ArrayList<>(cnt);
+    try (ReadBuffer keys = new ReadBuffer(index.fc, SortedIndex.buffSizeR);
+         ReadBuffer rows = new ReadBuffer(index.fc, SortedIndex.buffSizeR);
+         ReadBuffer extras = new ReadBuffer(index.fc, SortedIndex.buffSizeR))
+    {
+      keys.position(8 + range[0] * keysHandler.itemSize());
+      rows.position(8 + index.pairsCount() * keysHandler.itemSize() + range[0] * 4);
+      extras.position(extrasOffset() + range[0] * extrasHandler.itemSize());
+      for (int i = 0; i < cnt; ++i)
+        res.add(new Entry<>(rows.getInt(), keysHandler.read(keys), extrasHandler.read(extras)));
+    }
+    return res;
+  }
+
+  /**
+   * Extra values of rows [from, till), stored at temporary file with fixed stride before
+   * {@link CoveringIndex#recreate(KeyToIndexBuffer, Extras)}. Few threads might write own ranges of rows:
+   * each thread writes sequential rows by own {@link #writer(int)}. File is deleted on close.
+   */
+  public final class Extras implements AutoCloseable
+  {
+    private final FileChannel fc;
+    private final int from;
+    private final int till;
+
+    private Extras(int from, int till)
+    {
+      this.from = from;
+      this.till = till;
+      try
+      {
+        fc = ChannelBuilder.temporary("datalist-extras-", ".tmp").forRead().forWrite().build();
+      }
+      catch (IOException ex)
+      {
+        throw new UncheckedIOException(ex);
+      }
+    }
+
+    /** Returns writer positioned at 'row'. Close it after writing */
+    public WriteBuffer writer(int row)
+    {
+      if (row < from || row > till)
+        throw new IndexOutOfBoundsException("Row " + row + " is out of [" + from + ", " + till + ")");
+      WriteBuffer res = new WriteBuffer(fc, SortedIndex.buffSizeW).sequential();
+      res.position((long)(row - from) * extrasHandler.itemSize());
+      return res;
+    }
+
+    /** Write extra value of the next row */
+    public void write(WriteBuffer writer, V value)
+    {
+      extrasHandler.write(writer, value);
+    }
+
+    @Override
+    public void close()
+    {
+      try
+      {
+        fc.close();
+      }
+      catch (IOException ex)
+      {
+        throw new UncheckedIOException(ex);
+      }
+    }
+  }
+
+  /** Row of index with key and extra value */
+  public static final class Entry<T, V>
+  {
+    private final int row;
+    private final T key;
+    private final V extra;
+
+    Entry(int row, T key, V extra)
+    {
+      this.row = row;
+      this.key = key;
+      this.extra = extra;
+    }
+
+    public int getRow()
+    {
+      return row;
+    }
+
+    public T getKey()
+    {
+      return key;
+    }
+
+    public V getExtra()
+    {
+      return extra;
+    }
+
+    @Override
+    public String toString()
+    {
+      return row + ": " + key + " -> " + extra;
+    }
+  }
+}
@@ -0,0 +1,429 @@
+package datalist.index;
+
+import datalist.io.ChannelBuilder;
+import datalist.io.ReadBuffer;
+import datalist.io.WriteBuffer;
+import datalist.list.DatabaseBrokenError;
+import datalist.stream.FixedSizeDataStreamer;
+import datalist.types.LongIntMap;
+import datalist.types.Range;
+import datalist.types.SortedIntSet;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.PrimitiveIterator;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Predicate;
+
+/**
+ * Persistent hash table of (key, row) pairs for equality lookups, designed for unique keys (IDs).
+ * {@link #valuesFor(Object)} reads a few neighbouring slots instead of binary search at {@link SortedIndex}.<br>
+ * Table uses open addressing with linear probing, it is kept at most half full. {@link #append(KeyToIndexBuffer)}
+ * inserts pairs in place, table is rebuilt with doubled capacity when it becomes too full.<br>
+ * Range requests scan whole table, use {@link SortedIndex} for them.<br><br>
+ *
+ * Implementation details: this index works only with fixed size values. Key's hashCode() should not depend on JVM
+ * instance (numbers and strings are fine, enums are not).<br><br>
+ *
+ * File structure:<br>
+ * 4 bytes for capacity (power of 2), 8 bytes for pairs count, 4 bytes for count of indexed list rows<br>
+ * slots: 4 bytes for hash, 4 bytes for row + 1 (0 for empty slot), key. Pairs, which do not fit to the last slots,
+ * are stored after capacity slots.<br><br>
+ * Reads are thread-safe, append and recreate block readers. If storage fails, UncheckedIOException will be thrown.
+ * @param <T> the type of keys
+ * @author SergeyT
+ */
+public class HashIndex<T extends Comparable<T>> implements Index<T>, AutoCloseable
+{
+  private static final int HEADER_SIZE = 16;
+  private static final int MIN_CAPACITY = 16;
+
+  private final FileChannel fc;
+  private final FixedSizeDataStreamer<T> keysHandler;
+  private final int slotSize;
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private int capacity;
+  private long size;
+  private long slots; //capacity and overflow slots
+  private int indexedRows;
+
+  public HashIndex(File storage, FixedSizeDataStreamer<T> keysHandler) throws IOException
+  {
+    fc = ChannelBuilder.forReadWrite(storage).build();
+    this.keysHandler = keysHandler;
+    slotSize = 8 + keysHandler.itemSize();
+    if (fc.size() > 0)
+      try (ReadBuffer rdr = new ReadBuffer(fc, HEADER_SIZE))
+      {
+        capacity = rdr.getInt();
+        size = rdr.getLong();
+        indexedRows = rdr.getInt();
+        slots = (fc.size() - HEADER_SIZE) / slotSize;
+        if (Integer.bitCount(capacity) != 1 || slots < capacity)
+          throw new DatabaseBrokenError("Wrong hash index " + storage + ", capacity " + capacity);
+      }
+  }
+
+  private static int hash(Object key)
+  {
+    int h = Objects.hashCode(key) * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  private long slotPosition(long slot)
+  {
+    return HEADER_SIZE + slot * slotSize;
+  }
+
+  private static int capacityFor(long pairs)
+  {
+    if (pairs > 1 << 29)
+      throw new IllegalArgumentException("Too many pairs for hash index: " + pairs);
+    int res = MIN_CAPACITY;
+    while (res < pairs * 2)
+      res <<= 1;
+    return res;
+  }
+
+  @Override
+  public void recreate(KeyToIndexBuffer<T> values)
+  {
+    lock.writeLock().lock();
+    try
+    {
+      indexedRows = 0;
+      write(values.sort());
+    }
+    finally
+    {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** Write all pairs to new table. Should be called under write lock */
+  private void write(KeyToIndexBuffer<T> values)
+  {
+    int keys = values.keysCount();
+    int newCapacity = capacityFor(values.size());
+    //keys are placed in order of home slots, so table is written sequentially
+    long[] order = new long[keys];
+    int[] firstRow = new int[keys + 1];
+    int[] hashes = new int[keys];
+    for (int i = 0; i < keys; ++i)
+    {
+      hashes[i] = hash(values.key(i));
+      order[i] = (long)(hashes[i] & (newCapacity - 1)) << 32 | i;
+      firstRow[i + 1] = firstRow[i] + values.count(i);
+    }
+    Arrays.parallelSort(order);
+    int[] rows = new int[firstRow[keys]];
+    PrimitiveIterator.OfInt it = values.rows();
+    for (int i = 0; i < rows.length; ++i)
+      rows[i] = it.nextInt();
+
+    byte[] emptyKey = new byte[keysHandler.itemSize()];
+    try
+    {
+      fc.truncate(0);
+      try (WriteBuffer writer = new WriteBuffer(fc, -1).sequential())
+      {
+        writer.putInt(newCapacity);
+        writer.putLong(rows.length);
+        writer.putInt(indexedRows);
+        long next = 0;
+        for (long item: order)
+        {
+          int key = (int)item;
+          for (long home = item >>> 32; next < home; ++next)
+            writeSlot(writer, 0, -1, emptyKey, null);
+          for (int i = firstRow[key]; i < firstRow[key + 1]; ++i, ++next)
+            writeSlot(writer, hashes[key], rows[i], null, values.key(key));
+        }
+        for (; next < newCapacity; ++next)
+          writeSlot(writer, 0, -1, emptyKey, null);
+        capacity = newCapacity;
+        size = rows.length;
+        slots = next;
+      }
+    }
+    catch (IOException ex)
+    {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  private void writeSlot(WriteBuffer writer, int hash, int row, byte[] emptyKey, T key)
+  {
+    writer.putInt(hash);
+    writer.putInt(row + 1);
+    if (emptyKey != null)
+      writer.put(emptyKey);
+    else
+      keysHandler.write(writer, key);
+  }
+
+  @Override
+  public boolean canAppend()
+  {
+    return true;
+  }
+
+  @Override
+  public int indexedRows()
+  {
+    return indexedRows;
+  }
+
+  /** Rows are saved to header, so empty index should be recreated before */
+  @Override
+  public void setIndexedRows(int rows)
+  {
+    lock.writeLock().lock();
+    try (WriteBuffer writer = new WriteBuffer(fc, HEADER_SIZE))
+    {
+      if (capacity == 0)
+        return;
+      indexedRows = rows;
+      writer.position(12);
+      writer.putInt(rows);
+    }
+    finally
+    {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** Insert pairs to free slots. Table is rebuilt when it becomes more than half full */
+  @Override
+  public void append(KeyToIndexBuffer<T> values)
+  {
+    values.sort();
+    lock.writeLock().lock();
+    try
+    {
+      if (capacityFor(size + values.size()) > capacity)
+      {
+        try (KeyToIndexBuffer<T> all = new KeyToIndexBuffer<>())
+        {
+          forEachPair(all::add);
+          PrimitiveIterator.OfInt rows = values.rows();
+          for (int i = 0; i < values.keysCount(); ++i)
+            for (int cnt = values.count(i); cnt > 0; --cnt)
+              all.add(values.key(i), rows.nextInt());
+          write(all.sort());
+        }
+        return;
+      }
+      //free slots are found first, slots claimed by this batch are kept in memory. Then pairs are written by slots
+      int pairs = values.size();
+      LongIntMap claimed = new LongIntMap(pairs); //slot to number of pair
+      long[] claims = new long[pairs]; //slot and number of pair to sort them by slot
+      int[] pairKeys = new int[pairs];
+      int[] pairRows = new int[pairs];
+      try (ReadBuffer rdr = new ReadBuffer(fc, -1))
+      {
+        PrimitiveIterator.OfInt rows = values.rows();
+        int pair = 0;
+        for (int i = 0; i < values.keysCount(); ++i)
+        {
+          long slot = hash(values.key(i)) & (capacity - 1);
+          for (int cnt = values.count(i); cnt > 0; --cnt, ++pair)
+          {
+            while (claimed.containsKey(slot) || slot < slots && rdr.position(slotPosition(slot) + 4).getInt() != 0)
+              ++slot;
+            claimed.put(slot, pair);
+            claims[pair] = slot << 32 | pair;
+            pairKeys[pair] = i;
+            pairRows[pair] = rows.nextInt();
+          }
+        }
+      }
+      Arrays.sort(claims);
+      try (WriteBuffer writer = new WriteBuffer(fc, -1))
+      {
+        for (long claim: claims)
+        {
+          long slot = claim >>> 32;
+          int pair = (int)claim;
+          T key = values.key(pairKeys[pair]);
+          writer.position(slotPosition(slot));
+          writeSlot(writer, hash(key), pairRows[pair], null, key);
+          slots = Math.max(slots, slot + 1);
+        }
+        size += pairs;
+        writer.position(4);
+        writer.putLong(size);
+      }
+    }
+    finally
+    {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** Pass all pairs to 'action' in order of slots */
+  private void forEachPair(ObjIntConsumer<T> action)
+  {
+    try (ReadBuffer rdr = new ReadBuffer(fc, -1).sequential())
+    {
+      rdr.position(HEADER_SIZE);
+      for (long slot = 0; slot < slots; ++slot)
+      {
+        rdr.getInt();
+        int row = rdr.getInt() - 1;
+        if (row < 0)
+          rdr.position(rdr.position() + keysHandler.itemSize());
+        else
+          action.accept(keysHandler.read(rdr), row);
+      }
+    }
+  }
+
+  /** Add rows for 'key' to 'addTo'. Should be called under read lock */
+  private void find(ReadBuffer rdr, T key, SortedIntSet addTo)
+  {
+    if (capacity == 0)
+      return;
+    int hash = hash(key);
+    rdr.position(slotPosition(hash & (capacity - 1)));
+    for (long slot = hash & (capacity - 1); slot < slots; ++slot)
+    {
+      int slotHash = rdr.getInt();
+      int row = rdr.getInt() - 1;
+      if (row < 0)
+        return;
+      if (slotHash == hash)
+      {
+        T slotKey = keysHandler.read(rdr);
+        if (Objects.equals(slotKey, key))
+          addTo.add(row);
+      }
+      else
+        rdr.position(rdr.position() + keysHandler.itemSize());
+    }
+  }
+
+  @Override
+  public SortedIntSet valuesFor(T key)
+  {
+    return valuesFor(Collections.singletonList(key));
+  }
+
+  @Override
+  public SortedIntSet valuesFor(Collection<T> keys)
+  {
+    SortedIntSet res = new SortedIntSet(keys.size());
+    lock.readLock().lock();
+    try (ReadBuffer rdr = new ReadBuffer(fc, -1))
+    {
+      for (T key: keys)
+        find(rdr, key, res);
+    }
+    finally
+    {
+      lock.readLock().unlock();
+    }
+    return res;
+  }
+
+  /** Scans whole table */
+  @Override
+  public SortedIntSet valuesFor(T min, T max)
+  {
+    Range<T> range = new Range<>(min, max);
+    return scan(range::includeValue);
+  }
+
+  /** Scans whole table */
+  @Override
+  public SortedIntSet valuesFor(Range<T>... ranges)
+  {
+    return scan(key ->
+    {
+      for (Range<T> range: ranges)
+        if (range.includeValue(key))
+          return true;
+      return false;
+    });
+  }
+
+  /** Returns rows of non-null keys satisfying 'filter' */
+  private SortedIntSet scan(Predicate<T> filter)
+  {
+    SortedIntSet res = new SortedIntSet();
+    lock.readLock().lock();
+    try
+    {
+      forEachPair((key, row) ->
+      {
+        if (key != null && filter.test(key))
+          res.add(row);
+      });
+    }
+    finally
+    {
+      lock.readLock().unlock();
+    }
+    return res;
+  }
+
+  /** Scans whole table */
+  @Override
+  public List<T> allKeys(boolean includeNull)
+  {
+    TreeSet<T> res = new TreeSet<>(Comparator.nullsLast(Comparator.naturalOrder()));
+    lock.readLock().lock();
+    try
+    {
+      forEachPair((key, row) ->
+      {
+        if (includeNull || key != null)
+          res.add(key);
+      });
+    }
+    finally
+    {
+      lock.readLock().unlock();
+    }
+    return new ArrayList<>(res);
+  }
+
+  @Override
+  public void clear()
+  {
+    lock.writeLock().lock();
+    try
+    {
+      fc.truncate(0);
+      capacity = 0;
+      size = 0;
+      slots = 0;
+      indexedRows = 0;
+    }
+    catch (IOException ex)
+    {
+      throw new UncheckedIOException(ex);
+    }
+    finally
+    {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    fc.close();
+  }
+}
@@ -13,10 +13,52 @@ import java.util.List;
 public interface Index<T extends Comparable<T>>
 {
   /**
-   * Recreates index by list 'values'. List would be sorted by {@link KeyToIndex.keysComparator}.<br><br>
+   * Recreates index by list 'values'. Values are copied to {@link KeyToIndexBuffer}.<br><br>
    * <strong>You must guarantee that no one reads the data in the process of rebuild index.</strong>
    */
-  public void recreate(List<KeyToIndex<T>> values);
+  default void recreate(List<KeyToIndex<T>> values)
+  {
+    try (KeyToIndexBuffer<T> buffer = KeyToIndexBuffer.of(values))
+    {
+      recreate(buffer.sort());
+    }
+  }
+
+  /**
+   * Recreates index by sorted buffer 'values'. Buffer is not closed by index.<br><br>
+   * <strong>You must guarantee that no one reads the data in the process of rebuild index.</strong>
+   */
+  public void recreate(KeyToIndexBuffer<T> values);
+
+  /** Returns true if index supports {@link #append(KeyToIndexBuffer)} */
+  default boolean canAppend()
+  {
+    return false;
+  }
+
+  /**
+   * Returns count of list rows, that are stored by index (see {@link #setIndexedRows(int)}), or -1 if index does not
+   * keep it. DataList appends new rows only to index, that stores all previous rows, other indexes are recreated
+   */
+  default int indexedRows()
+  {
+    return -1;
+  }
+
+  /** Saves count of list rows, that are stored by index. Called by DataList after index is recreated or appended */
+  default void setIndexedRows(int rows)
+  {
+  }
+
+  /**
+   * Adds key-row pairs of new rows to index without rebuild. Called by DataList only when {@link #canAppend()} and
+   * index stores all previous rows (see {@link #indexedRows()}).<br><br>
+   * <strong>You must guarantee that no one reads the data in the process of append.</strong>
+   */
+  default void append(KeyToIndexBuffer<T> values)
+  {
+    throw new UnsupportedOperationException(getClass().getSimpleName() + " could not be appended, recreate it");
+  }
 
   /** Clear whole index */
   public void clear();
@@ -37,4 +79,19 @@ public interface Index<T extends Comparable<T>>
 
   /** Returns all indexes for ranges (inclusive) */
   SortedIntSet valuesFor(Range<T>... ranges);
+
+  /** Returns count of indexes for key. Implementations should not read indexes itself */
+  default int countFor(T key)
+  {
+    return valuesFor(key).size();
+  }
+
+  /**
+   * Returns count of key-index pairs for range (inclusive). Equals to valuesFor(min, max).size()
+   * when each index has only one key. Implementations should not read indexes itself
+   */
+  default int countFor(T min, T max)
+  {
+    return valuesFor(min, max).size();
+  }
 }
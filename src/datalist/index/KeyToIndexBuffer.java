@@ -0,0 +1,347 @@
+package datalist.index;
+
+import datalist.io.ChannelBuilder;
+import datalist.io.ReadBuffer;
+import datalist.io.WriteBuffer;
+import datalist.types.ObjectIntMap;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Primitive replacement of KeyToIndex list for index rebuild. Each distinct key is stored once, key-row pairs are
+ * packed to long values (key number and row), so there are no objects per row.<br>
+ * {@link #sort()} orders distinct keys like {@link KeyToIndex#keysComparator()} (nulls at the end) and sorts packed
+ * pairs by Arrays.parallelSort. When pairs count exceeds "datalist.rebuild_chunk_size" (8M pairs, 64MB by default),
+ * filled chunks are spilled to temporary file, sorted one by one and merged on reading.<br>
+ * This class is not thread-safe.
+ * @param <T> is index type
+ * @author SergeyT
+ */
+public final class KeyToIndexBuffer<T extends Comparable<T>> implements AutoCloseable
+{
+  private static final int CHUNK_SIZE = Integer.getInteger("datalist.rebuild_chunk_size", 1 << 23);
+  private static final int MERGE_BUFFER = 1 << 16;
+  @SuppressWarnings("unchecked")
+  private static final Comparator<Object> KEYS_ORDER = (a, b) ->
+    a == null ? (b == null ? 0 : 1) : b == null ? -1 : ((Comparable<Object>)a).compareTo(b);
+
+  private final int chunkSize;
+  private ObjectIntMap<T> keyNumbers = new ObjectIntMap<>();
+  private Object[] keys = new Object[16]; //by key number, sorted by sort()
+  private int[] counts; //by key position at sorted keys
+  private long[] pairs = new long[16]; //key number (position after sort) in high half, row in low half
+  private int count; //pairs in memory
+  private int size;
+  private int chunks; //spilled chunks, each has chunkSize pairs except the last one
+  private int lastChunkSize;
+  private FileChannel spill;
+  private boolean sorted;
+
+  public KeyToIndexBuffer()
+  {
+    this(CHUNK_SIZE);
+  }
+
+  KeyToIndexBuffer(int chunkSize)
+  {
+    this.chunkSize = chunkSize;
+  }
+
+  /** Copy 'values' to new buffer */
+  public static <T extends Comparable<T>> KeyToIndexBuffer<T> of(Collection<KeyToIndex<T>> values)
+  {
+    KeyToIndexBuffer<T> res = new KeyToIndexBuffer<>();
+    for (KeyToIndex<T> val: values)
+      res.add(val.getKey(), val.getIndex());
+    return res;
+  }
+
+  public void add(T key, int row)
+  {
+    if (sorted)
+      throw new IllegalStateException("Buffer is already sorted");
+    addPair(numberOf(key), row);
+  }
+
+  /** Add all pairs of unsorted buffer 'other' (for example, collected at other thread). 'other' is not changed */
+  @SuppressWarnings("unchecked")
+  public void addAll(KeyToIndexBuffer<T> other)
+  {
+    if (sorted || other.sorted)
+      throw new IllegalStateException("Buffer is already sorted");
+    int[] numbers = new int[other.keyNumbers.size()]; //key numbers of other to numbers of this buffer
+    for (int i = 0; i < numbers.length; ++i)
+      numbers[i] = numberOf((T)other.keys[i]);
+    for (int chunk = 0; chunk < other.chunks; ++chunk)
+      try (ReadBuffer reader = new ReadBuffer(other.spill, MERGE_BUFFER))
+      {
+        reader.position(other.chunkOffset(chunk));
+        for (int i = 0; i < other.chunkSize; ++i)
+        {
+          long pair = reader.getLong();
+          addPair(numbers[(int)(pair >>> 32)], (int)pair);
+        }
+      }
+    for (int i = 0; i < other.count; ++i)
+      addPair(numbers[(int)(other.pairs[i] >>> 32)], (int)other.pairs[i]);
+  }
+
+  private int numberOf(T key)
+  {
+    int num = keyNumbers.get(key, -1);
+    if (num < 0)
+    {
+      num = keyNumbers.size();
+      keyNumbers.put(key, num);
+      if (num == keys.length)
+        keys = Arrays.copyOf(keys, num * 2);
+      keys[num] = key;
+    }
+    return num;
+  }
+
+  private void addPair(int num, int row)
+  {
+    if (count == pairs.length)
+    {
+      if (count >= chunkSize)
+        spill();
+      else
+        pairs = Arrays.copyOf(pairs, (int)Math.min(chunkSize, count * 2L));
+    }
+    pairs[count++] = pack(num, row);
+    ++size;
+  }
+
+  private static long pack(int key, int row)
+  {
+    return (long)key << 32 | (row & 0xFFFFFFFFL);
+  }
+
+  private FileChannel spillChannel() throws IOException
+  {
+    if (spill == null)
+      spill = ChannelBuilder.temporary("datalist-rebuild-", ".tmp").forRead().forWrite().build();
+    return spill;
+  }
+
+  private void spill()
+  {
+    try (WriteBuffer writer = new WriteBuffer(spillChannel(), MERGE_BUFFER))
+    {
+      writer.position(chunkOffset(chunks));
+      for (int i = 0; i < count; ++i)
+        writer.putLong(pairs[i]);
+    }
+    catch (IOException ex)
+    {
+      throw new UncheckedIOException(ex);
+    }
+    ++chunks;
+    count = 0;
+  }
+
+  /** Sort keys and pairs. Buffer could not be modified after that. Returns this */
+  public KeyToIndexBuffer<T> sort()
+  {
+    if (sorted)
+      return this;
+    sorted = true;
+    int keysCount = keyNumbers.size();
+    keys = Arrays.copyOf(keys, keysCount);
+    Arrays.parallelSort(keys, KEYS_ORDER);
+    int[] position = new int[keysCount];
+    for (int i = 0; i < keysCount; ++i)
+      position[keyNumbers.get(key(i), -1)] = i;
+    keyNumbers = null;
+    counts = new int[keysCount];
+    if (chunks == 0)
+    {
+      sortChunk(position, count);
+      return this;
+    }
+
+    lastChunkSize = count;
+    spill(); //all chunks are at file now, memory is used to sort them one by one
+    for (int chunk = 0; chunk < chunks; ++chunk)
+    {
+      int cnt = chunkSize(chunk);
+      try (ReadBuffer reader = new ReadBuffer(spill, MERGE_BUFFER))
+      {
+        reader.position(chunkOffset(chunk));
+        for (int i = 0; i < cnt; ++i)
+          pairs[i] = reader.getLong();
+      }
+      sortChunk(position, cnt);
+      try (WriteBuffer writer = new WriteBuffer(spill, MERGE_BUFFER))
+      {
+        writer.position(chunkOffset(chunk));
+        for (int i = 0; i < cnt; ++i)
+          writer.putLong(pairs[i]);
+      }
+    }
+    pairs = null;
+    return this;
+  }
+
+  private long chunkOffset(int chunk)
+  {
+    return chunk * (long)chunkSize * 8;
+  }
+
+  private int chunkSize(int chunk)
+  {
+    return chunk == chunks - 1 && sorted ? lastChunkSize : chunkSize;
+  }
+
+  /** Replace key numbers by key positions, calculate counts and sort first 'cnt' pairs */
+  private void sortChunk(int[] position, int cnt)
+  {
+    for (int i = 0; i < cnt; ++i)
+    {
+      int key = position[(int)(pairs[i] >>> 32)];
+      ++counts[key];
+      pairs[i] = pack(key, (int)pairs[i]);
+    }
+    Arrays.parallelSort(pairs, 0, cnt);
+  }
+
+  private void checkSorted()
+  {
+    if (!sorted)
+      throw new IllegalStateException("Buffer is not sorted");
+  }
+
+  /** Returns count of key-row pairs */
+  public int size()
+  {
+    return size;
+  }
+
+  /** Returns count of distinct keys */
+  public int keysCount()
+  {
+    checkSorted();
+    return keys.length;
+  }
+
+  /** Returns key at position 'pos' of sorted keys */
+  @SuppressWarnings("unchecked")
+  public T key(int pos)
+  {
+    checkSorted();
+    return (T)keys[pos];
+  }
+
+  /** Returns count of rows for key at position 'pos' of sorted keys */
+  public int count(int pos)
+  {
+    checkSorted();
+    return counts[pos];
+  }
+
+  /** Returns rows sorted by keys, then by row. Each call returns new iterator */
+  public PrimitiveIterator.OfInt rows()
+  {
+    checkSorted();
+    if (chunks == 0)
+    {
+      return new PrimitiveIterator.OfInt()
+      {
+        private int pos;
+
+        @Override
+        public boolean hasNext()
+        {
+          return pos < count;
+        }
+
+        @Override
+        public int nextInt()
+        {
+          if (pos >= count)
+            throw new NoSuchElementException();
+          return (int)pairs[pos++];
+        }
+      };
+    }
+    return new MergeIterator();
+  }
+
+  @Override
+  public void close()
+  {
+    pairs = null;
+    keys = null;
+    if (spill == null)
+      return;
+    try
+    {
+      spill.close(); //file is deleted on close
+    }
+    catch (IOException ex)
+    {
+      throw new UncheckedIOException(ex);
+    }
+    spill = null;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "KeyToIndexBuffer, " + size + " pairs" + (chunks > 0 ? ", " + chunks + " chunks spilled" : "");
+  }
+
+  /** Merge of sorted spilled chunks */
+  private final class MergeIterator implements PrimitiveIterator.OfInt
+  {
+    private final ReadBuffer[] readers = new ReadBuffer[chunks];
+    private final int[] left = new int[chunks];
+    private final long[] heads = new long[chunks];
+
+    MergeIterator()
+    {
+      for (int i = 0; i < chunks; ++i)
+      {
+        readers[i] = new ReadBuffer(spill, MERGE_BUFFER).position(chunkOffset(i));
+        left[i] = chunkSize(i);
+        if (left[i] > 0)
+          heads[i] = readers[i].getLong();
+        else
+          readers[i].close();
+      }
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+      for (int cnt: left)
+        if (cnt > 0)
+          return true;
+      return false;
+    }
+
+    @Override
+    public int nextInt()
+    {
+      int min = -1;
+      for (int i = 0; i < chunks; ++i)
+        if (left[i] > 0 && (min < 0 || heads[i] < heads[min]))
+          min = i;
+      if (min < 0)
+        throw new NoSuchElementException();
+      long res = heads[min];
+      if (--left[min] > 0)
+        heads[min] = readers[min].getLong();
+      else
+        readers[min].close();
+      return (int)res;
+    }
+  }
+}
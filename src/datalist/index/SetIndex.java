@@ -5,7 +5,6 @@ import datalist.io.ReadBuffer;
 import datalist.io.WriteBuffer;
 import datalist.list.DatabaseBrokenError;
 import datalist.stream.DBDataStreamer;
-import datalist.types.CounterMap;
 import datalist.types.Range;
 import datalist.types.SortedIntSet;
 import java.io.File;
@@ -21,7 +20,7 @@ import static java.util.Comparator.comparing;
 import static java.util.Comparator.naturalOrder;
 import static java.util.Comparator.nullsLast;
 import java.util.List;
-import java.util.Objects;
+import java.util.PrimitiveIterator;
 
 /**
  * This index loads all keys to RAM and reads only item indexes.
@@ -47,9 +46,9 @@ public class SetIndex<T extends Comparable<T>> implements Index<T>, AutoCloseabl
   }
 
   @Override
-  public void recreate(List<KeyToIndex<T>> values)
+  public void recreate(KeyToIndexBuffer<T> values)
   {
-    values.sort(KeyToIndex.keysComparator());
+    values.sort();
     try
     {
       fc.truncate(0);
@@ -58,16 +57,15 @@ public class SetIndex<T extends Comparable<T>> implements Index<T>, AutoCloseabl
     {
       throw new UncheckedIOException(ex);
     }
-    try (WriteBuffer writer = new WriteBuffer(fc, buffSizeW))
+    try (WriteBuffer writer = new WriteBuffer(fc, buffSizeW).sequential())
     {
       writer.putInt(-1); //not calculated base offset
-      CounterMap<T> allKeys = KeyToIndex.allKeys(values);
-      writer.putInt(allKeys.size());
+      int keysCount = values.keysCount();
+      writer.putInt(keysCount);
       keys.clear();
-      keys.ensureCapacity(allKeys.size());
-      for (T key: allKeys.keySet())
-        keys.add(new KeyWithRange<>(key, -1, allKeys.getCount(key)));
-      keys.sort(comparator);
+      keys.ensureCapacity(keysCount);
+      for (int i = 0; i < keysCount; ++i)
+        keys.add(new KeyWithRange<>(values.key(i), -1, values.count(i))); //already sorted
       long offs = 0;
       for (KeyWithRange<T> key: keys)
       {
@@ -79,14 +77,17 @@ public class SetIndex<T extends Comparable<T>> implements Index<T>, AutoCloseabl
       }
       headerSize = (int)writer.position();
 
-      int pos = 0;
-      ArrayList<Integer> av = new ArrayList<>();
+      PrimitiveIterator.OfInt rows = values.rows();
       for (KeyWithRange<T> key: keys)
       {
-        pos = collectValues(values, key.key, av, pos);
-        for (Integer val: av)
+        int hash = 1; //the same as Arrays.hashCode(int[])
+        for (int cnt = key.count; cnt > 0; --cnt)
+        {
+          int val = rows.nextInt();
           writer.putInt(val);
-        writer.putInt(av.hashCode());
+          hash = 31 * hash + val;
+        }
+        writer.putInt(hash);
       }
 
       writer.position(0);
@@ -108,24 +109,6 @@ public class SetIndex<T extends Comparable<T>> implements Index<T>, AutoCloseabl
     keys.clear();
   }
 
-  private int collectValues(List<KeyToIndex<T>> values, T key, ArrayList<Integer> av, int pos)
-  {
-    if (pos >= values.size())
-      throw new IllegalStateException("End of collection reached, but key " + key + " is absend");
-    av.clear();
-    do
-    {
-      KeyToIndex<T> curKeyVal = values.get(pos);
-      if (Objects.equals(key, curKeyVal.getKey()))
-        av.add(curKeyVal.getIndex());
-      else if (av.isEmpty())
-        throw new IllegalStateException("Expected key " + key + ", but " + curKeyVal.getKey() + " found");
-      else
-        return pos;
-    } while (++pos < values.size());
-    return pos;
-  }
-
   private ArrayList<KeyWithRange<T>> loadKeys()
   {
     try
@@ -133,7 +116,7 @@ public class SetIndex<T extends Comparable<T>> implements Index<T>, AutoCloseabl
       if (fc.size() == 0)
         return new ArrayList<>(); //no keys, empty file
 
-      try (ReadBuffer reader = new ReadBuffer(fc, buffSizeR))
+      try (ReadBuffer reader = new ReadBuffer(fc, buffSizeR).sequential())
       {
         headerSize = reader.getInt();
 
@@ -201,6 +184,45 @@ public class SetIndex<T extends Comparable<T>> implements Index<T>, AutoCloseabl
   //  return true;
   //}
 
+  @Override
+  public int countFor(T key)
+  {
+    int idx = Collections.binarySearch(keys, new KeyWithRange<>(key, 0, 0), comparator);
+    return idx < 0 ? 0 : keys.get(idx).count;
+  }
+
+  @Override
+  public int countFor(T min, T max)
+  {
+    checkRange(min, max);
+    int res = 0;
+    for (int i = lowerBound(min), till = upperBound(max); i < till; ++i)
+      res += keys.get(i).count;
+    return res;
+  }
+
+  private static <T extends Comparable<T>> void checkRange(T min, T max)
+  {
+    if (min == null || max == null)
+      throw new IllegalArgumentException("Range with nulls not allowed");
+    if (min.compareTo(max) > 0)
+      throw new IllegalArgumentException("Inverse range");
+  }
+
+  /** Returns position of the first key not less than 'key' */
+  private int lowerBound(T key)
+  {
+    int idx = Collections.binarySearch(keys, new KeyWithRange<>(key, 0, 0), comparator);
+    return idx >= 0 ? idx : -idx - 1;
+  }
+
+  /** Returns position after the last key not greater than 'key' */
+  private int upperBound(T key)
+  {
+    int idx = Collections.binarySearch(keys, new KeyWithRange<>(key, 0, 0), comparator);
+    return idx >= 0 ? idx + 1 : -idx - 1;
+  }
+
   @Override
   public SortedIntSet valuesFor(Collection<T> keys)
   {
@@ -211,10 +233,10 @@ public class SetIndex<T extends Comparable<T>> implements Index<T>, AutoCloseabl
 
     try (ReadBuffer reader = new ReadBuffer(fc, buffSizeR))
     {
-      SortedIntSet res = new SortedIntSet();
+      List<SortedIntSet> found = new ArrayList<>(keys.size());
       for (T key: keys)
-        res.union(doValuesFor(key, reader));
-      return res.trim();
+        found.add(doValuesFor(key, reader));
+      return SortedIntSet.unionAll(found).trim();
     }
   }
 
@@ -249,10 +271,12 @@ public class SetIndex<T extends Comparable<T>> implements Index<T>, AutoCloseabl
   @Override
   public SortedIntSet valuesFor(T min, T max)
   {
-    ArrayList<T> usedVals = new ArrayList<>(keys.size());
-    for (KeyWithRange<T> key: keys)
-      if (key.key.compareTo(min) >= 0 && key.key.compareTo(max) <= 0)
-        usedVals.add(key.key);
+    checkRange(min, max);
+    int from = lowerBound(min);
+    int till = upperBound(max);
+    ArrayList<T> usedVals = new ArrayList<>(Math.max(till - from, 0));
+    for (int i = from; i < till; ++i)
+      usedVals.add(keys.get(i).key);
     return valuesFor(usedVals);
   }
 
@@ -15,9 +15,11 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
+import java.util.PrimitiveIterator;
+import java.util.PriorityQueue;
+import java.util.function.ObjIntConsumer;
 
 /**
  * Keep sorted list of values and maps it to indexes.<br>
@@ -31,29 +33,53 @@ import java.util.Objects;
  * count*sizeof(value) for keys<br>
  * count*sizeof(int) for keys<br><br>
  * Value with 0-based index K might be readed at pos K*sizeof(value)+8<br>
- * Key with 0-based index K might be readed at pos K*sizeof(int)+count*sizeof(value)+8<br>
+ * Key with 0-based index K might be readed at pos K*sizeof(int)+count*sizeof(value)+8<br><br>
+ *
+ * Each first value of "datalist.sortindex_block_size" bytes block (4KB by default) is kept in RAM. This sparse
+ * directory narrows binary search to one block, so lookup needs one or two disk reads.
  */
 public class SortedIndex<T extends Comparable<T>> implements Index<T>, AutoCloseable
 {
-  private static final int buffSizeR = Integer.getInteger("sortindex_read_buffer_size", -1);
-  private static final int buffSizeW = Integer.getInteger("sortindex_write_buffer_size", -1);
-
-  private final FileChannel fc;
-  private final FixedSizeDataStreamer<T> keysHandler;
+  static final int buffSizeR = Integer.getInteger("sortindex_read_buffer_size", -1);
+  static final int buffSizeW = Integer.getInteger("sortindex_write_buffer_size", -1);
+  /** Found rows are packed to ranges when there are at least RUN_LENGTH_TO_PACK rows per range */
+  private static final int RUN_LENGTH_TO_PACK = 8;
+  static final int BLOCK_SIZE = Integer.getInteger("datalist.sortindex_block_size", 4096);
+
+  final FileChannel fc;
+  final FixedSizeDataStreamer<T> keysHandler;
+  private final int blockKeys;
+  /** Rows are 0..size-1 without gaps, so range with all keys could be returned without reading */
+  private final boolean denseRows;
   private long size;
+  /** Values at positions 0, blockKeys, 2*blockKeys... */
+  private volatile T[] directory;
 
   private volatile T minVal;
   private volatile T maxVal;
 
   public SortedIndex(File storage, FixedSizeDataStreamer<T> keysHandler) throws IOException
+  {
+    this(storage, keysHandler, BLOCK_SIZE, true);
+  }
+
+  SortedIndex(File storage, FixedSizeDataStreamer<T> keysHandler, int blockSize, boolean denseRows) throws IOException
   {
     fc = ChannelBuilder.forReadWrite(storage).build();
     this.keysHandler = keysHandler;
+    this.denseRows = denseRows;
+    blockKeys = Math.max(blockSize / keysHandler.itemSize(), 1);
     if (fc.size() > 8)
     {
-      try (ReadBuffer rdr = new ReadBuffer(fc, buffSizeR))
+      try (ReadBuffer rdr = new ReadBuffer(fc, buffSizeR).sequential())
       {
         size = rdr.getLong();
+        directory = newDirectory();
+        for (int i = 0; i < directory.length; ++i)
+        {
+          rdr.position(8 + (long)i * blockKeys * keysHandler.itemSize());
+          directory[i] = keysHandler.read(rdr);
+        }
         loadMinMax(rdr);
       }
     }
@@ -61,6 +87,12 @@ public class SortedIndex<T extends Comparable<T>> implements Index<T>, AutoClose
       size = 0;
   }
 
+  @SuppressWarnings("unchecked")
+  private T[] newDirectory()
+  {
+    return (T[])new Comparable<?>[(int)((size + blockKeys - 1) / blockKeys)];
+  }
+
   private void loadMinMax(ReadBuffer rdr) throws DatabaseBrokenError
   {
     if (size > 0)
@@ -80,21 +112,84 @@ public class SortedIndex<T extends Comparable<T>> implements Index<T>, AutoClose
   }
 
   @Override
-  public void recreate(List<KeyToIndex<T>> values)
+  public void recreate(KeyToIndexBuffer<T> values)
   {
-    values.sort(KeyToIndex.keysComparator());
-    try (WriteBuffer writer = new WriteBuffer(fc, buffSizeW))
+    values.sort();
+    try (WriteBuffer writer = new WriteBuffer(fc, buffSizeW).sequential())
     {
       size = values.size();
+      T[] dir = newDirectory();
       writer.position(0);
       writer.putLong(size);
-      for (KeyToIndex<T> pair: values)
-        keysHandler.write(writer, pair.getKey());
+      long pos = 0;
+      for (int i = 0; i < values.keysCount(); ++i)
+      {
+        T key = values.key(i);
+        int cnt = values.count(i);
+        for (long block = (pos + blockKeys - 1) / blockKeys; block * blockKeys < pos + cnt; ++block)
+          dir[(int)block] = key;
+        pos += cnt;
+        while (--cnt >= 0)
+          keysHandler.write(writer, key);
+      }
+      directory = dir;
 
       if (writer.position() != 8 + size*keysHandler.itemSize())
         throw new DatabaseBrokenError("Streamer " + keysHandler.getClass() + " violates general contract!");
-      for (KeyToIndex<T> pair: values)
-        writer.putInt(pair.getIndex());
+      for (PrimitiveIterator.OfInt it = values.rows(); it.hasNext();)
+        writer.putInt(it.nextInt());
+    }
+    try (ReadBuffer rdr = new ReadBuffer(fc, buffSizeR))
+    {
+      loadMinMax(rdr);
+    }
+  }
+
+  /**
+   * Recreates index by pairs of 'sources' indexes. Pairs of sources are already sorted, so they are merged
+   * by one pass without sorting
+   */
+  void recreateMerged(List<SortedIndex<T>> sources)
+  {
+    List<PairsReader> readers = new ArrayList<>(sources.size());
+    try (WriteBuffer keys = new WriteBuffer(fc, buffSizeW).sequential();
+         WriteBuffer rows = new WriteBuffer(fc, buffSizeW).sequential())
+    {
+      PriorityQueue<PairsReader> heads = new PriorityQueue<>(Math.max(sources.size(), 1), (a, b) ->
+      {
+        int cmp = comparator.compare(a.key, b.key);
+        return cmp != 0 ? cmp : Integer.compare(a.row, b.row);
+      });
+      long total = 0;
+      for (SortedIndex<T> source: sources)
+      {
+        PairsReader reader = source.new PairsReader();
+        readers.add(reader);
+        total += source.size;
+        if (reader.next())
+          heads.add(reader);
+      }
+      size = total;
+      T[] dir = newDirectory();
+      keys.position(0);
+      keys.putLong(size);
+      rows.position(8 + size * keysHandler.itemSize());
+      for (long pos = 0; !heads.isEmpty(); ++pos)
+      {
+        PairsReader head = heads.poll();
+        if (pos % blockKeys == 0)
+          dir[(int)(pos / blockKeys)] = head.key;
+        keysHandler.write(keys, head.key);
+        rows.putInt(head.row);
+        if (head.next())
+          heads.add(head);
+      }
+      directory = dir;
+    }
+    finally
+    {
+      for (PairsReader reader: readers)
+        reader.close();
     }
     try (ReadBuffer rdr = new ReadBuffer(fc, buffSizeR))
     {
@@ -102,12 +197,63 @@ public class SortedIndex<T extends Comparable<T>> implements Index<T>, AutoClose
     }
   }
 
+  /** Call 'action' for each key and row in index order */
+  void forEachPair(ObjIntConsumer<T> action)
+  {
+    try (PairsReader pairs = new PairsReader())
+    {
+      while (pairs.next())
+        action.accept(pairs.key, pairs.row);
+    }
+  }
+
+  /** Sequential reader of key-row pairs in index order */
+  private final class PairsReader implements AutoCloseable
+  {
+    private final ReadBuffer keys = new ReadBuffer(fc, buffSizeR).sequential();
+    private final ReadBuffer rows = new ReadBuffer(fc, buffSizeR).sequential();
+    private long left = size;
+    T key;
+    int row;
+
+    PairsReader()
+    {
+      keys.position(8);
+      rows.position(8 + size * keysHandler.itemSize());
+    }
+
+    /** Reads the next pair to 'key' and 'row'. Returns false when there are no more pairs */
+    boolean next()
+    {
+      if (left == 0)
+        return false;
+      --left;
+      key = keysHandler.read(keys);
+      row = rows.getInt();
+      return true;
+    }
+
+    @Override
+    public void close()
+    {
+      try
+      {
+        keys.close();
+      }
+      finally
+      {
+        rows.close();
+      }
+    }
+  }
+
   @Override
   public void clear()
   {
     try
     {
       size = 0;
+      directory = null;
       fc.truncate(0);
     }
     catch (IOException ex)
@@ -121,6 +267,12 @@ public class SortedIndex<T extends Comparable<T>> implements Index<T>, AutoClose
     return size == 0;
   }
 
+  /** Returns count of key-row pairs */
+  long pairsCount()
+  {
+    return size;
+  }
+
   public T min()
   {
     return minVal;
@@ -148,6 +300,52 @@ public class SortedIndex<T extends Comparable<T>> implements Index<T>, AutoClose
     }
   }
 
+  @Override
+  public int countFor(T key)
+  {
+    try (ReadBuffer rdr = new ReadBuffer(fc, buffSizeR))
+    {
+      return doCountFor(key, key, rdr);
+    }
+  }
+
+  @Override
+  public int countFor(T min, T max)
+  {
+    if (min == null || max == null)
+      throw new IllegalArgumentException("Range with nulls not allowed");
+
+    if (comparator.compare(min, max) > 0)
+      throw new IllegalArgumentException("Inverse range");
+
+    try (ReadBuffer rdr = new ReadBuffer(fc, buffSizeR))
+    {
+      return doCountFor(min, max, rdr);
+    }
+  }
+
+  /** Count of keys at range, only keys are read */
+  private int doCountFor(T min, T max, ReadBuffer rdr)
+  {
+    if (isEmpty())
+      return 0;
+
+    if (min == null || max == null)
+    {
+      if (min != null || max != null)
+        throw new IllegalStateException();
+      return (int)(size - findLowIndex(rdr, null, 0, size));
+    }
+
+    long low = findLowIndex(rdr, min, 0, size);
+    if (low >= size)
+      return 0;
+    rdr.position(8 + low * keysHandler.itemSize());
+    if (comparator.compare(keysHandler.read(rdr), max) > 0)
+      return 0;
+    return (int)(findHighIndex(rdr, max, low, size - 1) - low + 1);
+  }
+
   private SortedIntSet doValuesFor(T min, T max, ReadBuffer rdr)
   {
     if (isEmpty())
@@ -170,48 +368,76 @@ public class SortedIndex<T extends Comparable<T>> implements Index<T>, AutoClose
       return res;
     }
 
-    if (min.compareTo(min()) <= 0 && max.compareTo(max()) >= 0)
+    if (denseRows && min.compareTo(min()) <= 0 && max.compareTo(max()) >= 0)
       return SortedIntSet.allValues((int)size);
 
-    long low = 0;
-    long high = size-1;
+    long low = findLowIndex(rdr, min, 0, size);
+    if (low >= size)
+      return SortedIntSet.empty();
+    rdr.position(8 + low * keysHandler.itemSize());
+    if (comparator.compare(keysHandler.read(rdr), max) > 0)
+      return SortedIntSet.empty();
+    long high = findHighIndex(rdr, max, low, size - 1);
+    int cnt = (int)(high-low+1);
+    int[] result = new int[cnt];
+    rdr.position(low * 4 + size * keysHandler.itemSize() + 8);
+    int runs = 1;
+    result[0] = rdr.getInt();
+    for (int i = 1; i < cnt; ++i)
+    {
+      result[i] = rdr.getInt();
+      if (result[i] != result[i - 1] + 1)
+        ++runs;
+    }
+    SortedIntSet res = SortedIntSet.wrap(result);
+    //rows of data imported in key order are contiguous ranges, pack them
+    return runs * RUN_LENGTH_TO_PACK <= cnt ? res.trim() : res;
+  }
+
+  /** Returns positions of the first pair at range and after the last one. Both 'min' and 'max' are null for nulls */
+  long[] findRange(ReadBuffer rdr, T min, T max)
+  {
+    if (isEmpty())
+      return new long[] {0, 0};
+    if (min == null || max == null)
+      return new long[] {findLowIndex(rdr, null, 0, size), size};
+    long low = findLowIndex(rdr, min, 0, size);
+    if (low >= size)
+      return new long[] {low, low};
+    rdr.position(8 + low * keysHandler.itemSize());
+    if (comparator.compare(keysHandler.read(rdr), max) > 0)
+      return new long[] {low, low};
+    return new long[] {low, findHighIndex(rdr, max, low, size - 1) + 1};
+  }
+
+  /** Returns count of directory values less than key (or not greater than key if 'inclusive') */
+  private static <T> int directoryCount(T[] dir, T key, boolean inclusive, Comparator<T> comparator)
+  {
+    int low = 0;
+    int high = dir.length;
     while (low < high)
     {
-      long middle = (low + high) >>> 1;
-      rdr.position(8 + middle * keysHandler.itemSize());
-      T item = keysHandler.read(rdr);
-      if (comparator.compare(item, min) < 0)
+      int middle = (low + high) >>> 1;
+      int cmp = comparator.compare(dir[middle], key);
+      if (cmp < 0 || inclusive && cmp == 0)
         low = middle + 1;
-      else if (comparator.compare(item, max) > 0)
-        high = middle - 1;
       else
-      {
-        //here we found middle of the range, find exact boundaries
-        low = findLowIndex(rdr, min, low, middle);
-        high = findHighIndex(rdr, max, middle, high);
-        int cnt = (int)(high-low+1);
-        int[] result = new int[cnt];
-        rdr.position(low * 4 + size * keysHandler.itemSize() + 8);
-        for (int i = 0; i < cnt; ++i)
-          result[i]  = rdr.getInt();
-        return SortedIntSet.wrap(result);
-      }
-    }
-    if (low == high)
-    {
-      rdr.position(8 + low * keysHandler.itemSize());
-      T item = keysHandler.read(rdr);
-      if (comparator.compare(item, min) >= 0 && comparator.compare(item, max) <= 0)
-      {
-        rdr.position(low * 4 + size * keysHandler.itemSize() + 8);
-        return SortedIntSet.wrap(new int[] {rdr.getInt()});
-      }
+        high = middle;
     }
-    return SortedIntSet.empty();
+    return low;
   }
 
   private long findLowIndex(ReadBuffer rdr, T key, long low, long high)
   {
+    T[] dir = directory;
+    if (dir != null)
+    {
+      //result is after the last block value less than key and not after the next block value
+      long block = directoryCount(dir, key, false, comparator);
+      if (block > 0)
+        low = Math.max(low, (block - 1) * blockKeys + 1);
+      high = Math.min(high, block * blockKeys);
+    }
     while (low < high)
     {
       long middle = (low + high) >>> 1;
@@ -228,6 +454,17 @@ public class SortedIndex<T extends Comparable<T>> implements Index<T>, AutoClose
 
   private long findHighIndex(ReadBuffer rdr, T key, long low, long high)
   {
+    T[] dir = directory;
+    if (dir != null)
+    {
+      //result is before the first block value greater than key and not before the previous block value
+      long block = directoryCount(dir, key, true, comparator);
+      if (block > 0)
+      {
+        low = Math.max(low, (block - 1) * blockKeys);
+        high = Math.min(high, block * blockKeys - 1);
+      }
+    }
     while (low < high)
     {
       long middle = (low + high + 1) >>> 1;
@@ -255,7 +492,7 @@ public class SortedIndex<T extends Comparable<T>> implements Index<T>, AutoClose
       return Collections.emptyList();
 
     ArrayList<T> allItems = new ArrayList<>((int)(size/4));
-    try (ReadBuffer rdr = new ReadBuffer(fc, buffSizeR))
+    try (ReadBuffer rdr = new ReadBuffer(fc, buffSizeR).sequential())
     {
       rdr.position(8);
       long expire = size - 1;
@@ -290,15 +527,10 @@ public class SortedIndex<T extends Comparable<T>> implements Index<T>, AutoClose
   {
     try (ReadBuffer rdr = new ReadBuffer(fc, buffSizeR))
     {
-      Iterator<T> it = keys.iterator();
-      T val = it.next();
-      SortedIntSet res = doValuesFor(val, val, rdr);
-      while (it.hasNext())
-      {
-        val = it.next();
-        res.union(doValuesFor(val, val, rdr));
-      }
-      return res;
+      List<SortedIntSet> found = new ArrayList<>(keys.size());
+      for (T val: keys)
+        found.add(doValuesFor(val, val, rdr));
+      return SortedIntSet.unionAll(found);
     }
   }
 
@@ -307,10 +539,10 @@ public class SortedIndex<T extends Comparable<T>> implements Index<T>, AutoClose
   {
     try (ReadBuffer rdr = new ReadBuffer(fc, buffSizeR))
     {
-      SortedIntSet res = SortedIntSet.empty();
+      List<SortedIntSet> found = new ArrayList<>(ranges.length);
       for (Range<T> range: ranges)
-        res.union(doValuesFor(range.getMin(), range.getMax(), rdr));
-      return res;
+        found.add(doValuesFor(range.getMin(), range.getMax(), rdr));
+      return SortedIntSet.unionAll(found);
     }
   }
 }
\ No newline at end of file
@@ -0,0 +1,485 @@
+package datalist.index;
+
+import datalist.io.ChannelBuilder;
+import datalist.io.ReadBuffer;
+import datalist.io.WriteBuffer;
+import datalist.stream.FixedSizeDataStreamer;
+import datalist.types.Range;
+import datalist.types.SortedIntSet;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Index of immutable sorted runs, each run is {@link SortedIndex} file. {@link #append(KeyToIndexBuffer)} writes new
+ * rows as a new run, so append costs O(batch). Queries are sent to all runs and results are united.<br>
+ * When there are more than "datalist.tiered_max_runs" runs (8 by default), the newest runs of similar size are merged
+ * by background daemon thread (size-tiered compaction): an older run joins the merge only when the newer runs together
+ * reach its size, so the big base run is rewritten rarely and each pair is copied O(log(size/batch)) times.
+ * {@link #compact()} merges all runs immediately.<br>
+ * Runs are stored at separate directory, list of runs and count of indexed list rows are kept at "runs" file.<br><br>
+ * This class is thread-safe. If storage fails, UncheckedIOException will be thrown.
+ * @param <T> the type of keys
+ * @author SergeyT
+ */
+public class TieredIndex<T extends Comparable<T>> implements Index<T>, AutoCloseable
+{
+  private static final Logger LOG = Logger.getLogger(TieredIndex.class.getName());
+  private static final int MAX_RUNS = Integer.getInteger("datalist.tiered_max_runs", 8);
+  private static final String RUNS_FILE = "runs";
+  private static final ExecutorService compactor = Executors.newSingleThreadExecutor(r ->
+  {
+    Thread th = new Thread(r, "datalist-compaction");
+    th.setDaemon(true);
+    return th;
+  });
+
+  private final File directory;
+  private final FixedSizeDataStreamer<T> keysHandler;
+  private final int maxRuns;
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private final Object compactionLock = new Object();
+  private final AtomicBoolean compactionQueued = new AtomicBoolean();
+  private volatile List<Run<T>> runs;
+  private volatile int indexedRows;
+  private final AtomicLong nextRun = new AtomicLong();
+  private volatile boolean closed;
+
+  private static final class Run<T extends Comparable<T>>
+  {
+    final long num;
+    final File file;
+    final SortedIndex<T> index;
+
+    Run(long num, File file, SortedIndex<T> index)
+    {
+      this.num = num;
+      this.file = file;
+      this.index = index;
+    }
+  }
+
+  public TieredIndex(File directory, FixedSizeDataStreamer<T> keysHandler) throws IOException
+  {
+    this(directory, keysHandler, MAX_RUNS);
+  }
+
+  TieredIndex(File directory, FixedSizeDataStreamer<T> keysHandler, int maxRuns) throws IOException
+  {
+    this.directory = directory;
+    this.keysHandler = keysHandler;
+    this.maxRuns = maxRuns;
+    if (!directory.isDirectory() && !directory.mkdirs())
+      throw new IOException("Could not create directory " + directory);
+    List<Long> nums = new ArrayList<>();
+    File runsFile = new File(directory, RUNS_FILE);
+    if (runsFile.exists())
+      try (ReadBuffer rb = ChannelBuilder.forRead(runsFile).reader())
+      {
+        for (int i = rb.getInt(); i > 0; --i)
+          nums.add(rb.getLong());
+        indexedRows = rb.hasRemaining() ? rb.getInt() : 0;
+      }
+    List<Run<T>> res = new ArrayList<>(nums.size());
+    for (long num: nums)
+    {
+      res.add(openRun(num));
+      nextRun.accumulateAndGet(num + 1, Math::max);
+    }
+    //runs, which are not in list, were not finished
+    File[] all = directory.listFiles((dir, name) -> name.startsWith("run-"));
+    if (all != null)
+      for (File file: all)
+        if (res.stream().noneMatch(x -> x.file.equals(file)))
+          Files.delete(file.toPath());
+    runs = Collections.unmodifiableList(res);
+  }
+
+  private Run<T> openRun(long num) throws IOException
+  {
+    File file = new File(directory, "run-" + num);
+    return new Run<>(num, file, new SortedIndex<>(file, keysHandler, SortedIndex.BLOCK_SIZE, false));
+  }
+
+  /** Returns new run, that is filled by 'writer'. Run is deleted, if writer fails */
+  private Run<T> writeRun(Consumer<SortedIndex<T>> writer)
+  {
+    Run<T> res;
+    try
+    {
+      res = openRun(nextRun.getAndIncrement());
+    }
+    catch (IOException ex)
+    {
+      throw new UncheckedIOException(ex);
+    }
+    try
+    {
+      writer.accept(res.index);
+      return res;
+    }
+    catch (RuntimeException | Error ex)
+    {
+      try
+      {
+        dispose(Collections.singletonList(res));
+      }
+      catch (RuntimeException disposeEx)
+      {
+        ex.addSuppressed(disposeEx);
+      }
+      throw ex;
+    }
+  }
+
+  /** Replace runs list and save it. Should be called under write lock */
+  private void setRuns(List<Run<T>> newRuns)
+  {
+    File tmp = new File(directory, RUNS_FILE + ".tmp");
+    try
+    {
+      Files.deleteIfExists(tmp.toPath());
+      try (WriteBuffer wb = ChannelBuilder.forWrite(tmp).writer())
+      {
+        wb.putInt(newRuns.size());
+        for (Run<T> run: newRuns)
+          wb.putLong(run.num);
+        wb.putInt(indexedRows);
+      }
+      Files.move(tmp.toPath(), new File(directory, RUNS_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    }
+    catch (IOException ex)
+    {
+      throw new UncheckedIOException(ex);
+    }
+    runs = Collections.unmodifiableList(newRuns);
+  }
+
+  /** Close and delete runs, that are not used already */
+  private static <T extends Comparable<T>> void dispose(List<Run<T>> old)
+  {
+    try
+    {
+      for (Run<T> run: old)
+      {
+        run.index.close();
+        Files.deleteIfExists(run.file.toPath());
+      }
+    }
+    catch (IOException ex)
+    {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  @Override
+  public void recreate(KeyToIndexBuffer<T> values)
+  {
+    values.sort();
+    Run<T> run = values.size() > 0 ? writeRun(x -> x.recreate(values)) : null;
+    List<Run<T>> old;
+    lock.writeLock().lock();
+    try
+    {
+      old = runs;
+      indexedRows = 0;
+      setRuns(run == null ? new ArrayList<>() : new ArrayList<>(Collections.singletonList(run)));
+    }
+    finally
+    {
+      lock.writeLock().unlock();
+    }
+    synchronized (compactionLock)
+    {
+      dispose(old); //running compaction might read them
+    }
+  }
+
+  @Override
+  public void clear()
+  {
+    List<Run<T>> old;
+    lock.writeLock().lock();
+    try
+    {
+      old = runs;
+      indexedRows = 0;
+      setRuns(new ArrayList<>());
+    }
+    finally
+    {
+      lock.writeLock().unlock();
+    }
+    synchronized (compactionLock)
+    {
+      dispose(old); //running compaction might read them
+    }
+  }
+
+  @Override
+  public boolean canAppend()
+  {
+    return true;
+  }
+
+  @Override
+  public int indexedRows()
+  {
+    return indexedRows;
+  }
+
+  @Override
+  public void setIndexedRows(int rows)
+  {
+    lock.writeLock().lock();
+    try
+    {
+      indexedRows = rows;
+      setRuns(new ArrayList<>(runs));
+    }
+    finally
+    {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** Write pairs as a new run. Runs are merged in background when there are too many of them */
+  @Override
+  public void append(KeyToIndexBuffer<T> values)
+  {
+    values.sort();
+    if (values.size() == 0)
+      return;
+    Run<T> run = writeRun(x -> x.recreate(values));
+    lock.writeLock().lock();
+    try
+    {
+      List<Run<T>> res = new ArrayList<>(runs);
+      res.add(run);
+      setRuns(res);
+    }
+    finally
+    {
+      lock.writeLock().unlock();
+    }
+    if (runs.size() > maxRuns && compactionQueued.compareAndSet(false, true))
+      compactor.execute(() ->
+      {
+        compactionQueued.set(false);
+        try
+        {
+          compactTiers();
+        }
+        catch (RuntimeException ex)
+        {
+          LOG.log(Level.WARNING, "Compaction of " + directory + " failed, runs are kept", ex); //next append retries
+        }
+      });
+  }
+
+  /** Merge all runs to one run. Appends are not blocked, runs appended during merge are kept as is */
+  public void compact()
+  {
+    synchronized (compactionLock)
+    {
+      merge(runs);
+    }
+  }
+
+  /** Merge the newest runs of similar size till there are not more than maxRuns runs */
+  private void compactTiers()
+  {
+    synchronized (compactionLock)
+    {
+      while (!closed && runs.size() > maxRuns)
+        if (!merge(newestTier(runs)))
+          return;
+    }
+  }
+
+  /**
+   * Returns the newest runs to merge: at least two, older run is added while it is not bigger than
+   * the newer runs together
+   */
+  private static <T extends Comparable<T>> List<Run<T>> newestTier(List<Run<T>> all)
+  {
+    int from = all.size() - 1;
+    long total = all.get(from).index.pairsCount();
+    while (from > 0)
+    {
+      long size = all.get(from - 1).index.pairsCount();
+      if (size > total && all.size() - from >= 2)
+        break;
+      total += size;
+      --from;
+    }
+    return all.subList(from, all.size());
+  }
+
+  /**
+   * Merge contiguous runs to one run. Should be called under compactionLock.
+   * Returns false, if runs were changed by recreate or clear
+   */
+  private boolean merge(List<Run<T>> merging)
+  {
+    if (closed || merging.size() <= 1)
+      return false;
+    List<SortedIndex<T>> sources = new ArrayList<>(merging.size());
+    for (Run<T> run: merging)
+      sources.add(run.index);
+    Run<T> merged = writeRun(x -> x.recreateMerged(sources)); //runs are sorted, so they are merged by one pass
+    lock.writeLock().lock();
+    try
+    {
+      List<Run<T>> cur = runs;
+      int pos = cur.indexOf(merging.get(0));
+      if (pos < 0 || cur.size() < pos + merging.size() || !cur.subList(pos, pos + merging.size()).equals(merging))
+      {
+        dispose(Collections.singletonList(merged)); //index was recreated or cleared
+        return false;
+      }
+      List<Run<T>> res = new ArrayList<>(cur.size() - merging.size() + 1);
+      res.addAll(cur.subList(0, pos));
+      res.add(merged);
+      res.addAll(cur.subList(pos + merging.size(), cur.size()));
+      setRuns(res);
+    }
+    finally
+    {
+      lock.writeLock().unlock();
+    }
+    dispose(merging);
+    return true;
+  }
+
+  /** Returns current count of runs */
+  public int runsCount()
+  {
+    return runs.size();
+  }
+
+  private SortedIntSet unionOfRuns(Function<SortedIndex<T>, SortedIntSet> query)
+  {
+    lock.readLock().lock();
+    try
+    {
+      List<Run<T>> cur = runs;
+      List<SortedIntSet> found = new ArrayList<>(cur.size());
+      for (Run<T> run: cur)
+        found.add(query.apply(run.index));
+      return SortedIntSet.unionAll(found);
+    }
+    finally
+    {
+      lock.readLock().unlock();
+    }
+  }
+
+  private int sumOfRuns(Function<SortedIndex<T>, Integer> query)
+  {
+    lock.readLock().lock();
+    try
+    {
+      int res = 0;
+      for (Run<T> run: runs)
+        res += query.apply(run.index);
+      return res;
+    }
+    finally
+    {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public SortedIntSet valuesFor(T key)
+  {
+    return unionOfRuns(x -> x.valuesFor(key));
+  }
+
+  @Override
+  public SortedIntSet valuesFor(Collection<T> keys)
+  {
+    return unionOfRuns(x -> x.valuesFor(keys));
+  }
+
+  @Override
+  public SortedIntSet valuesFor(T min, T max)
+  {
+    return unionOfRuns(x -> x.valuesFor(min, max));
+  }
+
+  @Override
+  public SortedIntSet valuesFor(Range<T>... ranges)
+  {
+    return unionOfRuns(x -> x.valuesFor(ranges));
+  }
+
+  @Override
+  public int countFor(T key)
+  {
+    return sumOfRuns(x -> x.countFor(key));
+  }
+
+  @Override
+  public int countFor(T min, T max)
+  {
+    return sumOfRuns(x -> x.countFor(min, max));
+  }
+
+  @Override
+  public List<T> allKeys(boolean includeNull)
+  {
+    TreeSet<T> res = new TreeSet<>(Comparator.nullsLast(Comparator.naturalOrder()));
+    lock.readLock().lock();
+    try
+    {
+      for (Run<T> run: runs)
+        res.addAll(run.index.allKeys(includeNull));
+    }
+    finally
+    {
+      lock.readLock().unlock();
+    }
+    return new ArrayList<>(res);
+  }
+
+  /** Close runs. Waits for running compaction */
+  @Override
+  public void close() throws IOException
+  {
+    synchronized (compactionLock)
+    {
+      closed = true;
+    }
+    lock.writeLock().lock();
+    try
+    {
+      for (Run<T> run: runs)
+        run.index.close();
+    }
+    finally
+    {
+      lock.writeLock().unlock();
+    }
+  }
+}
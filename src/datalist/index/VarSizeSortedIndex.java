@@ -0,0 +1,452 @@
+package datalist.index;
+
+import datalist.io.ChannelBuilder;
+import datalist.io.ReadBuffer;
+import datalist.io.WriteBuffer;
+import datalist.list.DatabaseBrokenError;
+import datalist.stream.DBDataStreamer;
+import datalist.stream.DBDataStreamers;
+import datalist.types.Range;
+import datalist.types.SortedIntSet;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.function.Predicate;
+
+/**
+ * Sorted index for variable size keys (strings, composite keys etc). Usable for mostly distinct values, where
+ * {@link SetIndex} keeps too many keys in RAM and {@link SortedIndex} could not be used.<br>
+ * Distinct keys are stored at blocks of "datalist.varindex_block_size" bytes (4KB by default), only the first key of
+ * each block is kept in RAM. Lookup reads one or few sequential blocks and then rows of found keys.<br>
+ * Index created by {@link #strings(File)} stores keys with prefix compression: each key at block keeps count of chars
+ * shared with previous key and the rest of chars only. Such index supports {@link #valuesStartingWith(String)}.<br><br>
+ *
+ * File structure:<br>
+ * 8 bytes for rows count, 8 bytes for null keys count, 8 bytes for rows offset, 8 bytes for directory offset<br>
+ * blocks of keys, each key followed by rows count as var int<br>
+ * count*sizeof(int) for rows, sorted by keys (nulls at the end)<br>
+ * directory: blocks count, then first key, offset, first row number and keys count for each block<br><br>
+ * If storage fails, UncheckedIOException will be thrown.
+ * @param <T> the type of keys
+ * @author SergeyT
+ */
+public class VarSizeSortedIndex<T extends Comparable<T>> implements Index<T>, AutoCloseable
+{
+  private static final int buffSizeR = Integer.getInteger("sortindex_read_buffer_size", -1);
+  private static final int buffSizeW = Integer.getInteger("sortindex_write_buffer_size", -1);
+  private static final int BLOCK_SIZE = Integer.getInteger("datalist.varindex_block_size", 4096);
+  private static final int HEADER_SIZE = 32;
+
+  private final FileChannel fc;
+  private final DBDataStreamer<T> keysHandler;
+  private final boolean prefixCompression;
+  private final int blockSize;
+  private final Comparator<T> comparator = Comparator.nullsLast(Comparator.naturalOrder());
+  private volatile State<T> state;
+
+  /** Immutable index description, replaced on recreate */
+  private static final class State<T>
+  {
+    final long size;
+    final long nulls;
+    final long rowsOffset;
+    final List<Block<T>> blocks;
+
+    State(long size, long nulls, long rowsOffset, List<Block<T>> blocks)
+    {
+      this.size = size;
+      this.nulls = nulls;
+      this.rowsOffset = rowsOffset;
+      this.blocks = blocks;
+    }
+  }
+
+  private static final class Block<T>
+  {
+    final T first;
+    final long offset;
+    final long firstRow;
+    final int keys;
+
+    Block(T first, long offset, long firstRow, int keys)
+    {
+      this.first = first;
+      this.offset = offset;
+      this.firstRow = firstRow;
+      this.keys = keys;
+    }
+  }
+
+  public VarSizeSortedIndex(File storage, DBDataStreamer<T> keysHandler) throws IOException
+  {
+    this(storage, keysHandler, false, BLOCK_SIZE);
+  }
+
+  VarSizeSortedIndex(File storage, DBDataStreamer<T> keysHandler, boolean prefixCompression, int blockSize)
+    throws IOException
+  {
+    fc = ChannelBuilder.forReadWrite(storage).build();
+    this.keysHandler = keysHandler;
+    this.prefixCompression = prefixCompression;
+    this.blockSize = blockSize;
+    state = fc.size() > HEADER_SIZE ? loadState() : new State<>(0, 0, HEADER_SIZE, Collections.emptyList());
+  }
+
+  /** Creates index for string keys with prefix compression */
+  public static VarSizeSortedIndex<String> strings(File storage) throws IOException
+  {
+    return new VarSizeSortedIndex<>(storage, DBDataStreamers.strings, true, BLOCK_SIZE);
+  }
+
+  private State<T> loadState()
+  {
+    try (ReadBuffer rdr = new ReadBuffer(fc, buffSizeR).sequential())
+    {
+      long size = rdr.getLong();
+      long nulls = rdr.getLong();
+      long rowsOffset = rdr.getLong();
+      rdr.position(rdr.getLong());
+      int cnt = rdr.getInt();
+      List<Block<T>> blocks = new ArrayList<>(cnt);
+      while (--cnt >= 0)
+        blocks.add(new Block<>(keysHandler.read(rdr), rdr.getLong(), rdr.getLong(), rdr.getInt()));
+      return new State<>(size, nulls, rowsOffset, blocks);
+    }
+  }
+
+  @Override
+  public void recreate(KeyToIndexBuffer<T> values)
+  {
+    values.sort();
+    try
+    {
+      fc.truncate(0);
+    }
+    catch (IOException ex)
+    {
+      throw new UncheckedIOException(ex);
+    }
+    State<T> res;
+    try (WriteBuffer writer = new WriteBuffer(fc, buffSizeW).sequential())
+    {
+      writer.position(HEADER_SIZE);
+      List<Block<T>> blocks = new ArrayList<>();
+      long blockStart = -1;
+      long blockRow = 0;
+      long row = 0;
+      long nulls = 0;
+      T first = null;
+      T prev = null;
+      int keys = 0;
+      for (int i = 0; i < values.keysCount(); ++i)
+      {
+        T key = values.key(i);
+        int cnt = values.count(i);
+        if (key == null)
+        {
+          nulls += cnt;
+          continue;
+        }
+        if (blockStart < 0 || writer.position() - blockStart >= blockSize)
+        {
+          if (blockStart >= 0)
+            blocks.add(new Block<>(first, blockStart, blockRow, keys));
+          blockStart = writer.position();
+          blockRow = row;
+          first = key;
+          prev = null; //the first key of block is stored as is
+          keys = 0;
+        }
+        writeKey(writer, prev, key);
+        writer.putVarInt(cnt);
+        prev = key;
+        ++keys;
+        row += cnt;
+      }
+      if (blockStart >= 0)
+        blocks.add(new Block<>(first, blockStart, blockRow, keys));
+
+      long rowsOffset = writer.position();
+      for (PrimitiveIterator.OfInt it = values.rows(); it.hasNext();)
+        writer.putInt(it.nextInt());
+      if (writer.position() != rowsOffset + values.size() * 4L)
+        throw new DatabaseBrokenError("Rows count differs from keys counts");
+
+      long dirOffset = writer.position();
+      writer.putInt(blocks.size());
+      for (Block<T> block: blocks)
+      {
+        keysHandler.write(writer, block.first);
+        writer.putLong(block.offset);
+        writer.putLong(block.firstRow);
+        writer.putInt(block.keys);
+      }
+      writer.position(0);
+      writer.putLong(values.size());
+      writer.putLong(nulls);
+      writer.putLong(rowsOffset);
+      writer.putLong(dirOffset);
+      res = new State<>(values.size(), nulls, rowsOffset, blocks);
+    }
+    state = res;
+  }
+
+  private void writeKey(WriteBuffer writer, T prev, T key)
+  {
+    if (!prefixCompression)
+    {
+      keysHandler.write(writer, key);
+      return;
+    }
+    String text = (String)key;
+    int shared = prev == null ? 0 : sharedPrefix((String)prev, text);
+    byte[] rest = text.substring(shared).getBytes(StandardCharsets.UTF_8);
+    writer.putVarInt(shared);
+    writer.putVarInt(rest.length);
+    writer.put(rest);
+  }
+
+  @SuppressWarnings("unchecked")
+  private T readKey(ReadBuffer rdr, T prev)
+  {
+    if (!prefixCompression)
+      return keysHandler.read(rdr);
+    int shared = rdr.getVarInt();
+    byte[] rest = new byte[rdr.getVarInt()];
+    rdr.get(rest);
+    String suffix = new String(rest, StandardCharsets.UTF_8);
+    return (T)(shared == 0 ? suffix : ((String)prev).substring(0, shared) + suffix);
+  }
+
+  private static int sharedPrefix(String a, String b)
+  {
+    int len = Math.min(a.length(), b.length());
+    int i = 0;
+    while (i < len && a.charAt(i) == b.charAt(i))
+      ++i;
+    if (i > 0 && Character.isHighSurrogate(a.charAt(i - 1)))
+      --i; //do not split surrogate pair, it could not be encoded to UTF-8 alone
+    return i;
+  }
+
+  @Override
+  public void clear()
+  {
+    try
+    {
+      fc.truncate(0);
+    }
+    catch (IOException ex)
+    {
+      throw new UncheckedIOException(ex);
+    }
+    state = new State<>(0, 0, HEADER_SIZE, Collections.emptyList());
+  }
+
+  public boolean isEmpty()
+  {
+    return state.size == 0;
+  }
+
+  /** Returns number of the last block with the first key not greater than key (or 0) */
+  private int findBlock(List<Block<T>> blocks, T key)
+  {
+    int low = 0;
+    int high = blocks.size() - 1;
+    while (low < high)
+    {
+      int middle = (low + high + 1) >>> 1;
+      if (comparator.compare(blocks.get(middle).first, key) <= 0)
+        low = middle;
+      else
+        high = middle - 1;
+    }
+    return low;
+  }
+
+  /** Find rows for keys from 'from' while 'inRange' is true. Returns [first row, rows count] */
+  private long[] scan(State<T> st, ReadBuffer rdr, T from, Predicate<T> inRange)
+  {
+    long[] res = new long[2];
+    if (st.blocks.isEmpty())
+      return res;
+    long firstRow = -1;
+    for (int b = findBlock(st.blocks, from); b < st.blocks.size(); ++b)
+    {
+      Block<T> block = st.blocks.get(b);
+      rdr.position(block.offset);
+      long row = block.firstRow;
+      T prev = null;
+      for (int i = 0; i < block.keys; ++i)
+      {
+        T key = readKey(rdr, prev);
+        int cnt = rdr.getVarInt();
+        if (comparator.compare(key, from) >= 0)
+        {
+          if (!inRange.test(key))
+          {
+            res[0] = Math.max(firstRow, 0);
+            return res;
+          }
+          if (firstRow < 0)
+            firstRow = row;
+          res[1] += cnt;
+        }
+        prev = key;
+        row += cnt;
+      }
+    }
+    res[0] = Math.max(firstRow, 0);
+    return res;
+  }
+
+  private SortedIntSet readRows(State<T> st, ReadBuffer rdr, long firstRow, long count)
+  {
+    if (count == 0)
+      return SortedIntSet.empty();
+    int[] rows = new int[(int)count];
+    rdr.position(st.rowsOffset + firstRow * 4);
+    for (int i = 0; i < rows.length; ++i)
+      rows[i] = rdr.getInt();
+    return SortedIntSet.wrap(rows); //rows of few keys are not sorted, set sorts them on demand
+  }
+
+  private SortedIntSet doValuesFor(State<T> st, ReadBuffer rdr, T min, T max)
+  {
+    if (min == null || max == null)
+    {
+      if (min != null || max != null)
+        throw new IllegalStateException();
+      return readRows(st, rdr, st.size - st.nulls, st.nulls);
+    }
+    long[] found = scan(st, rdr, min, key -> key.compareTo(max) <= 0);
+    return readRows(st, rdr, found[0], found[1]);
+  }
+
+  private void checkRange(T min, T max)
+  {
+    if (min == null || max == null)
+      throw new IllegalArgumentException("Range with nulls not allowed");
+    if (comparator.compare(min, max) > 0)
+      throw new IllegalArgumentException("Inverse range");
+  }
+
+  @Override
+  public SortedIntSet valuesFor(T min, T max)
+  {
+    checkRange(min, max);
+    try (ReadBuffer rdr = new ReadBuffer(fc, buffSizeR))
+    {
+      return doValuesFor(state, rdr, min, max);
+    }
+  }
+
+  @Override
+  public SortedIntSet valuesFor(T key)
+  {
+    try (ReadBuffer rdr = new ReadBuffer(fc, buffSizeR))
+    {
+      return doValuesFor(state, rdr, key, key);
+    }
+  }
+
+  @Override
+  public SortedIntSet valuesFor(Collection<T> keys)
+  {
+    State<T> st = state;
+    try (ReadBuffer rdr = new ReadBuffer(fc, buffSizeR))
+    {
+      List<SortedIntSet> found = new ArrayList<>(keys.size());
+      for (T key: keys)
+        found.add(doValuesFor(st, rdr, key, key));
+      return SortedIntSet.unionAll(found);
+    }
+  }
+
+  @Override
+  public SortedIntSet valuesFor(Range<T>... ranges)
+  {
+    State<T> st = state;
+    try (ReadBuffer rdr = new ReadBuffer(fc, buffSizeR))
+    {
+      List<SortedIntSet> found = new ArrayList<>(ranges.length);
+      for (Range<T> range: ranges)
+        found.add(doValuesFor(st, rdr, range.getMin(), range.getMax()));
+      return SortedIntSet.unionAll(found);
+    }
+  }
+
+  /** Returns rows for all keys starting with 'prefix'. Available for index created by {@link #strings(File)} */
+  @SuppressWarnings("unchecked")
+  public SortedIntSet valuesStartingWith(String prefix)
+  {
+    if (!prefixCompression)
+      throw new UnsupportedOperationException("Prefix search requires string keys");
+    State<T> st = state;
+    try (ReadBuffer rdr = new ReadBuffer(fc, buffSizeR))
+    {
+      long[] found = scan(st, rdr, (T)prefix, key -> ((String)key).startsWith(prefix));
+      return readRows(st, rdr, found[0], found[1]);
+    }
+  }
+
+  @Override
+  public int countFor(T key)
+  {
+    State<T> st = state;
+    if (key == null)
+      return (int)st.nulls;
+    try (ReadBuffer rdr = new ReadBuffer(fc, buffSizeR))
+    {
+      return (int)scan(st, rdr, key, x -> x.compareTo(key) == 0)[1];
+    }
+  }
+
+  @Override
+  public int countFor(T min, T max)
+  {
+    checkRange(min, max);
+    try (ReadBuffer rdr = new ReadBuffer(fc, buffSizeR))
+    {
+      return (int)scan(state, rdr, min, key -> key.compareTo(max) <= 0)[1];
+    }
+  }
+
+  @Override
+  public List<T> allKeys(boolean includeNull)
+  {
+    State<T> st = state;
+    List<T> res = new ArrayList<>();
+    try (ReadBuffer rdr = new ReadBuffer(fc, buffSizeR).sequential())
+    {
+      for (Block<T> block: st.blocks)
+      {
+        rdr.position(block.offset);
+        T prev = null;
+        for (int i = 0; i < block.keys; ++i)
+        {
+          prev = readKey(rdr, prev);
+          rdr.getVarInt();
+          res.add(prev);
+        }
+      }
+    }
+    if (includeNull && st.nulls > 0)
+      res.add(null);
+    return res;
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    fc.close();
+  }
+}
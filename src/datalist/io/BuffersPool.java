@@ -1,5 +1,8 @@
 package datalist.io;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
 import java.util.concurrent.ArrayBlockingQueue;
 
@@ -12,8 +15,36 @@ import java.util.concurrent.ArrayBlockingQueue;
 public final class BuffersPool
 {
   private static final int BUFFER_SIZE = Integer.getInteger("datalist.buffer_size", 2048);
+  /** Limit for buffers, that grows at sequential reading/writing. Specified at "datalist.max_buffer_size" system variable (1Mb by default) */
+  static final int MAX_BUFFER_SIZE = Integer.getInteger("datalist.max_buffer_size", 1 << 20);
+  /** Count of buffer reloads without repositioning to decide that data are read/write sequentially */
+  static final int SEQUENTIAL_RELOADS = 2;
   private static final ArrayBlockingQueue<ByteBuffer> abq = new ArrayBlockingQueue<>(10);
   //ArrayBlockingQueue allows to limit buffers count (in case of erroneous usage), but use lock.
+  private static final Object UNSAFE;
+  private static final Method INVOKE_CLEANER;
+
+  static
+  {
+    Object unsafe = null;
+    Method invokeCleaner = null;
+    try
+    {
+      Class<?> cls = Class.forName("sun.misc.Unsafe");
+      Field field = cls.getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      unsafe = field.get(null);
+      invokeCleaner = cls.getMethod("invokeCleaner", ByteBuffer.class);
+    }
+    catch (ReflectiveOperationException | RuntimeException ex)
+    {
+      //Java 8 or jdk.unsupported is not available: memory is released by GC
+      unsafe = null;
+      invokeCleaner = null;
+    }
+    UNSAFE = unsafe;
+    INVOKE_CLEANER = invokeCleaner;
+  }
 
   /** Get next buffer. Size specified at "datalist.buffer_size" system variable (2Mb by default). */
   public static ByteBuffer get()
@@ -39,6 +70,37 @@ public final class BuffersPool
       abq.offer(buff);
   }
 
+  /**
+   * Release memory of direct or mapped buffer without waiting for GC. Heap buffers are ignored.<br>
+   * <b>Buffer, its slices and views should not be used after free.</b>
+   * @param buff buffer, that was allocated or mapped (not a slice or duplicate)
+   */
+  public static void free(ByteBuffer buff)
+  {
+    if (buff == null || !buff.isDirect() || INVOKE_CLEANER == null)
+      return;
+    try
+    {
+      INVOKE_CLEANER.invoke(UNSAFE, buff);
+    }
+    catch (InvocationTargetException ex)
+    {
+      if (ex.getCause() instanceof RuntimeException)
+        throw (RuntimeException)ex.getCause();
+      throw new IllegalStateException(ex.getCause());
+    }
+    catch (IllegalAccessException ex)
+    {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  /** Returns size of grown buffer or 'capacity' when limit reached */
+  static int grownSize(int capacity)
+  {
+    return Math.max(capacity, Math.min(capacity * 2, MAX_BUFFER_SIZE));
+  }
+
   private BuffersPool()
   {
   }
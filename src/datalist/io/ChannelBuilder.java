@@ -21,6 +21,7 @@ public class ChannelBuilder
   private final Path path;
   private final Collection<OpenOption> options = new ArrayList<>();
   private Boolean allowCreate;
+  private ChannelRegistry registry;
 
   public ChannelBuilder(Path path)
   {
@@ -109,9 +110,21 @@ public class ChannelBuilder
     return this;
   }
 
+  /**
+   * Take channel from registry instead of open new one. Reader or writer returns channel to registry on close.<br>
+   * Shared channels always opened for read and write. Null registry means usual (not shared) channel.
+   */
+  public ChannelBuilder shared(ChannelRegistry registry)
+  {
+    this.registry = registry;
+    return this;
+  }
+
   /** Open file channel and return it */
   public FileChannel build() throws IOException
   {
+    if (registry != null)
+      throw new IllegalStateException("Shared channel should be used by reader() or writer()");
     return FileChannel.open(path, options.toArray(new OpenOption[options.size()]));
   }
 
@@ -119,21 +132,14 @@ public class ChannelBuilder
       Useful for read whole file.*/
   public ReadBuffer reader() throws IOException
   {
-    final FileChannel fc = forRead().build();
+    final FileChannel fc = forRead().open();
     return new ReadBuffer(fc, -1)
     {
       @Override
       public void close()
       {
-        try
-        {
-          super.close();
-          fc.close();
-        }
-        catch (IOException ex)
-        {
-          throw new UncheckedIOException(ex);
-        }
+        super.close();
+        release(fc);
       }
     };
   }
@@ -141,30 +147,14 @@ public class ChannelBuilder
   /** Create new writer for constructed channel. Channel will be closed when reader closed */
   public WriteBuffer writer() throws IOException
   {
-    final FileChannel fc = forWrite().build();
-    return new WriteBuffer(fc, -1)
-    {
-      @Override
-      public void close()
-      {
-        try
-        {
-          super.close();
-          fc.close();
-        }
-        catch (IOException ex)
-        {
-          throw new UncheckedIOException(ex);
-        }
-      }
-    };
+    return writer(-1);
   }
 
   /** Create new writer for constructed channel. Channel will be closed when reader closed.
    @param capacity buffer capacity. To reduce IO operations count, use bigger buffer.*/
   public WriteBuffer writer(int capacity) throws IOException
   {
-    final FileChannel fc = forWrite().build();
+    final FileChannel fc = forWrite().open();
     return new WriteBuffer(fc, capacity)
     {
       @Override
@@ -173,13 +163,38 @@ public class ChannelBuilder
         try
         {
           super.close();
-          fc.close();
         }
-        catch (IOException ex)
+        finally
         {
-          throw new UncheckedIOException(ex);
+          release(fc);
         }
       }
     };
   }
-}
\ No newline at end of file
+
+  private FileChannel open() throws IOException
+  {
+    if (registry == null)
+      return build();
+    if (options.contains(StandardOpenOption.DELETE_ON_CLOSE))
+      throw new IllegalStateException("Shared channel could not be deleted on close");
+    return registry.acquire(path);
+  }
+
+  private void release(FileChannel fc)
+  {
+    if (registry != null)
+    {
+      registry.release(path, fc);
+      return;
+    }
+    try
+    {
+      fc.close();
+    }
+    catch (IOException ex)
+    {
+      throw new UncheckedIOException(ex);
+    }
+  }
+}
@@ -0,0 +1,147 @@
+package datalist.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Keeps FileChannels opened to avoid open/close costs when the same file is appended or read many times
+ * (for example, {@link datalist.master_details.CrossIndex} flushes each chunk of import).<br>
+ * Each channel opened for read and write. Channels are counted by references: {@link #acquire(Path)} and
+ * {@link #release(Path, FileChannel)} should be called in pairs. Released channels stay opened (but not more than
+ * "datalist.max_idle_channels" system variable, 64 by default) till {@link #close()}. Channels in use are closed
+ * by their last release.<br>
+ * Shared channels should be accessed by position only (as {@link ReadBuffer} and {@link WriteBuffer} do).
+ * You should never close shared channel manually.<br>
+ * This class is thread-safe.
+ * @author SergeyT
+ * @see ChannelBuilder#shared(ChannelRegistry)
+ */
+public final class ChannelRegistry implements AutoCloseable
+{
+  private static final int MAX_IDLE = Integer.getInteger("datalist.max_idle_channels", 64);
+
+  private final Map<Path, SharedChannel> channels = new HashMap<>();
+  /** Channels in use, that are removed from 'channels' by close() or reopen. They are closed by last release */
+  private final Map<FileChannel, SharedChannel> detached = new IdentityHashMap<>();
+  private int idleCount;
+
+  /** Returns opened channel for path (creates file if it absent) and increase references count */
+  public synchronized FileChannel acquire(Path path) throws IOException
+  {
+    Path key = path.toAbsolutePath().normalize();
+    SharedChannel res = channels.get(key);
+    if (res == null || !res.fc.isOpen())
+    {
+      if (res != null && res.refs == 0)
+        --idleCount;
+      else if (res != null)
+        detached.put(res.fc, res);
+      res = new SharedChannel(FileChannel.open(key, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE));
+      channels.put(key, res);
+    }
+    else if (res.refs == 0)
+      --idleCount;
+    ++res.refs;
+    return res.fc;
+  }
+
+  /**
+   * Decrease references count of channel 'fc' returned by {@link #acquire(Path)}.
+   * Channel might be closed if there are too many unused channels
+   */
+  public synchronized void release(Path path, FileChannel fc)
+  {
+    Path key = path.toAbsolutePath().normalize();
+    SharedChannel res = channels.get(key);
+    if (res == null || res.fc != fc)
+    {
+      res = detached.get(fc);
+      if (res == null)
+        throw new IllegalStateException("Channel for " + path + " is not acquired");
+      if (--res.refs == 0)
+      {
+        detached.remove(fc);
+        closeChannel(fc);
+      }
+      return;
+    }
+    if (res.refs <= 0)
+      throw new IllegalStateException("Channel for " + path + " is not acquired");
+    if (--res.refs > 0)
+      return;
+    if (idleCount < MAX_IDLE)
+      ++idleCount;
+    else
+    {
+      channels.remove(key);
+      closeChannel(res.fc);
+    }
+  }
+
+  /** Count of opened channels (used and unused) */
+  public synchronized int size()
+  {
+    return channels.size();
+  }
+
+  /** Close all channels, that are not used now */
+  public synchronized void closeIdle()
+  {
+    for (Iterator<SharedChannel> it = channels.values().iterator(); it.hasNext();)
+    {
+      SharedChannel item = it.next();
+      if (item.refs == 0)
+      {
+        it.remove();
+        closeChannel(item.fc);
+      }
+    }
+    idleCount = 0;
+  }
+
+  /**
+   * Close all unused channels. Channels in use are closed by their last release,
+   * next {@link #acquire(Path)} opens new channel
+   */
+  @Override
+  public synchronized void close()
+  {
+    for (SharedChannel item: channels.values())
+      if (item.refs == 0)
+        closeChannel(item.fc);
+      else
+        detached.put(item.fc, item);
+    channels.clear();
+    idleCount = 0;
+  }
+
+  private static void closeChannel(FileChannel fc)
+  {
+    try
+    {
+      fc.close();
+    }
+    catch (IOException ex)
+    {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  private static class SharedChannel
+  {
+    final FileChannel fc;
+    int refs;
+
+    SharedChannel(FileChannel fc)
+    {
+      this.fc = fc;
+    }
+  }
+}
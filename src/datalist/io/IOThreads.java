@@ -0,0 +1,55 @@
+package datalist.io;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Dedicated thread pool for blocking reads (index lookups etc). Allows to wait for few disks reads at the same time,
+ * so total latency is near to the slowest read, not to the sum of all reads.<br>
+ * Threads count specified at "datalist.io_threads" system variable (8 by default). Requests are queued when all threads are busy.<br>
+ * Threads are daemons and does not prevent application exit.<br>
+ * This class is thread-safe.
+ * @author SergeyT
+ */
+public final class IOThreads
+{
+  private static final int THREADS = Integer.getInteger("datalist.io_threads", 8);
+  private static final AtomicInteger threadNum = new AtomicInteger();
+  private static final ExecutorService pool = Executors.newFixedThreadPool(THREADS, r ->
+  {
+    Thread th = new Thread(r, "datalist-io-" + threadNum.incrementAndGet());
+    th.setDaemon(true);
+    return th;
+  });
+
+  /** Queue 'request' for execution at IO thread */
+  public static <T> CompletableFuture<T> submit(Supplier<T> request)
+  {
+    return CompletableFuture.supplyAsync(request, pool);
+  }
+
+  /** Wait for request result. Exceptions thrown by request (for example, UncheckedIOException) are rethrown as is */
+  public static <T> T join(CompletableFuture<T> request)
+  {
+    try
+    {
+      return request.join();
+    }
+    catch (CompletionException ex)
+    {
+      if (ex.getCause() instanceof RuntimeException)
+        throw (RuntimeException)ex.getCause();
+      if (ex.getCause() instanceof Error)
+        throw (Error)ex.getCause();
+      throw ex;
+    }
+  }
+
+  private IOThreads()
+  {
+  }
+}
@@ -3,6 +3,7 @@ package datalist.io;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
@@ -12,14 +13,20 @@ import java.util.Date;
  * <p>Read-only wrapper for ByteBuffer, that automatically read data from FileChannel.</p>
  * <p>Does not close FileChannel. You should close it manually.</p>
  * <p>Multithread application should create ReadBuffer for each thread of synchronize all methods.</p>
+ * <p>When data are read sequentially (buffer reloaded few times without repositioning), buffer grows up to
+ * "datalist.max_buffer_size" (1Mb by default) to reduce IO operations count. Random positioning returns initial buffer.
+ * Call {@link #sequential()} when whole file would be read.</p>
  * <p>If storage fails, UncheckedIOException will be thrown.
  * @author SergeyT
  */
 public class ReadBuffer extends InputStream implements AutoCloseable
 {
   private final FileChannel fc;
+  private ByteBuffer initial;
   private ByteBuffer buff;
   private long pos;
+  private int reloads;
+  private boolean sequential;
 
   /**
    * Create new ReadBuffer for fc.
@@ -37,6 +44,17 @@ public class ReadBuffer extends InputStream implements AutoCloseable
     else
       this.buff = ByteBuffer.allocate(capacity);
     buff.limit(0); //read by first request
+    initial = buff;
+  }
+
+  /**
+   * Hint that data will be read sequentially (for example, whole file). Buffer grows on each reload
+   * without waiting for sequential access detection.
+   */
+  public ReadBuffer sequential()
+  {
+    sequential = true;
+    return this;
   }
 
   /** Notify read buffer that data should be rereaded */
@@ -49,7 +67,9 @@ public class ReadBuffer extends InputStream implements AutoCloseable
   @Override
   public void close()
   {
-    BuffersPool.push(buff);
+    replaceBuffer(initial);
+    BuffersPool.push(initial);
+    initial = null;
     buff = null;
   }
 
@@ -65,12 +85,17 @@ public class ReadBuffer extends InputStream implements AutoCloseable
    */
   public ReadBuffer position(long newPos)
   {
-    if (newPos > pos && newPos < pos + buff.limit())
+    if (newPos == pos + buff.position())
+      return this; //sequential read, not a jump
+    if (newPos >= pos && newPos < pos + buff.limit())
     {
       buff.position((int) (newPos - pos));
       return this;
     }
     pos = newPos;
+    reloads = 0;
+    if (!sequential)
+      replaceBuffer(initial);
     buff.limit(0);
     return this;
   }
@@ -107,19 +132,90 @@ public class ReadBuffer extends InputStream implements AutoCloseable
     return buff.get();
   }
 
-  /** Read data to 'dst' array. Buffer size should be bigger than 'dst' array */
+  /** Read data to 'dst' array. Arrays bigger than buffer are read directly from file */
   public void get(byte[] dst)
   {
-    int dstPos = 0;
-    int dstLen = dst.length;
-    while (dstPos < dstLen)
+    get(dst, 0, dst.length);
+  }
+
+  /**
+   * Read 'len' bytes to 'dst' array starting from 'off'. Big arrays are read directly from file, bypassing the buffer.<br>
+   * BufferUnderflowException is thrown, if file ends before 'len' bytes are read
+   */
+  public void get(byte[] dst, int off, int len)
+  {
+    int cnt = Math.min(len, buff.remaining());
+    buff.get(dst, off, cnt);
+    off += cnt;
+    len -= cnt;
+    if (len >= buff.capacity())
     {
-      int cnt = dstLen - dstPos;
-      checkGet(cnt);
+      readDirect(ByteBuffer.wrap(dst, off, len));
+      return;
+    }
+    while (len > 0)
+    {
+      checkGet(len);
+      if (!buff.hasRemaining())
+        throw new BufferUnderflowException(); //end of file
+      cnt = Math.min(len, buff.remaining());
+      buff.get(dst, off, cnt);
+      off += cnt;
+      len -= cnt;
+    }
+  }
 
-      cnt = Math.min(cnt, buff.remaining());
-      buff.get(dst, dstPos, cnt);
-      dstPos += cnt;
+  /**
+   * Fill 'dst' from current position. Big buffers are read directly from file, bypassing the internal buffer.<br>
+   * BufferUnderflowException is thrown, if file ends before 'dst' is filled
+   */
+  public void get(ByteBuffer dst)
+  {
+    if (dst.remaining() <= buff.remaining())
+    {
+      int oldLimit = buff.limit();
+      buff.limit(buff.position() + dst.remaining());
+      dst.put(buff);
+      buff.limit(oldLimit);
+      return;
+    }
+    dst.put(buff);
+    if (dst.remaining() >= buff.capacity())
+    {
+      readDirect(dst);
+      return;
+    }
+    while (dst.hasRemaining())
+    {
+      checkGet(dst.remaining());
+      if (!buff.hasRemaining())
+        throw new BufferUnderflowException(); //end of file
+      int oldLimit = buff.limit();
+      buff.limit(buff.position() + Math.min(dst.remaining(), buff.remaining()));
+      dst.put(buff);
+      buff.limit(oldLimit);
+    }
+  }
+
+  /** Read whole 'dst' from file without buffering. Internal buffer should be empty */
+  private void readDirect(ByteBuffer dst)
+  {
+    pos += buff.position();
+    buff.clear();
+    buff.limit(0);
+    try
+    {
+      while (dst.hasRemaining())
+      {
+        int read = fc.read(dst, pos);
+        if (read < 0)
+          throw new BufferUnderflowException();
+        pos += read;
+      }
+    }
+    catch (IOException ex)
+    {
+      throw new UncheckedIOException(ex);
     }
   }
 
@@ -159,6 +255,80 @@ public class ReadBuffer extends InputStream implements AutoCloseable
     return buff.getDouble();
   }
 
+  /** Read unsigned int, that stored by {@link WriteBuffer#putVarInt(int) WriteBuffer.putVarInt(int)} */
+  public int getVarInt()
+  {
+    int res = 0;
+    int shift = 0;
+    byte b;
+    do
+    {
+      if (shift > 28)
+        throw new IllegalStateException("Malformed variable length int at " + position());
+      b = get();
+      res |= (b & 0x7F) << shift;
+      shift += 7;
+    } while (b < 0);
+    return res;
+  }
+
+  /** Read unsigned long, that stored by {@link WriteBuffer#putVarLong(long) WriteBuffer.putVarLong(long)} */
+  public long getVarLong()
+  {
+    long res = 0;
+    int shift = 0;
+    byte b;
+    do
+    {
+      if (shift > 63)
+        throw new IllegalStateException("Malformed variable length long at " + position());
+      b = get();
+      res |= (long)(b & 0x7F) << shift;
+      shift += 7;
+    } while (b < 0);
+    return res;
+  }
+
+  /** Read signed int, that stored by {@link WriteBuffer#putZigZagInt(int) WriteBuffer.putZigZagInt(int)} */
+  public int getZigZagInt()
+  {
+    int val = getVarInt();
+    return (val >>> 1) ^ -(val & 1);
+  }
+
+  /** Read signed long, that stored by {@link WriteBuffer#putZigZagLong(long) WriteBuffer.putZigZagLong(long)} */
+  public long getZigZagLong()
+  {
+    long val = getVarLong();
+    return (val >>> 1) ^ -(val & 1);
+  }
+
+  /** Read 'cnt' items to 'dst' starting from 'from', that stored by {@link WriteBuffer#putZigZagInts(int[], int, int) WriteBuffer.putZigZagInts()} */
+  public void getZigZagInts(int[] dst, int from, int cnt)
+  {
+    int till = from + cnt;
+    for (int i = from; i < till; ++i)
+      dst[i] = getZigZagInt();
+  }
+
+  /** Read 'cnt' items to 'dst' starting from 'from', that stored by {@link WriteBuffer#putDeltaInts(int[], int, int) WriteBuffer.putDeltaInts()} */
+  public void getDeltaInts(int[] dst, int from, int cnt)
+  {
+    int till = from + cnt;
+    int prev = 0;
+    for (int i = from; i < till; ++i)
+      dst[i] = prev += getZigZagInt();
+  }
+
+  /** Read 'cnt' items to 'dst' starting from 'from', that stored by {@link WriteBuffer#putDeltaLongs(long[], int, int) WriteBuffer.putDeltaLongs()} */
+  public void getDeltaLongs(long[] dst, int from, int cnt)
+  {
+    int till = from + cnt;
+    long prev = 0;
+    for (int i = from; i < till; ++i)
+      dst[i] = prev += getZigZagLong();
+  }
+
   /** Load text, that stored by {@link WriteBuffer#putString(java.lang.String) WriteBuffer.putString(String)}*/
   public String getString()
   {
@@ -166,9 +336,8 @@ public class ReadBuffer extends InputStream implements AutoCloseable
     if (size == -1)
       return null;
 
-    checkGet(size);
     byte[] bytes = new byte[size];
-    buff.get(bytes);
+    get(bytes);
     return new String(bytes, StandardCharsets.UTF_8);
   }
 
@@ -193,6 +362,14 @@ public class ReadBuffer extends InputStream implements AutoCloseable
       return null;
   }
 
+  /** Grown buffers are direct to avoid copying by FileChannel, so they are released explicitly */
+  private void replaceBuffer(ByteBuffer newBuff)
+  {
+    if (buff != initial && buff != newBuff)
+      BuffersPool.free(buff);
+    buff = newBuff;
+  }
+
   /** Before each read, check if buffer contains enought data */
   private void checkGet(int size)
   {
@@ -200,12 +377,20 @@ public class ReadBuffer extends InputStream implements AutoCloseable
       return;
 
     pos += buff.position();
-    buff.compact();
+    if ((sequential || ++reloads >= BuffersPool.SEQUENTIAL_RELOADS) && buff.capacity() < BuffersPool.MAX_BUFFER_SIZE)
+    {
+      ByteBuffer grown = ByteBuffer.allocateDirect(BuffersPool.grownSize(buff.capacity()));
+      grown.put(buff);
+      replaceBuffer(grown);
+    }
+    else
+      buff.compact();
 
     try
     {
-      while (buff.hasRemaining() && buff.position() < size && fc.position() < fc.size())
-        fc.read(buff, pos + buff.position());
+      while (buff.hasRemaining() && buff.position() < size)
+        if (fc.read(buff, pos + buff.position()) < 0)
+          break;
       buff.flip();
     }
     catch (IOException ex)
@@ -218,7 +403,7 @@ public class ReadBuffer extends InputStream implements AutoCloseable
   public int read()
   {
     if (hasRemaining())
-      return getByte();
+      return getByte() & 0xFF;
     else
       return -1;
   }
@@ -226,9 +411,19 @@ public class ReadBuffer extends InputStream implements AutoCloseable
   @Override
   public int read(byte[] b)
   {
-    long old = position();
-    get(b);
-    return Math.toIntExact(pos - old);
+    return read(b, 0, b.length);
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len)
+  {
+    if (len == 0)
+      return 0;
+    int cnt = (int)Math.min(len, remaining());
+    if (cnt <= 0)
+      return -1;
+    get(b, off, cnt);
+    return cnt;
   }
 
   @Override
@@ -12,14 +12,19 @@ import java.util.Date;
  * <p>Write-only wrapper for ByteBuffer which automatically flush data to FileChannel.</p>
  * <p>Does not close FileChannel. You should close it manually.</p>
  * <p>Multithread application should create WriteBuffer for each thread or synchronize all methods.</p>
+ * <p>When buffer overflows few times without repositioning, it grows up to "datalist.max_buffer_size" (1Mb by default).
+ * Call {@link #sequential()} for long imports to grow it from the start.</p>
  * <p>If storage fails, UncheckedIOException will be thrown.
  * @author SergeyT
  */
 public class WriteBuffer extends OutputStream implements AutoCloseable
 {
   private final FileChannel fc;
+  private ByteBuffer initial;
   private ByteBuffer buff;
   private long pos = -1;
+  private int flushes;
+  private boolean sequential;
 
   /**
    * Create new WriteBuffer for fc.
@@ -36,6 +41,14 @@ public class WriteBuffer extends OutputStream implements AutoCloseable
       this.buff = BuffersPool.get();
     else
       this.buff = ByteBuffer.allocate(capacity);
+    initial = buff;
+  }
+
+  /** Hint that data will be written sequentially. Buffer grows on each overflow without waiting for detection */
+  public WriteBuffer sequential()
+  {
+    sequential = true;
+    return this;
   }
 
   public void put(byte b)
@@ -44,17 +57,27 @@ public class WriteBuffer extends OutputStream implements AutoCloseable
     buff.put(b);
   }
 
-  /** Put data from 'src' array to buffer (and then to file). Buffer size should be bigger than 'src' array */
+  /** Put data from 'src' array to buffer (and then to file). Arrays bigger than buffer are written directly to file */
   public void put(byte[] src)
   {
-    int srcPos = 0;
-    int srcLen = src.length;
-    if (buff.remaining() > srcLen)
+    put(src, 0, src.length);
+  }
+
+  /** Put 'len' bytes from 'src' starting from 'off'. Big arrays are written directly to file, bypassing the buffer */
+  public void put(byte[] src, int off, int len)
+  {
+    if (buff.remaining() > len)
     {
-      buff.put(src);
+      buff.put(src, off, len);
+      return;
+    }
+    if (len >= buff.capacity())
+    {
+      writeDirect(ByteBuffer.wrap(src, off, len));
       return;
     }
-    while (srcPos < srcLen)
+    int till = off + len;
+    while (off < till)
     {
       int rem = buff.remaining();
       if (rem < 16) //write at least 16 bytes
@@ -62,9 +85,50 @@ public class WriteBuffer extends OutputStream implements AutoCloseable
         flush();
         rem = buff.remaining();
       }
-      int cnt = Math.min(srcLen - srcPos, rem);
-      buff.put(src, srcPos, cnt);
-      srcPos += cnt;
+      int cnt = Math.min(till - off, rem);
+      buff.put(src, off, cnt);
+      off += cnt;
+    }
+  }
+
+  /** Put all remaining data from 'src'. Big buffers are written directly to file, bypassing the internal buffer */
+  public void put(ByteBuffer src)
+  {
+    if (buff.remaining() > src.remaining())
+    {
+      buff.put(src);
+      return;
+    }
+    if (src.remaining() >= buff.capacity())
+    {
+      writeDirect(src);
+      return;
+    }
+    while (src.hasRemaining())
+    {
+      if (!buff.hasRemaining())
+        flush();
+      int oldLimit = src.limit();
+      src.limit(src.position() + Math.min(src.remaining(), buff.remaining()));
+      buff.put(src);
+      src.limit(oldLimit);
+    }
+  }
+
+  /** Flush buffered data and write whole 'src' to file without copying to buffer */
+  private void writeDirect(ByteBuffer src)
+  {
+    flush();
+    try
+    {
+      if (pos < 0)
+        pos = fc.size();
+      while (src.hasRemaining())
+        pos += fc.write(src, pos);
+    }
+    catch (IOException ex)
+    {
+      throw new UncheckedIOException(ex);
     }
   }
 
@@ -98,6 +162,84 @@ public class WriteBuffer extends OutputStream implements AutoCloseable
     buff.putDouble(value);
   }
 
+  /**
+   * Put unsigned int with variable length: 7 bits per byte, high bit set when more bytes follow.<br>
+   * Takes 1 byte for values below 128, 5 bytes for negative values. Use {@link ReadBuffer#getVarInt() ReadBuffer.getVarInt()} to read it
+   */
+  public void putVarInt(int value)
+  {
+    checkPut(5);
+    while ((value & ~0x7F) != 0)
+    {
+      buff.put((byte)((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    buff.put((byte)value);
+  }
+
+  /** Put unsigned long with variable length (up to 10 bytes). Use {@link ReadBuffer#getVarLong() ReadBuffer.getVarLong()} to read it */
+  public void putVarLong(long value)
+  {
+    checkPut(10);
+    while ((value & ~0x7FL) != 0)
+    {
+      buff.put((byte)((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    buff.put((byte)value);
+  }
+
+  /** Put signed int with variable length. Zig-zag encoding keeps small negative values short */
+  public void putZigZagInt(int value)
+  {
+    putVarInt((value << 1) ^ (value >> 31));
+  }
+
+  /** Put signed long with variable length. Zig-zag encoding keeps small negative values short */
+  public void putZigZagLong(long value)
+  {
+    putVarLong((value << 1) ^ (value >> 63));
+  }
+
+  /**
+   * Put 'cnt' items from 'src' starting from 'from' as zig-zag varints. Count is not stored.<br>
+   * Use {@link ReadBuffer#getZigZagInts(int[], int, int) ReadBuffer.getZigZagInts()} to read it
+   */
+  public void putZigZagInts(int[] src, int from, int cnt)
+  {
+    int till = from + cnt;
+    for (int i = from; i < till; ++i)
+      putZigZagInt(src[i]);
+  }
+
+  /**
+   * Put 'cnt' items from 'src' starting from 'from' as differences between neighbours. Count is not stored.<br>
+   * Sorted arrays (row numbers, offsets) takes 1-2 bytes per item instead of 4.
+   * Use {@link ReadBuffer#getDeltaInts(int[], int, int) ReadBuffer.getDeltaInts()} to read it
+   */
+  public void putDeltaInts(int[] src, int from, int cnt)
+  {
+    int till = from + cnt;
+    int prev = 0;
+    for (int i = from; i < till; ++i)
+    {
+      putZigZagInt(src[i] - prev);
+      prev = src[i];
+    }
+  }
+
+  /** Put 'cnt' items from 'src' starting from 'from' as differences between neighbours. Count is not stored */
+  public void putDeltaLongs(long[] src, int from, int cnt)
+  {
+    int till = from + cnt;
+    long prev = 0;
+    for (int i = from; i < till; ++i)
+    {
+      putZigZagLong(src[i] - prev);
+      prev = src[i];
+    }
+  }
+
   /** Put text to file. Use {@link ReadBuffer#getString() ReadBuffer.getString()} to read it */
   public void putString(String text)
   {
@@ -107,9 +249,8 @@ public class WriteBuffer extends OutputStream implements AutoCloseable
       return;
     }
     byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
-    checkPut(4 + bytes.length);
-    buff.putInt(bytes.length);
-    buff.put(bytes);
+    putInt(bytes.length);
+    put(bytes);
   }
 
   /**
@@ -170,6 +311,9 @@ public class WriteBuffer extends OutputStream implements AutoCloseable
     {
       flush();
       pos = newPosition == -1 ? fc.size() : newPosition;
+      flushes = 0;
+      if (!sequential)
+        replaceBuffer(initial);
     }
     catch (IOException ex)
     {
@@ -194,8 +338,19 @@ public class WriteBuffer extends OutputStream implements AutoCloseable
   /** Before each write, check if buffer have enought space */
   private void checkPut(int size)
   {
-    if (buff.remaining() < size)
-      flush();
+    if (buff.remaining() >= size)
+      return;
+    flush();
+    if ((sequential || ++flushes >= BuffersPool.SEQUENTIAL_RELOADS) && buff.capacity() < BuffersPool.MAX_BUFFER_SIZE)
+      replaceBuffer(ByteBuffer.allocateDirect(BuffersPool.grownSize(buff.capacity())));
+  }
+
+  /** Grown buffers are direct to avoid copying by FileChannel, so they are released explicitly */
+  private void replaceBuffer(ByteBuffer newBuff)
+  {
+    if (buff != initial && buff != newBuff)
+      BuffersPool.free(buff);
+    buff = newBuff;
   }
 
   /** Flush data, release buffer, but does not close FileChannel */
@@ -204,7 +359,9 @@ public class WriteBuffer extends OutputStream implements AutoCloseable
   {
     if (buff.position() > 0)
       flush();
-    BuffersPool.push(buff);
+    replaceBuffer(initial);
+    BuffersPool.push(initial);
+    initial = null;
     buff = null;
   }
 
@@ -251,4 +408,10 @@ public class WriteBuffer extends OutputStream implements AutoCloseable
   {
     put(b);
   }
+
+  @Override
+  public void write(byte[] b, int off, int len)
+  {
+    put(b, off, len);
+  }
 }
@@ -1,7 +1,8 @@
 package datalist.list;
 
+import datalist.index.CoveringIndex;
 import datalist.index.Index;
-import datalist.index.KeyToIndex;
+import datalist.index.KeyToIndexBuffer;
 import datalist.io.ChannelBuilder;
 import datalist.io.ReadBuffer;
 import datalist.io.WriteBuffer;
@@ -20,7 +21,9 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
+import java.util.PrimitiveIterator;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinTask;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -40,6 +43,12 @@ public class DataList<T> extends AbstractList<T> implements AutoCloseable
   private static final int buffSizeR = Integer.getInteger("database_read_buffer_size", 1024);
   private static final int buffSizeW = Integer.getInteger("database_write_buffer_size", 8192);
   private static final int cacheSize = Integer.getInteger("database_cache_size", 32);
+  /** Max count of contiguous items read at once by sublist iterator */
+  private static final int RANGE_BATCH = 256;
+  /** Shorter runs of contiguous items are read one by one through the cache */
+  private static final int MIN_RANGE_RUN = Integer.getInteger("datalist.min_range_run", 4);
+  /** Keys of indexes are collected at parallel by ranges of "datalist.reindex_chunk_rows" rows */
+  private static final int REINDEX_CHUNK = Integer.getInteger("datalist.reindex_chunk_rows", 1 << 16);
 
   private final Database database;
   private final String tableName;
@@ -50,6 +59,7 @@ public class DataList<T> extends AbstractList<T> implements AutoCloseable
   private final ReadBuffer reader;
 
   private final List<IndexInfo> indexes = new ArrayList<>();
+  private final List<ZoneMapInfo<?>> zoneMaps = new ArrayList<>();
   private final List<DataListChangedListener<T>> listeners = new ArrayList<>();
 
   private final ConcurrentHashMap<Integer, T> linesCache = new ConcurrentHashMap<>(cacheSize);
@@ -73,7 +83,9 @@ public class DataList<T> extends AbstractList<T> implements AutoCloseable
       public void cleaned(DataList<T> list)
       {
         for (IndexInfo index: indexes)
-          index.getIndex().clear();
+          index.clear();
+        for (ZoneMapInfo<?> zones: zoneMaps)
+          zones.zones.clear();
       }
 
       @Override
@@ -81,32 +93,67 @@ public class DataList<T> extends AbstractList<T> implements AutoCloseable
       public void dataAdded(DataList<T> list, int from, int till)
       {
         int dataSize = size();
-        int i = indexes.size();
-        List<List<KeyToIndex>> allValues = new ArrayList<>(i);
-        while (--i >= 0)
-          allValues.add(new ArrayList<>(dataSize));
-        for (int lineIdx = 0; lineIdx < dataSize; ++lineIdx)
+        int cnt = indexes.size();
+        if (cnt == 0)
+          return;
+        int[] firstLine = new int[cnt]; //only new lines for appendable indexes, that store all previous lines
+        int minLine = dataSize;
+        for (int i = 0; i < cnt; ++i)
         {
-          T line = get(lineIdx);
-          i = indexes.size();
-          while (--i >= 0)
-            indexes.get(i).collectTo(allValues.get(i), line, lineIdx);
+          firstLine[i] = indexes.get(i).canAppend(from) ? from : 0;
+          minLine = Math.min(minLine, firstLine[i]);
+          indexes.get(i).prepare(firstLine[i], dataSize);
         }
-        i = indexes.size();
-        while (--i >= 0)
+        //keys are collected at parallel by ranges of rows, then each index is sorted and written by its own task
+        int startLine = minLine;
+        int chunksCount = (dataSize - minLine + REINDEX_CHUNK - 1) / REINDEX_CHUNK;
+        List<List<KeyToIndexBuffer<?>>> chunks = new ArrayList<>(Collections.nCopies(chunksCount, null));
+        List<Runnable> tasks = new ArrayList<>(Math.max(chunksCount, cnt));
+        for (int chunk = 0; chunk < chunksCount; ++chunk)
         {
-          indexes.get(i).getIndex().recreate(allValues.get(i));
-          allValues.set(i, null); //collect garbage as soon as possible
+          int chunkIdx = chunk;
+          tasks.add(() -> chunks.set(chunkIdx, collectKeys(startLine + chunkIdx * REINDEX_CHUNK,
+            (int)Math.min(startLine + (long)(chunkIdx + 1) * REINDEX_CHUNK, dataSize), firstLine)));
+        }
+        try
+        {
+          runAll(tasks);
+          tasks.clear();
+          for (int idx = 0; idx < cnt; ++idx)
+          {
+            int i = idx;
+            tasks.add(() ->
+            {
+              try (KeyToIndexBuffer<?> values = mergeChunks(chunks, i))
+              {
+                indexes.get(i).update(values.sort(), firstLine[i] > 0);
+              }
+              indexes.get(i).setIndexedRows(dataSize);
+            });
+          }
+          runAll(tasks);
+        }
+        finally
+        {
+          //buffers are left only if some task failed, close them to remove spilled files
+          for (List<KeyToIndexBuffer<?>> buffers: chunks)
+            if (buffers != null)
+              for (KeyToIndexBuffer<?> buffer: buffers)
+                if (buffer != null)
+                  buffer.close();
         }
       }
     });
   }
 
+  /** Adds listener of list changes. dataAdded of listeners is called concurrently at common fork/join pool after indexes are rebuilt,
+   * so listener should be thread-safe even if list is used from one thread. First failure is thrown after all listeners are done */
   public void addListener(DataListChangedListener<T> lstn)
   {
     this.listeners.add(lstn);
   }
 
+  /** Adds index of 'mapper' values. Mapper is called from few threads at once while indexes are rebuilt, so it should be thread-safe */
   @SuppressWarnings("unchecked")
   public <U extends Comparable<U>> DataList<T> withIndex(Index<U> index, Function<T, U> mapper, boolean indexNulls)
   {
@@ -114,6 +161,10 @@ public class DataList<T> extends AbstractList<T> implements AutoCloseable
     return this;
   }
 
+  /**
+   * Adds index, where each row has a few keys returned by 'mapper'.<br>
+   * Mapper is called from few threads at once while indexes are rebuilt, so it should be thread-safe
+   */
   @SuppressWarnings("unchecked")
   public <U extends Comparable<U>> DataList<T> withMulticastIndex(Index<U> index, Function<T, Collection<U>> mapper, boolean indexNulls)
   {
@@ -121,6 +172,77 @@ public class DataList<T> extends AbstractList<T> implements AutoCloseable
     return this;
   }
 
+  /**
+   * Adds index, that keeps 'extraMapper' values of rows to return them by {@link CoveringIndex#entriesFor}.<br>
+   * Both mappers are called from few threads at once while indexes are rebuilt, so they should be thread-safe
+   */
+  @SuppressWarnings("unchecked")
+  public <U extends Comparable<U>, V> DataList<T> withCoveringIndex(CoveringIndex<U, V> index, Function<T, U> mapper,
+    Function<T, V> extraMapper, boolean indexNulls)
+  {
+    indexes.add(new CoveringIndexInfo(index, mapper, extraMapper, indexNulls));
+    return this;
+  }
+
+  /**
+   * Adds statistics of 'mapper' values for blocks of rows. Statistics are rebuilt, if they do not match the list
+   * (for example, zone map is added to existing list)
+   */
+  public <U extends Comparable<U>> DataList<T> withZoneMap(ZoneMap<U> zones, Function<T, U> mapper)
+  {
+    if (appender != null)
+      throw new IllegalStateException("Append mode");
+    if (zones.rowsCount() != size())
+    {
+      zones.clear();
+      for (T item: sublist(SortedIntSet.allValues(size())))
+        zones.add(mapper.apply(item));
+      zones.flush();
+    }
+    zoneMaps.add(new ZoneMapInfo<>(zones, mapper));
+    return this;
+  }
+
+  public boolean hasZoneMap(ZoneMap<?> zones)
+  {
+    return zoneMaps.stream().anyMatch(x -> x.zones.equals(zones));
+  }
+
+  /**
+   * Returns rows from 'among' (all rows for null) with mapped values at range [min, max] (inclusive).
+   * Only blocks of rows, which might contain such values by zone map, are read
+   */
+  <U extends Comparable<U>> SortedIntSet scan(ZoneMap<U> zones, U min, U max, SortedIntSet among)
+  {
+    return scan(zones, zones.candidates(min, max, size()),
+      value -> value != null && value.compareTo(min) >= 0 && value.compareTo(max) <= 0, among);
+  }
+
+  /** Returns rows from 'among' (all rows for null) with null mapped values. Only blocks with nulls are read */
+  <U extends Comparable<U>> SortedIntSet scanNulls(ZoneMap<U> zones, SortedIntSet among)
+  {
+    return scan(zones, zones.nullCandidates(size()), Objects::isNull, among);
+  }
+
+  @SuppressWarnings("unchecked")
+  private <U extends Comparable<U>> SortedIntSet scan(ZoneMap<U> zones, SortedIntSet rows, Predicate<U> filter,
+    SortedIntSet among)
+  {
+    ZoneMapInfo<U> info = (ZoneMapInfo<U>)zoneMaps.stream().filter(x -> x.zones.equals(zones)).findFirst()
+      .orElseThrow(() -> new IllegalArgumentException("Zone map not applyable for " + tableName));
+    if (among != null)
+      rows.intersect(among);
+    SortedIntSet res = new SortedIntSet();
+    PrimitiveIterator.OfInt it = rows.iterator();
+    for (T item: sublist(rows))
+    {
+      int row = it.nextInt();
+      if (filter.test(info.mapper.apply(item)))
+        res.add(row);
+    }
+    return res;
+  }
+
   public Database getDatabase()
   {
     return database;
@@ -275,14 +397,26 @@ public class DataList<T> extends AbstractList<T> implements AutoCloseable
     return appender = new DataAppender(chunkSize);
   }
 
+  /** Returns indexes of list, covering indexes are not included */
   public List<Index> getIndexes()
   {
-    return indexes.stream().map(x -> x.getIndex()).collect(Collectors.toList());
+    return indexes.stream().filter(x -> x.getIndex() != null).map(x -> x.getIndex()).collect(Collectors.toList());
   }
 
   public boolean hasIndex(Index<?> index)
   {
-    return indexes.stream().anyMatch(x -> x.getIndex().equals(index));
+    return indexes.stream().anyMatch(x -> x.isFor(index));
+  }
+
+  public boolean hasIndex(CoveringIndex<?, ?> index)
+  {
+    return indexes.stream().anyMatch(x -> x.isFor(index));
+  }
+
+  /** Returns true if index has only one key for each item (see {@link #withMulticastIndex}) */
+  boolean hasSingleKeys(Index<?> index)
+  {
+    return indexes.stream().anyMatch(x -> x.isFor(index) && !x.isMulticast());
   }
 
   public <T extends Comparable<T>> Where where(Index<T> index, T value)
@@ -295,6 +429,16 @@ public class DataList<T> extends AbstractList<T> implements AutoCloseable
     return new Where(this).and(index, min, max);
   }
 
+  public <T extends Comparable<T>> Where where(CoveringIndex<T, ?> index, T value)
+  {
+    return new Where(this).and(index, value);
+  }
+
+  public <T extends Comparable<T>> Where where(CoveringIndex<T, ?> index, T min, T max)
+  {
+    return new Where(this).and(index, min, max);
+  }
+
   public <T extends Comparable<T>> Where where(Index<T> index, Collection<T> values)
   {
     return new Where(this).and(index, values);
@@ -310,16 +454,142 @@ public class DataList<T> extends AbstractList<T> implements AutoCloseable
     return new Where(this).and(index, condition, includeNull);
   }
 
+  public <U extends Comparable<U>> Where where(ZoneMap<U> zones, U min, U max)
+  {
+    return new Where(this).and(zones, min, max);
+  }
+
   private void reindex(int oldCount)
   {
-    if (this.size() > oldCount)
+    int newCount = this.size();
+    if (newCount > oldCount)
     {
-      int fromPos = oldCount + 1;
-      for (DataListChangedListener<T> listener: listeners)
-        listener.dataAdded(this, fromPos, this.size());
+      //indexes are rebuilt first (it is the first listener), so other listeners might query them
+      listeners.get(0).dataAdded(this, oldCount, newCount);
+      //text search and other listeners are updated concurrently
+      List<Runnable> tasks = new ArrayList<>(listeners.size() - 1);
+      for (DataListChangedListener<T> listener: listeners.subList(1, listeners.size()))
+        tasks.add(() -> listener.dataAdded(this, oldCount, newCount));
+      runAll(tasks);
     }
   }
 
+  /**
+   * Runs tasks at common fork/join pool and waits for all of them, even if some task fails.<br>
+   * The first error is thrown after that, other errors are added to it as suppressed.
+   */
+  private static void runAll(List<Runnable> tasks)
+  {
+    if (tasks.size() == 1)
+    {
+      tasks.get(0).run();
+      return;
+    }
+    Throwable[] errors = new Throwable[tasks.size()]; //own errors are thrown, not copies made by fork/join pool
+    List<ForkJoinTask<?>> forked = new ArrayList<>(tasks.size());
+    for (int i = 0; i < tasks.size(); ++i)
+    {
+      int taskIdx = i;
+      forked.add(ForkJoinTask.adapt(() ->
+      {
+        try
+        {
+          tasks.get(taskIdx).run();
+        }
+        catch (RuntimeException | Error ex)
+        {
+          errors[taskIdx] = ex;
+        }
+      }).fork());
+    }
+    Throwable error = null;
+    for (int i = 0; i < forked.size(); ++i)
+    {
+      forked.get(i).join();
+      if (errors[i] == null)
+        continue;
+      if (error == null)
+        error = errors[i];
+      else
+        error.addSuppressed(errors[i]);
+    }
+    if (error instanceof Error)
+      throw (Error)error;
+    if (error != null)
+      throw (RuntimeException)error;
+  }
+
+  /** Returns buffers with key-row pairs of rows [from, till) for each index. Rows are read by own reader */
+  @SuppressWarnings("unchecked")
+  private List<KeyToIndexBuffer<?>> collectKeys(int from, int till, int[] firstLine)
+  {
+    List<KeyToIndexBuffer<?>> res = new ArrayList<>(indexes.size());
+    List<RowsCollector<T>> collectors = new ArrayList<>(indexes.size());
+    boolean done = false;
+    try (ReadBuffer rdr = new ReadBuffer(fc, buffSizeR).sequential())
+    {
+      for (int i = 0; i < indexes.size(); ++i)
+      {
+        KeyToIndexBuffer<?> buffer = new KeyToIndexBuffer<>();
+        res.add(buffer);
+        collectors.add(firstLine[i] < till ? indexes.get(i).collector(buffer, Math.max(from, firstLine[i])) : null);
+      }
+      rdr.position(itemOffset(from));
+      for (int lineIdx = from; lineIdx < till; ++lineIdx)
+      {
+        T line = dataHandler.read(rdr);
+        for (int i = 0; i < collectors.size(); ++i)
+          if (lineIdx >= firstLine[i])
+            collectors.get(i).collect(line, lineIdx);
+      }
+      if (rdr.position() != itemOffset(till))
+        throw new DatabaseBrokenError("Item size");
+      done = true;
+    }
+    finally
+    {
+      for (RowsCollector<T> collector: collectors)
+        if (collector != null)
+          collector.close();
+      if (!done)
+        for (KeyToIndexBuffer<?> buffer: res)
+          buffer.close();
+    }
+    return res;
+  }
+
+  /** Returns buffer of the first chunk with pairs of 'index' from all chunks. Other buffers are closed */
+  @SuppressWarnings("unchecked")
+  private static <U extends Comparable<U>> KeyToIndexBuffer<U> mergeChunks(List<List<KeyToIndexBuffer<?>>> chunks, int index)
+  {
+    if (chunks.isEmpty())
+      return new KeyToIndexBuffer<>();
+    KeyToIndexBuffer<U> res = (KeyToIndexBuffer<U>)chunks.get(0).get(index);
+    for (int chunk = 1; chunk < chunks.size(); ++chunk)
+    {
+      KeyToIndexBuffer<U> other = (KeyToIndexBuffer<U>)chunks.get(chunk).get(index);
+      try
+      {
+        res.addAll(other);
+      }
+      finally
+      {
+        other.close();
+        chunks.get(chunk).set(index, null); //collect garbage as soon as possible
+      }
+    }
+    return res;
+  }
+
+  /** Returns position of item at data file. 'idx' might be equal to size */
+  private long itemOffset(int idx)
+  {
+    if (itemOffsets != null)
+      return itemOffsets.from(idx);
+    return (long)idx * ((FixedSizeDataStreamer)dataHandler).itemSize();
+  }
+
+  /** Returns list of items by indexes. Iterator reads contiguous items of SortedIntSet without seeks */
   public List<T> sublist(IntArray indexes)
   {
     return new AbstractList<T>()
@@ -335,9 +605,84 @@ public class DataList<T> extends AbstractList<T> implements AutoCloseable
       {
         return indexes.size();
       }
+
+      @Override
+      public Iterator<T> iterator()
+      {
+        if (indexes instanceof SortedIntSet)
+          return new RangesIterator(((SortedIntSet)indexes).iterator());
+        return super.iterator();
+      }
     };
   }
 
+  /**
+   * Reads runs of contiguous items, up to RANGE_BATCH items at once. Runs shorter than MIN_RANGE_RUN
+   * are read by {@link #get(int)}. Runs are detected on the fly, so found rows are not copied
+   */
+  private class RangesIterator implements Iterator<T>
+  {
+    private final PrimitiveIterator.OfInt rows;
+    private final List<T> batch = new ArrayList<>();
+    private int batchPos;
+    private int pending = -1; //row that is taken from 'rows', but not read yet
+
+    RangesIterator(PrimitiveIterator.OfInt rows)
+    {
+      this.rows = rows;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+      return batchPos < batch.size() || pending >= 0 || rows.hasNext();
+    }
+
+    @Override
+    public T next()
+    {
+      if (batchPos >= batch.size())
+      {
+        int from = pending >= 0 ? pending : rows.nextInt();
+        pending = -1;
+        int cnt = 1;
+        while (cnt < RANGE_BATCH && rows.hasNext())
+        {
+          int row = rows.nextInt();
+          if (row != from + cnt)
+          {
+            pending = row;
+            break;
+          }
+          ++cnt;
+        }
+        batch.clear();
+        batchPos = 0;
+        if (cnt >= MIN_RANGE_RUN)
+          readRange(from, cnt, batch);
+        else
+          for (int i = 0; i < cnt; ++i)
+            batch.add(get(from + i));
+      }
+      return batch.get(batchPos++);
+    }
+  }
+
+  /** Reads 'count' items starting from 'from' with one seek. Items are not cached */
+  private synchronized void readRange(int from, int count, List<T> addTo)
+  {
+    if (appender != null)
+      throw new IllegalStateException("Append mode");
+    if (from < 0 || from + count > size())
+      throw new IndexOutOfBoundsException("Index: " + (from + count - 1) + ", size: " + size());
+
+    reader.position(itemOffset(from));
+    for (int i = 0; i < count; ++i)
+      addTo.add(dataHandler.read(reader));
+    if (reader.position() != itemOffset(from + count))
+      throw new DatabaseBrokenError("Item size");
+  }
+
   @SuppressWarnings("unchecked")
   private SortedIntSet allIndexesFor(T obj)
   {
@@ -357,9 +702,13 @@ public class DataList<T> extends AbstractList<T> implements AutoCloseable
   {
     try
     {
-      for (Integer idx: allIndexesFor((T) o))
+      PrimitiveIterator.OfInt it = allIndexesFor((T) o).iterator();
+      while (it.hasNext())
+      {
+        int idx = it.nextInt();
         if (Objects.equals(o, get(idx)))
           return idx;
+      }
       return -1;
     }
     catch (ClassCastException ex)
@@ -397,7 +746,7 @@ public class DataList<T> extends AbstractList<T> implements AutoCloseable
 
     DataAppender(int idxBuffSize)
     {
-      dataWriter = new WriteBuffer(fc, buffSizeW);
+      dataWriter = new WriteBuffer(fc, buffSizeW).sequential();
       idxs = itemOffsets != null? new long[idxBuffSize] : null;
       thisThread = Thread.currentThread();
       idxPos = 0;
@@ -409,6 +758,8 @@ public class DataList<T> extends AbstractList<T> implements AutoCloseable
       beforeAdd();
 
       dataHandler.write(dataWriter, item);
+      for (ZoneMapInfo<?> zones: zoneMaps)
+        zones.add(item);
       if (idxs != null)
         idxs[idxPos] = dataWriter.position();
       return internalSize() + idxPos++;
@@ -423,6 +774,8 @@ public class DataList<T> extends AbstractList<T> implements AutoCloseable
         dataWriter.flush(); //indexes should always point to data
         itemOffsets.add(idxs, idxPos);
         idxPos = 0;
+        for (ZoneMapInfo<?> zones: zoneMaps)
+          zones.zones.flush();
       }
     }
 
@@ -435,16 +788,89 @@ public class DataList<T> extends AbstractList<T> implements AutoCloseable
         if (itemOffsets != null)
           itemOffsets.add(idxs, idxPos);
       }
+      for (ZoneMapInfo<?> zones: zoneMaps)
+        zones.zones.flush();
       appender = null;
       reindex(oldCount);
     }
   }
 
+  private class ZoneMapInfo<U extends Comparable<U>>
+  {
+    final ZoneMap<U> zones;
+    final Function<T, U> mapper;
+
+    ZoneMapInfo(ZoneMap<U> zones, Function<T, U> mapper)
+    {
+      this.zones = zones;
+      this.mapper = mapper;
+    }
+
+    void add(T item)
+    {
+      zones.add(mapper.apply(item));
+    }
+  }
+
+  /** Collects data of sequential rows for index */
+  private interface RowsCollector<T> extends AutoCloseable
+  {
+    void collect(T line, int lineIdx);
+
+    @Override
+    default void close()
+    {
+    }
+  }
+
   private interface IndexInfo<T, U extends Comparable<U>>
   {
+    /** Returns index or null for covering index */
     Index<U> getIndex();
     SortedIntSet allForObject(T object);
-    void collectTo(List<KeyToIndex> addTo, T line, int lineIdx);
+    void collectTo(KeyToIndexBuffer<U> addTo, T line, int lineIdx);
+    boolean isMulticast();
+
+    default boolean isFor(Object index)
+    {
+      return index.equals(getIndex());
+    }
+
+    default void clear()
+    {
+      getIndex().clear();
+    }
+
+    /** Tells whether pairs of rows after 'from' might be appended: index stores all rows before */
+    default boolean canAppend(int from)
+    {
+      return from > 0 && getIndex().canAppend() && getIndex().indexedRows() == from;
+    }
+
+    default void setIndexedRows(int rows)
+    {
+      getIndex().setIndexedRows(rows);
+    }
+
+    /** Called before pairs of rows [from, till) are collected. Rows are collected at parallel */
+    default void prepare(int from, int till)
+    {
+    }
+
+    /** Returns collector of sequential rows starting from 'from'. Each collector is used by one thread */
+    default RowsCollector<T> collector(KeyToIndexBuffer<U> addTo, int from)
+    {
+      return (line, lineIdx) -> collectTo(addTo, line, lineIdx);
+    }
+
+    /** Recreates index by collected pairs or appends them */
+    default void update(KeyToIndexBuffer<U> values, boolean append)
+    {
+      if (append)
+        getIndex().append(values);
+      else
+        getIndex().recreate(values);
+    }
   }
 
   private class SimpleIndexInfo<U extends Comparable<U>> implements IndexInfo<T, U>
@@ -471,9 +897,15 @@ public class DataList<T> extends AbstractList<T> implements AutoCloseable
     }
 
     @Override
-    public void collectTo(List<KeyToIndex> addTo, T line, int lineIdx)
+    public void collectTo(KeyToIndexBuffer<U> addTo, T line, int lineIdx)
+    {
+      addTo.add(mapper.apply(line), lineIdx);
+    }
+
+    @Override
+    public boolean isMulticast()
     {
-      addTo.add(new KeyToIndex(mapper.apply(line), lineIdx));
+      return false;
     }
   }
 
@@ -500,19 +932,129 @@ public class DataList<T> extends AbstractList<T> implements AutoCloseable
       Collection<U> allValues = mapper.apply(object);
       if (allValues == null || allValues.isEmpty())
         return SortedIntSet.empty();
-      Iterator<U> it = allValues.iterator();
-      SortedIntSet inds = index.valuesFor(it.next());
-      while (it.hasNext())
-        inds.union(index.valuesFor(it.next()));
-      return inds;
+      return index.valuesFor(allValues);
     }
 
     @Override
-    public void collectTo(List<KeyToIndex> addTo, T line, int lineIdx)
+    public void collectTo(KeyToIndexBuffer<U> addTo, T line, int lineIdx)
     {
       Collection<U> allValues = mapper.apply(line);
       if (allValues != null)
-        allValues.forEach(x -> addTo.add(new KeyToIndex(x, lineIdx)));
+        allValues.forEach(x -> addTo.add(x, lineIdx));
+    }
+
+    @Override
+    public boolean isMulticast()
+    {
+      return true;
+    }
+  }
+
+  private class CoveringIndexInfo<U extends Comparable<U>, V> implements IndexInfo<T, U>
+  {
+    final CoveringIndex<U, V> index;
+    final Function<T, U> mapper;
+    final Function<T, V> extraMapper;
+    private CoveringIndex<U, V>.Extras extras;
+
+    public CoveringIndexInfo(CoveringIndex<U, V> index, Function<T, U> mapper, Function<T, V> extraMapper, boolean indexNulls)
+    {
+      this.index = index;
+      this.mapper = mapper;
+      this.extraMapper = extraMapper;
+    }
+
+    @Override
+    public Index<U> getIndex()
+    {
+      return null;
+    }
+
+    @Override
+    public boolean isFor(Object other)
+    {
+      return index.equals(other);
+    }
+
+    @Override
+    public void clear()
+    {
+      index.clear();
+    }
+
+    @Override
+    public boolean canAppend(int from)
+    {
+      return false;
+    }
+
+    @Override
+    public void setIndexedRows(int rows)
+    {
+    }
+
+    @Override
+    public SortedIntSet allForObject(T object)
+    {
+      return index.valuesFor(mapper.apply(object));
+    }
+
+    @Override
+    public void collectTo(KeyToIndexBuffer<U> addTo, T line, int lineIdx)
+    {
+      addTo.add(mapper.apply(line), lineIdx);
+    }
+
+    @Override
+    public boolean isMulticast()
+    {
+      return false;
+    }
+
+    @Override
+    public void prepare(int from, int till)
+    {
+      if (extras != null)
+        extras.close(); //previous rebuild failed
+      extras = index.newExtras(from, till);
+    }
+
+    @Override
+    public RowsCollector<T> collector(KeyToIndexBuffer<U> addTo, int from)
+    {
+      CoveringIndex<U, V>.Extras target = extras;
+      WriteBuffer writer = target.writer(from);
+      return new RowsCollector<T>()
+      {
+        @Override
+        public void collect(T line, int lineIdx)
+        {
+          collectTo(addTo, line, lineIdx);
+          target.write(writer, extraMapper.apply(line));
+        }
+
+        @Override
+        public void close()
+        {
+          writer.close();
+        }
+      };
+    }
+
+    @Override
+    public void update(KeyToIndexBuffer<U> values, boolean append)
+    {
+      if (append)
+        throw new IllegalStateException("Covering index could not be appended");
+      try
+      {
+        index.recreate(values, extras);
+      }
+      finally
+      {
+        extras.close();
+        extras = null;
+      }
     }
   }
-}
\ No newline at end of file
+}
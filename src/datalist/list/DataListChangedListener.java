@@ -3,6 +3,8 @@ package datalist.list;
 /**
  * To minimize read count till rebuild indexes, DataListChangedListener and DataListChangedListener.InfoCollector used.<br>
  * When all items added, DataList call DataListChangedListener.InfoCollector.nextItem(T) for each item at each index.<br>
+ * Listeners added by DataList.addListener are called after indexes are rebuilt, concurrently with each other at common fork/join pool,
+ * so dataAdded should be thread-safe and should not depend on order of listeners.<br>
  * @author SergeyT
  */
 public interface DataListChangedListener<T>
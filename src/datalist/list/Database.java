@@ -1,5 +1,6 @@
 package datalist.list;
 
+import datalist.io.ChannelRegistry;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -11,12 +12,14 @@ import java.util.zip.ZipOutputStream;
 
 /**
  * <tt>Database</tt> class encapsulates directory where <tt>DataLists</tt> stores and generates file names for lists,
- * tables, indexes, text search indexes and other.
+ * tables, indexes, text search indexes and other.<br>
+ * Database also keeps {@link ChannelRegistry} for files, that are opened frequently. Close database to close them.
  * @author SergeyT
  */
-public class Database
+public class Database implements AutoCloseable
 {
   private final File dbDirectory;
+  private final ChannelRegistry channels = new ChannelRegistry();
 
   public Database(File dbDirectory)
   {
@@ -34,6 +37,19 @@ public class Database
     return dbDirectory;
   }
 
+  /** Shared channels of this database files */
+  public ChannelRegistry getChannels()
+  {
+    return channels;
+  }
+
+  /** Close all shared channels. Lists and indexes close their own files */
+  @Override
+  public void close()
+  {
+    channels.close();
+  }
+
   /** Backup whole DB directory to one archive and return this archive file name */
   public File backup() throws IOException
   {
@@ -22,7 +22,7 @@ public class ItemOffsetList implements AutoCloseable
     fc = ChannelBuilder.forReadWrite(path).build();
     int cnt = (int)(fc.size() / 8);
     endings = new long[cnt];
-    try (ReadBuffer rdr = new ReadBuffer(fc, -1))
+    try (ReadBuffer rdr = new ReadBuffer(fc, -1).sequential())
     {
       for (int i = 0; i < cnt; ++i)
         endings[i] = rdr.getLong();
@@ -1,11 +1,17 @@
 package datalist.list;
 
+import datalist.index.CoveringIndex;
 import datalist.index.Index;
+import datalist.io.IOThreads;
 import datalist.types.Range;
 import datalist.types.SortedIntSet;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntSupplier;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 /**
  * Helping class to filter data.<br>
@@ -17,12 +23,23 @@ import java.util.function.Predicate;
  * <br>
  * Use 'intersect' to filter data at master and slave list.<br>
  * <br>
+ * Call {@link #async()} to read indexes at {@link IOThreads}: all conditions are read at parallel and
+ * intersected by first getIndexes() or isEmpty() call, starting from the smallest result.<br>
+ * <br>
+ * Use {@link #count()} if only count of found items required: single condition by key or range is counted
+ * by index without reading of items indexes.<br>
+ * <br>
  * After all, use getIndexes() to get all indexes
  */
 public class Where
 {
   private final DataList<?> list;
   private final SortedIntSet arr;
+  private final List<CompletableFuture<SortedIntSet>> pending = new ArrayList<>();
+  private boolean async;
+  //the first condition is not read till its indexes required
+  private Supplier<SortedIntSet> deferred;
+  private IntSupplier deferredCount;
 
   public Where(DataList<?> data)
   {
@@ -30,12 +47,18 @@ public class Where
     this.arr = SortedIntSet.allValues(data.size());
   }
 
+  /** Next conditions will be read at IO threads without waiting for each other */
+  public Where async()
+  {
+    async = true;
+    return this;
+  }
+
   public <T extends Comparable<T>> Where and(Index<T> index, T value)
   {
     if (!indexApplyable(index))
       throw new IllegalArgumentException("Index not applyable for " + list.getTableName());
-    if (!arr.isEmpty())
-      arr.intersect(index.valuesFor(value));
+    apply(() -> index.valuesFor(value), () -> index.countFor(value));
     return this;
   }
 
@@ -43,8 +66,23 @@ public class Where
   {
     if (!indexApplyable(index))
       throw new IllegalArgumentException("The index not applyable for " + list.getTableName());
-    if (!arr.isEmpty())
-      arr.intersect(index.valuesFor(min, max));
+    apply(() -> index.valuesFor(min, max), list.hasSingleKeys(index) ? () -> index.countFor(min, max) : null);
+    return this;
+  }
+
+  public <T extends Comparable<T>> Where and(CoveringIndex<T, ?> index, T value)
+  {
+    if (!list.hasIndex(index))
+      throw new IllegalArgumentException("The index not applyable for " + list.getTableName());
+    apply(() -> index.valuesFor(value), () -> index.countFor(value));
+    return this;
+  }
+
+  public <T extends Comparable<T>> Where and(CoveringIndex<T, ?> index, T min, T max)
+  {
+    if (!list.hasIndex(index))
+      throw new IllegalArgumentException("The index not applyable for " + list.getTableName());
+    apply(() -> index.valuesFor(min, max), () -> index.countFor(min, max));
     return this;
   }
 
@@ -52,8 +90,8 @@ public class Where
   {
     if (!indexApplyable(index))
       throw new IllegalArgumentException("The index not applyable for " + list.getTableName());
-    if (!arr.isEmpty() && values != null)
-      arr.intersect(index.valuesFor(values));
+    if (values != null)
+      apply(() -> index.valuesFor(values), null);
     return this;
   }
 
@@ -61,35 +99,108 @@ public class Where
   {
     if (!indexApplyable(index))
       throw new IllegalArgumentException("The index not applyable for " + list.getTableName());
-    if (!arr.isEmpty())
-    {
-      ArrayList<T> keys = new ArrayList<>(index.allKeys(includeNull));
-      if (!keys.removeIf(x -> !condition.test(x)))
-        return this; //all keys
-
-      SortedIntSet internal = new SortedIntSet();
-      for (T key: keys)
-        internal.union(index.valuesFor(key));
-      arr.intersect(internal);
-    }
+    apply(() -> valuesFor(index, condition, includeNull), null);
     return this;
   }
 
+  /** Returns null if all keys match condition */
+  private <T extends Comparable<T>> SortedIntSet valuesFor(Index<T> index, Predicate<T> condition, boolean includeNull)
+  {
+    ArrayList<T> keys = new ArrayList<>(index.allKeys(includeNull));
+    if (!keys.removeIf(x -> !condition.test(x)))
+      return null; //all keys
+
+    return index.valuesFor(keys);
+  }
+
   public <T extends Comparable<T>> Where and(Index<T> index, Range<T>... ranges)
   {
     if (!indexApplyable(index))
       throw new IllegalArgumentException("The index not applyable for " + list.getTableName());
-    if (!arr.isEmpty() && ranges != null)
-      arr.intersect(index.valuesFor(ranges));
+    if (ranges != null)
+      apply(() -> index.valuesFor(ranges), null);
+    return this;
+  }
+
+  /** Filter rows by mapped values of zone map. Rows are read only for blocks, that might contain range */
+  public <U extends Comparable<U>> Where and(ZoneMap<U> zones, U min, U max)
+  {
+    if (!list.hasZoneMap(zones))
+      throw new IllegalArgumentException("The zone map not applyable for " + list.getTableName());
+    apply(() -> list.scan(zones, min, max, async ? null : arr), null);
+    return this;
+  }
+
+  /** Filter rows with null mapped values of zone map. Rows are read only for blocks with nulls */
+  public <U extends Comparable<U>> Where andNull(ZoneMap<U> zones)
+  {
+    if (!list.hasZoneMap(zones))
+      throw new IllegalArgumentException("The zone map not applyable for " + list.getTableName());
+    apply(() -> list.scanNulls(zones, async ? null : arr), null);
     return this;
   }
 
   public Where andIndexInList(SortedIntSet internal)
   {
+    readDeferred();
     arr.intersect(internal);
     return this;
   }
 
+  /** Apply condition. 'counter' (might be null) returns count of items for condition */
+  private void apply(Supplier<SortedIntSet> condition, IntSupplier counter)
+  {
+    readDeferred();
+    if (async)
+      pending.add(IOThreads.submit(condition));
+    else if (counter != null && arr.allValuesList() && pending.isEmpty())
+    {
+      deferred = condition;
+      deferredCount = counter;
+    }
+    else if (!arr.isEmpty())
+    {
+      SortedIntSet found = condition.get();
+      if (found != null)
+        arr.intersect(found);
+    }
+  }
+
+  private void readDeferred()
+  {
+    if (deferred == null)
+      return;
+    Supplier<SortedIntSet> condition = deferred;
+    deferred = null;
+    deferredCount = null;
+    SortedIntSet found = condition.get();
+    if (found != null)
+      arr.intersect(found);
+  }
+
+  /** Wait for all conditions, that are read at IO threads */
+  private void completePending()
+  {
+    readDeferred();
+    if (pending.isEmpty())
+      return;
+    try
+    {
+      List<SortedIntSet> found = new ArrayList<>(pending.size());
+      for (CompletableFuture<SortedIntSet> request: pending)
+      {
+        SortedIntSet item = IOThreads.join(request);
+        if (item != null)
+          found.add(item);
+      }
+      arr.intersectAll(found);
+    }
+    finally
+    {
+      pending.clear();
+    }
+  }
+
   public final boolean indexApplyable(Index<?> index)
   {
     return list.hasIndex(index);
@@ -97,17 +208,28 @@ public class Where
 
   public SortedIntSet getIndexes()
   {
+    completePending();
     return arr.trim();
   }
 
   public boolean isEmpty()
   {
-    return arr.isEmpty();
+    return count() == 0;
+  }
+
+  /** Returns count of found items */
+  public int count()
+  {
+    if (deferred != null)
+      return deferredCount.getAsInt();
+    completePending();
+    return arr.size();
   }
 
   @Override
   public String toString()
   {
+    completePending();
     return "List: " + list.getTableName() + ", items indexes: " + arr;
   }
 }
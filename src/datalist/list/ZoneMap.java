@@ -0,0 +1,249 @@
+package datalist.list;
+
+import datalist.io.ChannelBuilder;
+import datalist.io.ReadBuffer;
+import datalist.io.WriteBuffer;
+import datalist.stream.FixedSizeDataStreamer;
+import datalist.types.IntBitmap;
+import datalist.types.SortedIntSet;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Statistics (min, max and count of nulls) of mapped value for each block of "datalist.zone_block_rows" rows
+ * (4096 by default). Statistics are collected by {@link DataList.DataAppender} and written at its flushes.
+ * Use {@link DataList#withZoneMap} to add it to list and {@link Where#and(ZoneMap, Comparable, Comparable)} or
+ * {@link Where#andNull(ZoneMap)} to filter rows: blocks, which could not contain values of range (or nulls),
+ * are not read. Found blocks are kept as ranges. It is useful for data, that is imported
+ * in (nearly) sorted order of mapped value (for example, dates).<br><br>
+ *
+ * File structure:<br>
+ * 4 bytes for rows per block<br>
+ * for each block: 1 byte for flag of non-null values, min, max (zero bytes when there are no values),
+ * 4 bytes for count of nulls, 4 bytes for count of rows<br><br>
+ * If storage fails, UncheckedIOException will be thrown.
+ * @param <U> the type of mapped values
+ * @author SergeyT
+ */
+public class ZoneMap<U extends Comparable<U>> implements AutoCloseable
+{
+  private static final int BLOCK_ROWS = Integer.getInteger("datalist.zone_block_rows", 4096);
+
+  private final FileChannel fc;
+  private final FixedSizeDataStreamer<U> valuesHandler;
+  private final int blockRows;
+  private final int recordSize;
+  private final List<Zone<U>> zones = new ArrayList<>();
+  private int rows;
+  /** First block changed after last flush */
+  private int dirtyFrom;
+
+  private static final class Zone<U extends Comparable<U>>
+  {
+    U min;
+    U max;
+    int nulls;
+    int rows;
+
+    void add(U value)
+    {
+      ++rows;
+      if (value == null)
+        ++nulls;
+      else
+      {
+        if (min == null || value.compareTo(min) < 0)
+          min = value;
+        if (max == null || value.compareTo(max) > 0)
+          max = value;
+      }
+    }
+
+    boolean intersects(U from, U till)
+    {
+      return min != null && min.compareTo(till) <= 0 && max.compareTo(from) >= 0;
+    }
+  }
+
+  public ZoneMap(File storage, FixedSizeDataStreamer<U> valuesHandler) throws IOException
+  {
+    this(storage, valuesHandler, BLOCK_ROWS);
+  }
+
+  ZoneMap(File storage, FixedSizeDataStreamer<U> valuesHandler, int blockRows) throws IOException
+  {
+    fc = ChannelBuilder.forReadWrite(storage).build();
+    this.valuesHandler = valuesHandler;
+    recordSize = 9 + valuesHandler.itemSize() * 2;
+    if (fc.size() >= 4)
+      try (ReadBuffer rdr = new ReadBuffer(fc, -1).sequential())
+      {
+        this.blockRows = rdr.getInt();
+        for (long cnt = (fc.size() - 4) / recordSize; cnt > 0; --cnt)
+        {
+          Zone<U> zone = new Zone<>();
+          boolean hasValues = rdr.get() != 0;
+          zone.min = hasValues ? valuesHandler.read(rdr) : skip(rdr);
+          zone.max = hasValues ? valuesHandler.read(rdr) : skip(rdr);
+          zone.nulls = rdr.getInt();
+          zone.rows = rdr.getInt();
+          zones.add(zone);
+          rows += zone.rows;
+        }
+      }
+    else
+      this.blockRows = blockRows;
+    dirtyFrom = zones.size();
+  }
+
+  private U skip(ReadBuffer rdr)
+  {
+    rdr.position(rdr.position() + valuesHandler.itemSize());
+    return null;
+  }
+
+  /** Returns count of rows with statistics */
+  public synchronized int rowsCount()
+  {
+    return rows;
+  }
+
+  /** Add value of the next row */
+  synchronized void add(U value)
+  {
+    if (zones.isEmpty() || zones.get(zones.size() - 1).rows == blockRows)
+      zones.add(new Zone<>());
+    dirtyFrom = Math.min(dirtyFrom, zones.size() - 1);
+    zones.get(zones.size() - 1).add(value);
+    ++rows;
+  }
+
+  /** Write changed blocks */
+  synchronized void flush()
+  {
+    if (dirtyFrom >= zones.size())
+      return;
+    try (WriteBuffer writer = new WriteBuffer(fc, -1).sequential())
+    {
+      writer.position(0);
+      writer.putInt(blockRows);
+      writer.position(4 + (long)dirtyFrom * recordSize);
+      byte[] empty = new byte[valuesHandler.itemSize()];
+      for (Zone<U> zone: zones.subList(dirtyFrom, zones.size()))
+      {
+        writer.put((byte)(zone.min != null ? 1 : 0));
+        if (zone.min != null)
+        {
+          valuesHandler.write(writer, zone.min);
+          valuesHandler.write(writer, zone.max);
+        }
+        else
+        {
+          writer.put(empty);
+          writer.put(empty);
+        }
+        writer.putInt(zone.nulls);
+        writer.putInt(zone.rows);
+      }
+    }
+    dirtyFrom = zones.size();
+  }
+
+  /**
+   * Returns rows of blocks, that might contain values of range [min, max] (inclusive). Rows from
+   * {@link #rowsCount()} till 'listSize' are added too, as there are no statistics for them.
+   */
+  public SortedIntSet candidates(U min, U max, int listSize)
+  {
+    if (min == null || max == null)
+      throw new IllegalArgumentException("Range with nulls not allowed");
+    return blocks(zone -> zone.intersects(min, max), listSize);
+  }
+
+  /**
+   * Returns rows of blocks, that contain null values. Rows from {@link #rowsCount()} till 'listSize' are added too,
+   * as there are no statistics for them.
+   */
+  public SortedIntSet nullCandidates(int listSize)
+  {
+    return blocks(zone -> zone.nulls > 0, listSize);
+  }
+
+  /** Returns rows of blocks matching 'filter' and rows without statistics as ranges */
+  private synchronized SortedIntSet blocks(Predicate<Zone<U>> filter, int listSize)
+  {
+    int[] runs = new int[8];
+    int len = 0;
+    int row = 0;
+    for (Zone<U> zone: zones)
+    {
+      if (filter.test(zone) && zone.rows > 0)
+      {
+        runs = grow(runs, len);
+        len = addRun(runs, len, row, row + zone.rows - 1);
+      }
+      row += zone.rows;
+    }
+    if (listSize > row)
+    {
+      runs = grow(runs, len);
+      len = addRun(runs, len, row, listSize - 1);
+    }
+    return len == 0 ? new SortedIntSet() : SortedIntSet.wrap(IntBitmap.ofRuns(runs, len));
+  }
+
+  private static int[] grow(int[] runs, int len)
+  {
+    return len + 2 <= runs.length ? runs : Arrays.copyOf(runs, runs.length * 2);
+  }
+
+  /** Adds range [first, last], joins it with the previous one when they are adjacent. Returns new length */
+  private static int addRun(int[] runs, int len, int first, int last)
+  {
+    if (len > 0 && runs[len - 1] + 1 == first)
+    {
+      runs[len - 1] = last;
+      return len;
+    }
+    runs[len] = first;
+    runs[len + 1] = last;
+    return len + 2;
+  }
+
+  /** Returns count of nulls, that are known by statistics */
+  public synchronized int nullsCount()
+  {
+    int res = 0;
+    for (Zone<U> zone: zones)
+      res += zone.nulls;
+    return res;
+  }
+
+  /** Remove all statistics */
+  public synchronized void clear()
+  {
+    try
+    {
+      fc.truncate(0);
+    }
+    catch (IOException ex)
+    {
+      throw new UncheckedIOException(ex);
+    }
+    zones.clear();
+    rows = 0;
+    dirtyFrom = 0;
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    fc.close();
+  }
+}
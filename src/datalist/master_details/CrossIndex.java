@@ -1,15 +1,13 @@
 package datalist.master_details;
 
 import datalist.io.ChannelBuilder;
+import datalist.io.ChannelRegistry;
 import datalist.io.ReadBuffer;
 import datalist.io.WriteBuffer;
 import datalist.types.SortedIntSet;
 import java.io.File;
 import java.io.IOException;
 import java.io.UncheckedIOException;
-import java.nio.channels.FileChannel;
-import static java.nio.file.StandardOpenOption.CREATE;
-import static java.nio.file.StandardOpenOption.WRITE;
 import java.util.Arrays;
 
 /**
@@ -24,11 +22,22 @@ import java.util.Arrays;
 public class CrossIndex
 {
   private final File storageFile;
+  private final ChannelRegistry channels;
   private volatile int[] indexes;
 
   public CrossIndex(File storage) throws IOException
+  {
+    this(storage, null);
+  }
+
+  /**
+   * Creates CrossIndex, that keeps storage file opened at 'channels' between appends
+   * @param channels registry of opened channels (usually {@link datalist.list.Database#getChannels()}) or null
+   */
+  public CrossIndex(File storage, ChannelRegistry channels) throws IOException
   {
     this.storageFile = storage;
+    this.channels = channels;
     reload();
   }
 
@@ -36,7 +45,7 @@ public class CrossIndex
   public final void reload()
   {
     if (storageFile.exists())
-      try (ReadBuffer rb = new ChannelBuilder(storageFile).reader())
+      try (ReadBuffer rb = new ChannelBuilder(storageFile).shared(channels).reader().sequential())
       {
         int cnt = (int)(rb.remaining() / 4);
         int[] new_indexes = new int[cnt];
@@ -67,9 +76,7 @@ public class CrossIndex
   public SortedIntSet manyToOne(SortedIntSet from)
   {
     SortedIntSet res = new SortedIntSet(from.size());
-    int i = from.size();
-    while (--i >= 0)
-      res.add(indexes[from.get(i)]);
+    from.forEachInt(i -> res.add(indexes[i]));
     return res.trim();
   }
 
@@ -112,9 +119,10 @@ public class CrossIndex
   void clean()
   {
     indexes = new int[0];
-    try (FileChannel fc = FileChannel.open(storageFile.toPath(), WRITE, CREATE))
+    try (WriteBuffer wb = new ChannelBuilder(storageFile).shared(channels).writer())
     {
-      fc.truncate(0);
+      wb.position(0);
+      wb.truncateTail();
     }
     catch (IOException ex)
     {
@@ -136,7 +144,7 @@ public class CrossIndex
 
   private void appendToFile(int[] items, int cnt)
   {
-    try (WriteBuffer wb = new ChannelBuilder(storageFile).writer())
+    try (WriteBuffer wb = new ChannelBuilder(storageFile).shared(channels).writer())
     {
       for (int i = 0; i < cnt; ++i)
         wb.putInt(items[i]);
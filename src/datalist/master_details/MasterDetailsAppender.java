@@ -1,9 +1,14 @@
 package datalist.master_details;
 
+import datalist.index.Index;
 import datalist.list.DataList;
-import java.util.HashMap;
-import java.util.Map;
+import datalist.types.SortedIntSet;
+import datalist.types.LongIntMap;
+import datalist.types.ObjectIntMap;
+import java.util.Arrays;
 import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -12,6 +17,11 @@ import java.util.logging.Logger;
  * Most useful for import from plain format, when master items copied to each details item. This class deduplicates master items.<br><br>
  * Use this class instead of adding data directly to lists to keep {@link CrossIndex} valid.<br>
  * You may override {@link onOtherDataSameHash()} to handle collision. By default, collisions are logged, but first item is used.<br>
+ * Keys are kept at primitive hash maps without objects per master item. Use {@link #withLongKey} for numeric keys
+ * to avoid boxing.<br>
+ * Appender, created by {@link #withKeyIndex}, does not load existing master items: they are found by index of master
+ * keys (for example, {@link datalist.index.HashIndex}), only keys and hashes of items used by this appender are kept
+ * at hash maps. Such appender detects changed master items in other way, see {@link #withKeyIndex}.<br>
  * 
  * @author SergeyT
  * @param <M> the type of items at master table
@@ -26,8 +36,13 @@ public class MasterDetailsAppender<M, D, K> implements AutoCloseable
   private final DataList<M>.DataAppender masterAppender;
   private final DataList<D>.DataAppender detailAppender;
   private final Function<M, K> masterToKey;
+  private final ToLongFunction<M> masterToLongKey;
+  private final ToIntFunction<M> findExisting; //search of saved master items, null if they are loaded to maps
 
-  private final Map<K, MasterItemInfo> masterKeys;
+  private final ObjectIntMap<K> masterKeys; //master index by key
+  private final LongIntMap longMasterKeys; //used instead of masterKeys for long keys
+  private int[] masterHashes; //hash by master index, when all master items are loaded
+  private final LongIntMap foundHashes; //hash by master index, when master items are found by index
   private final int[] idxs;
   private int idxPos;
 
@@ -38,12 +53,58 @@ public class MasterDetailsAppender<M, D, K> implements AutoCloseable
    * @param chunkSize
    */
   public MasterDetailsAppender(MasterDetailsList<M, D, ?> list, Function<M, K> masterToKey, int chunkSize)
+  {
+    this(list, masterToKey, null, null, chunkSize);
+  }
+
+  /**
+   * Constructs appender for <tt>MasterDetailsList</tt> with numeric master key, that commit changes each <tt>chunkSize</tt> items.
+   * @param list - master/details list for append data
+   * @param masterToKey - function, that generate key from master item
+   * @param chunkSize
+   */
+  public static <M, D> MasterDetailsAppender<M, D, Long> withLongKey(MasterDetailsList<M, D, ?> list, ToLongFunction<M> masterToKey, int chunkSize)
+  {
+    return new MasterDetailsAppender<>(list, null, masterToKey, null, chunkSize);
+  }
+
+  /**
+   * Constructs appender for <tt>MasterDetailsList</tt>, that finds existing master items by <tt>keyIndex</tt> instead of
+   * loading all of them.<br>
+   * Saved master items could not be read at append mode, so they are not compared with new ones: saved item is linked
+   * to the first new item with the same key, even if they differ. {@link #onOtherDataSameHash} is called only for
+   * next items with this key, that differ from the first one.
+   * @param list - master/details list for append data
+   * @param masterToKey - function, that generate key from master item
+   * @param keyIndex - index of master list by the same key
+   * @param chunkSize
+   */
+  public static <M, D, K extends Comparable<K>> MasterDetailsAppender<M, D, K> withKeyIndex(MasterDetailsList<M, D, ?> list, Function<M, K> masterToKey, Index<K> keyIndex, int chunkSize)
+  {
+    if (!list.getMasterList().hasIndex(keyIndex))
+      throw new IllegalArgumentException("Index should be added to master list");
+    return new MasterDetailsAppender<>(list, masterToKey, null, master ->
+    {
+      SortedIntSet found = keyIndex.valuesFor(masterToKey.apply(master));
+      return found.isEmpty() ? -1 : found.get(0);
+    }, chunkSize);
+  }
+
+  private MasterDetailsAppender(MasterDetailsList<M, D, ?> list, Function<M, K> masterToKey, ToLongFunction<M> masterToLongKey, ToIntFunction<M> findExisting, int chunkSize)
   {
     if (chunkSize <= 0)
       throw new IllegalArgumentException("chunkSize=" + chunkSize + ", but it should be bigger than 0");
     this.list = list;
     this.masterToKey = masterToKey;
-    this.masterKeys = addFromList(list.getMasterList());
+    this.masterToLongKey = masterToLongKey;
+    this.findExisting = findExisting;
+    int len = findExisting == null ? list.getMasterList().size() : chunkSize;
+    this.masterKeys = masterToKey == null ? null : new ObjectIntMap<>(len);
+    this.longMasterKeys = masterToKey == null ? new LongIntMap(len) : null;
+    this.masterHashes = findExisting == null ? new int[Math.max(len, 16)] : null;
+    this.foundHashes = findExisting == null ? null : new LongIntMap(len);
+    if (findExisting == null)
+      addFromList(list.getMasterList());
     this.masterAppender = list.getMasterList().getAppender(chunkSize);
     this.detailAppender = list.getDetailsList().getAppender(chunkSize);
     this.idxs = new int[chunkSize];
@@ -61,41 +122,78 @@ public class MasterDetailsAppender<M, D, K> implements AutoCloseable
     detailAppender.close();
   }
 
-  private Map<K, MasterItemInfo> addFromList(DataList<M> list)
+  private void addFromList(DataList<M> list)
   {
     int len = list.size();
-    Map<K, MasterItemInfo> result = new HashMap<>(len);
     for (int i = 0; i < len; ++i)
     {
       final M item = list.get(i);
-      if (result.put(masterToKey.apply(item), new MasterItemInfo(i, item==null?0:item.hashCode())) != null)
+      if (findMaster(item) >= 0)
         throw new IllegalStateException("Multiple items with same key");
+      putMaster(item, i);
     }
-    return result;
+  }
+
+  /** Returns master index by master key or -1 */
+  private int findMaster(M master)
+  {
+    int res;
+    if (masterKeys != null)
+      res = masterKeys.get(masterToKey.apply(master), -1);
+    else
+      res = longMasterKeys.get(masterToLongKey.applyAsLong(master), -1);
+    if (res < 0 && findExisting != null)
+    {
+      res = findExisting.applyAsInt(master); //items of this appender are not indexed till close
+      if (res >= 0)
+        putMaster(master, res); //saved item could not be read at append mode, so hash of the first new one is kept (see withKeyIndex)
+    }
+    return res;
+  }
+
+  private void putMaster(M master, int masterIndex)
+  {
+    if (masterKeys != null)
+      masterKeys.put(masterToKey.apply(master), masterIndex);
+    else
+      longMasterKeys.put(masterToLongKey.applyAsLong(master), masterIndex);
+    int hash = master==null?0:master.hashCode();
+    if (foundHashes != null)
+    {
+      foundHashes.put(masterIndex, hash);
+      return;
+    }
+    if (masterIndex >= masterHashes.length)
+      masterHashes = Arrays.copyOf(masterHashes, Math.max(masterIndex + 1, masterHashes.length * 2));
+    masterHashes[masterIndex] = hash;
+  }
+
+  private int masterHash(int masterIndex)
+  {
+    return foundHashes != null ? foundHashes.get(masterIndex, 0) : masterHashes[masterIndex];
   }
 
   public int addItem(M master, D details)
   {
-    K key = masterToKey.apply(master);
-    MasterItemInfo info = masterKeys.get(key);
-    int masterIndex;
-    if (info != null)
+    int masterIndex = findMaster(master);
+    if (masterIndex >= 0)
     {
-      masterIndex = info.idx;
-      if (info.hash != (master==null?0:master.hashCode()))
+      if (masterHash(masterIndex) != (master==null?0:master.hashCode()))
       {
         int newIndex = onOtherDataSameHash(master, masterIndex);
         if (newIndex == -1)
           masterIndex = masterAppender.addItem(master);
         else if (newIndex > list.getMasterList().size())
           throw new IllegalArgumentException("Index " + newIndex + " is out of range");
-        masterKeys.put(key, new MasterItemInfo(masterIndex, master==null?0:master.hashCode()));
+        else
+          masterIndex = newIndex;
+        putMaster(master, masterIndex);
       }
     }
     else
     {
       masterIndex = masterAppender.addItem(master);
-      masterKeys.put(key, new MasterItemInfo(masterIndex, master==null?0:master.hashCode()));
+      putMaster(master, masterIndex);
     }
     if (idxPos == idxs.length)
     {
@@ -117,16 +215,4 @@ public class MasterDetailsAppender<M, D, K> implements AutoCloseable
     LOG.log(Level.WARNING, "Another item with same key, but other hash: {0}", newMasterItem);
     return oldIndex;
   }
-
-  private static class MasterItemInfo
-  {
-    final int idx;
-    final int hash;
-
-    public MasterItemInfo(int idx, int hash)
-    {
-      this.idx = idx;
-      this.hash = hash;
-    }
-  }
 }
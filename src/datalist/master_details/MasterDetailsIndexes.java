@@ -1,20 +1,36 @@
 package datalist.master_details;
 
+import datalist.types.IntArray;
+import datalist.types.OffHeapIntSet;
 import datalist.types.SortedIntSet;
 
 /**
- * MasterDetailsIndexes class holds items indexes on both tables, that useful for {@link MasterDetailsList} usage
+ * MasterDetailsIndexes class holds items indexes on both tables, that useful for {@link MasterDetailsList} usage.<br>
+ * Big results, that are kept for a long time (for example, by user session), might be moved out of java heap by
+ * {@link #toOffHeap()}. Off-heap indexes should be closed to release memory.
  * @author SergeyT
  */
-public class MasterDetailsIndexes
+public class MasterDetailsIndexes implements AutoCloseable
 {
-  private final SortedIntSet master;
+  private final SortedIntSet master; //null for off-heap indexes
   private final SortedIntSet details;
+  private final OffHeapIntSet offHeapMaster; //null for heap indexes
+  private final OffHeapIntSet offHeapDetails;
 
   public MasterDetailsIndexes(SortedIntSet master, SortedIntSet details)
   {
     this.master = master;
     this.details = details;
+    this.offHeapMaster = null;
+    this.offHeapDetails = null;
+  }
+
+  private MasterDetailsIndexes(OffHeapIntSet master, OffHeapIntSet details)
+  {
+    this.master = null;
+    this.details = null;
+    this.offHeapMaster = master;
+    this.offHeapDetails = details;
   }
 
   public static MasterDetailsIndexes empty()
@@ -27,22 +43,73 @@ public class MasterDetailsIndexes
     return new MasterDetailsIndexes(SortedIntSet.allValues(masterSize), SortedIntSet.allValues(detailsSize));
   }
 
+  /** Returns copy of indexes, that is stored out of java heap. It should be closed */
+  public MasterDetailsIndexes toOffHeap()
+  {
+    OffHeapIntSet offMaster = offHeapMaster != null ? offHeapMaster.retain() : master.toOffHeap();
+    try
+    {
+      return new MasterDetailsIndexes(offMaster, offHeapDetails != null ? offHeapDetails.retain() : details.toOffHeap());
+    }
+    catch (RuntimeException ex)
+    {
+      offMaster.close();
+      throw ex;
+    }
+  }
+
+  /** Tells whether indexes are stored out of java heap */
+  public boolean isOffHeap()
+  {
+    return offHeapMaster != null;
+  }
+
+  /** Returns master indexes. For off-heap indexes, a heap copy is returned */
   public SortedIntSet getMasterIndexes()
   {
-    return master;
+    return master != null ? master : offHeapMaster.toSortedIntSet();
   }
 
+  /** Returns details indexes. For off-heap indexes, a heap copy is returned */
   public SortedIntSet getDetailsIndexes()
   {
-    return details;
+    return details != null ? details : offHeapDetails.toSortedIntSet();
+  }
+
+  /** Returns master indexes without copying (see {@link datalist.list.DataList#sublist(IntArray)}) */
+  public IntArray getMasterRows()
+  {
+    return master != null ? master : offHeapMaster;
+  }
+
+  /** Returns details indexes without copying (see {@link datalist.list.DataList#sublist(IntArray)}) */
+  public IntArray getDetailsRows()
+  {
+    return details != null ? details : offHeapDetails;
   }
 
   public MasterDetailsIndexes createIntersection(MasterDetailsIndexes other)
   {
-    SortedIntSet tmpMaster = master.copy();
-    tmpMaster.intersect(other.master);
-    SortedIntSet tmpDetails = details.copy();
-    tmpDetails.intersect(other.details);
+    SortedIntSet tmpMaster = getMasterIndexes().copy();
+    tmpMaster.intersect(other.getMasterIndexes());
+    SortedIntSet tmpDetails = getDetailsIndexes().copy();
+    tmpDetails.intersect(other.getDetailsIndexes());
     return new MasterDetailsIndexes(tmpMaster, tmpDetails);
   }
+
+  /** Release off-heap memory. Does nothing for heap indexes */
+  @Override
+  public void close()
+  {
+    if (offHeapMaster == null)
+      return;
+    try
+    {
+      offHeapMaster.close();
+    }
+    finally
+    {
+      offHeapDetails.close();
+    }
+  }
 }
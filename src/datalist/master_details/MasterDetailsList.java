@@ -61,7 +61,8 @@ public class MasterDetailsList<M, S, T> extends AbstractList<T>
     this.master = master;
     this.details = details;
     this.itemGenerator = itemGenerator;
-    this.crossIndex = new CrossIndex(details.getDatabase().getCrossIndexFile(details.getTableName(), master.getTableName()));
+    this.crossIndex = new CrossIndex(details.getDatabase().getCrossIndexFile(details.getTableName(), master.getTableName()),
+      details.getDatabase().getChannels());
     if (crossIndex.size() != details.size())
       throw new IllegalStateException("CrossIndex " + details.getTableName() + " to " + master.getTableName() + " has different size");
     
@@ -27,6 +27,14 @@ public class MasterDetailsWhere
     this.cross = cross;
   }
 
+  /** Next conditions at both lists will be read at IO threads without waiting for each other. See {@link Where#async()} */
+  public MasterDetailsWhere async()
+  {
+    masterWhere.async();
+    detailsWhere.async();
+    return this;
+  }
+
   public <T extends Comparable<T>> MasterDetailsWhere and(Index<T> index, T value)
   {
     crossApplied = false;
@@ -99,22 +107,37 @@ public class MasterDetailsWhere
 
   public MasterDetailsIndexes getIndexes()
   {
-    if (!crossApplied)
-    {
-      cross.intersect(masterWhere.getIndexes(), detailsWhere.getIndexes());
-      crossApplied = true;
-    }
+    applyCross();
     return new MasterDetailsIndexes(masterWhere.getIndexes(), detailsWhere.getIndexes());
   }
 
   public boolean isEmpty()
+  {
+    applyCross();
+    return detailsWhere.isEmpty();
+  }
+
+  /** Count of found items at master list */
+  public int masterCount()
+  {
+    applyCross();
+    return masterWhere.count();
+  }
+
+  /** Count of found items at details list */
+  public int detailsCount()
+  {
+    applyCross();
+    return detailsWhere.count();
+  }
+
+  private void applyCross()
   {
     if (!crossApplied)
     {
       cross.intersect(masterWhere.getIndexes(), detailsWhere.getIndexes());
       crossApplied = true;
     }
-    return detailsWhere.isEmpty();
   }
 
   @Override
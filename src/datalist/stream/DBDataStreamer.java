@@ -6,7 +6,9 @@ import datalist.list.DatabaseBrokenError;
 
 /**
  * DBDataStreamer used by DataList to read objects from file and write it.
- * {@link datalist.list.DataList} is thread-safe only when DBDataStreamer is thread-safe.
+ * {@link datalist.list.DataList} is thread-safe only when DBDataStreamer is thread-safe.<br>
+ * Even for single-threaded usage, {@link #read} is called from few threads at once, when indexes are rebuilt after
+ * items are added, so DBDataStreamer should be thread-safe (stateless streamers are).
  */
 public interface DBDataStreamer<T>
 {
@@ -0,0 +1,80 @@
+package datalist.stream;
+
+import datalist.io.ReadBuffer;
+import datalist.io.WriteBuffer;
+import datalist.list.DatabaseBrokenError;
+import datalist.types.Tuple;
+
+/**
+ * Streamer for {@link Tuple} keys of composite index. Each value is written by streamer of its position, so null
+ * values are supported when they are supported by these streamers. Null tuple is prohibited.<br>
+ * Streamer, created by {@link #fixed}, has fixed size and could be used by {@link datalist.index.SortedIndex}.<br><br>
+ * TupleStreamer is thread-safe when streamers of values are thread-safe.
+ * @author SergeyT
+ */
+public class TupleStreamer implements DBDataStreamer<Tuple>
+{
+  private final DBDataStreamer<?>[] streamers;
+
+  private TupleStreamer(DBDataStreamer<?>[] streamers)
+  {
+    if (streamers.length == 0)
+      throw new IllegalArgumentException("No streamers for tuple");
+    this.streamers = streamers.clone();
+  }
+
+  /** Creates streamer for tuples of values, written by 'streamers' */
+  public static DBDataStreamer<Tuple> of(DBDataStreamer<?>... streamers)
+  {
+    return new TupleStreamer(streamers);
+  }
+
+  /** Creates fixed size streamer for tuples of values, written by 'streamers' */
+  public static FixedSizeDataStreamer<Tuple> fixed(FixedSizeDataStreamer<?>... streamers)
+  {
+    return new FixedSizeTupleStreamer(streamers);
+  }
+
+  @Override
+  public Tuple read(ReadBuffer buffer) throws DatabaseBrokenError
+  {
+    Comparable<?>[] values = new Comparable<?>[streamers.length];
+    for (int i = 0; i < values.length; ++i)
+      values[i] = (Comparable<?>)streamers[i].read(buffer);
+    return Tuple.of(values);
+  }
+
+  @Override
+  public void write(WriteBuffer buffer, Tuple item)
+  {
+    if (item == null)
+      throw new IllegalArgumentException("Null not supported");
+    if (item.size() != streamers.length)
+      throw new IllegalArgumentException("Tuple " + item + " should have " + streamers.length + " values");
+    for (int i = 0; i < streamers.length; ++i)
+    {
+      Comparable<?> value = item.get(i);
+      streamers[i].writeGeneric(buffer, value);
+    }
+  }
+
+  private static final class FixedSizeTupleStreamer extends TupleStreamer implements FixedSizeDataStreamer<Tuple>
+  {
+    private final int itemSize;
+
+    FixedSizeTupleStreamer(FixedSizeDataStreamer<?>[] streamers)
+    {
+      super(streamers);
+      int size = 0;
+      for (FixedSizeDataStreamer<?> streamer: streamers)
+        size += streamer.itemSize();
+      itemSize = size;
+    }
+
+    @Override
+    public int itemSize()
+    {
+      return itemSize;
+    }
+  }
+}
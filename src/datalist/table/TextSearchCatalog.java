@@ -1,6 +1,7 @@
 package datalist.table;
 
 import datalist.io.ChannelBuilder;
+import datalist.io.ChannelRegistry;
 import datalist.io.ReadBuffer;
 import datalist.io.WriteBuffer;
 import datalist.list.DataList;
@@ -37,6 +38,7 @@ class TextSearchCatalog<T extends TableRow>
   private final NavigableMap<String, Long> catalog;
   private final FileChannel fc;
   private final File catalogFile;
+  private final ChannelRegistry channels;
   private TextSplitter splitter;
 
   TextSearchCatalog(DataList<T> list, TextSplitter splitter, Collection<Integer> notIndexingColumns)
@@ -47,6 +49,7 @@ class TextSearchCatalog<T extends TableRow>
       Database db = list.getDatabase();
       this.fc = new ChannelBuilder(db.getTextSearchFile(list.getTableName())).forRead().forWrite().build();
       this.catalogFile = db.getTextSearchIndexFile(list.getTableName());
+      this.channels = db.getChannels();
       this.catalog = readCatalog(this.catalogFile);
       this.splitter = splitter;
     }
@@ -81,7 +84,7 @@ class TextSearchCatalog<T extends TableRow>
   {
     TreeMap<String, Long> result = new TreeMap<>();
     if (catalogFile.exists())
-      try (final ReadBuffer rb = new ChannelBuilder(catalogFile).reader())
+      try (final ReadBuffer rb = new ChannelBuilder(catalogFile).shared(channels).reader().sequential())
       {
         while (rb.hasRemaining())
         {
@@ -198,7 +201,7 @@ class TextSearchCatalog<T extends TableRow>
       }
       catalog.clear();
       fc.truncate(0);
-      try (final WriteBuffer dataWriter = new WriteBuffer(fc, -1); final WriteBuffer catalogWriter = new ChannelBuilder(catalogFile).writer())
+      try (final WriteBuffer dataWriter = new WriteBuffer(fc, -1).sequential(); final WriteBuffer catalogWriter = new ChannelBuilder(catalogFile).shared(channels).writer())
       {
         catalogWriter.position(0);
         builder.complete(dataWriter, catalogWriter, catalog);
@@ -2,35 +2,26 @@ package datalist.types;
 
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.Map;
 import java.util.Set;
 
-/** Utility class to count the number of each key. Keeps insertion order */
+/** Utility class to count the number of each key. Keeps insertion order. There are no objects per key */
 public class CounterMap<K>
 {
-  Map<K, Counter> innerMap;
+  final ObjectIntMap<K> innerMap;
 
   public CounterMap()
   {
-    innerMap = new LinkedHashMap<>();
+    innerMap = new ObjectIntMap<>();
   }
 
-  private static class Counter
+  public CounterMap(int expectedSize)
   {
-    private int cnt = 1;
-    public int get() {return cnt;}
-    public void addFrom(Counter from) {cnt += from.cnt;}
-    @Override public String toString(){return String.valueOf(cnt);}
+    innerMap = new ObjectIntMap<>(expectedSize);
   }
 
   public void increment(K value)
   {
-    Counter cntr = innerMap.get(value);
-    if (cntr == null)
-      innerMap.put(value, new Counter());
-    else
-      cntr.cnt++;
+    innerMap.addTo(value, 1);
   }
 
   /**
@@ -39,24 +30,26 @@ public class CounterMap<K>
    */
   public boolean decrementOrZero(K value)
   {
-    Counter cntr = innerMap.get(value);
-    if (cntr == null)
+    int cnt = innerMap.get(value, 0);
+    if (cnt == 0)
       return false;
-    if (--cntr.cnt > 0)
+    if (--cnt > 0)
+    {
+      innerMap.put(value, cnt);
       return true;
+    }
     innerMap.remove(value);
     return false;
   }
 
   public boolean remove(K value)
   {
-    return innerMap.remove(value) != null;
+    return innerMap.remove(value);
   }
 
   public int getCount(K value)
   {
-    Counter cntr = innerMap.get(value);
-    return (cntr==null)?0:cntr.cnt;
+    return innerMap.get(value, 0);
   }
 
   /**
@@ -66,7 +59,10 @@ public class CounterMap<K>
    */
   public boolean hasCntAtLeast(int cnt)
   {
-    return innerMap.values().stream().anyMatch(x -> x.cnt >= cnt);
+    for (K key: innerMap.keySet())
+      if (innerMap.get(key, 0) >= cnt)
+        return true;
+    return false;
   }
 
   /**
@@ -77,10 +73,9 @@ public class CounterMap<K>
   public boolean removeLessThan(int cnt)
   {
     boolean result = false;
-    for (Iterator<Map.Entry<K, Counter>> it = innerMap.entrySet().iterator(); it.hasNext();)
+    for (Iterator<K> it = innerMap.keySet().iterator(); it.hasNext();)
     {
-      Map.Entry<K, CounterMap.Counter> item = it.next();
-      if (item.getValue().cnt < cnt)
+      if (innerMap.get(it.next(), 0) < cnt)
       {
         it.remove();
         result = true;
@@ -91,11 +86,9 @@ public class CounterMap<K>
 
   public int getMaxCount()
   {
-    int maxv = 0;
-    for (Counter item: innerMap.values())
-      if (item.cnt > maxv)
-        maxv = item.cnt;
-    return maxv;
+    int[] maxv = new int[1];
+    innerMap.forEach((key, cnt) -> maxv[0] = Math.max(maxv[0], cnt));
+    return maxv[0];
   }
 
   /**
@@ -107,13 +100,13 @@ public class CounterMap<K>
   {
     int maxCnt = 0;
     K bestVal = null;
-    for (Map.Entry<K, Counter> pair: innerMap.entrySet())
+    for (K key: innerMap.keySet())
     {
-      int cur = pair.getValue().cnt;
+      int cur = innerMap.get(key, 0);
       if (cur > maxCnt)
       {
         maxCnt = cur;
-        bestVal = pair.getKey();
+        bestVal = key;
       }
     }
     return bestVal;
@@ -154,12 +147,12 @@ public class CounterMap<K>
   public String toString()
   {
     StringBuilder sb = new StringBuilder();
-    for (Map.Entry<K, Counter> item: innerMap.entrySet())
+    innerMap.forEach((key, cnt) ->
     {
       if (sb.length() > 0)
         sb.append(", ");
-      sb.append(item.getKey()).append(" x ").append(item.getValue());
-    }
+      sb.append(key).append(" x ").append(cnt);
+    });
     return sb.toString();
   }
 }
\ No newline at end of file
@@ -1,10 +1,52 @@
 package datalist.types;
 
-/** int[] array with/without fixed order */
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * int[] array with/without fixed order.<br>
+ * Use {@link #iterator()} with nextInt(), {@link #forEachInt(IntConsumer)} or {@link #stream()} to avoid Integer boxing.
+ */
 public interface IntArray extends Iterable<Integer>
 {
   boolean contains(int val);
   int get(int index);
   boolean isEmpty();
   int size();
+
+  @Override
+  default PrimitiveIterator.OfInt iterator()
+  {
+    return new PrimitiveIterator.OfInt()
+    {
+      int pos;
+
+      @Override
+      public boolean hasNext()
+      {
+        return pos < size();
+      }
+
+      @Override
+      public int nextInt()
+      {
+        return get(pos++);
+      }
+    };
+  }
+
+  /** Same as forEach, but without boxing */
+  default void forEachInt(IntConsumer action)
+  {
+    iterator().forEachRemaining(action);
+  }
+
+  default IntStream stream()
+  {
+    return StreamSupport.intStream(Spliterators.spliterator(iterator(), size(), Spliterator.ORDERED), false);
+  }
 }
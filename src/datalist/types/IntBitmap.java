@@ -0,0 +1,1421 @@
+package datalist.types;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Compressed bitmap of non-negative ints (roaring-like).<br>
+ * Values are split to chunks by high 16 bits, each chunk stored at most compact container:
+ * sorted array (sparse chunks), 8Kb bitmap (dense chunks) or list of runs (contiguous ranges).<br>
+ * Set operations works with whole containers: bitmaps are combined by 64-bit words, runs by ranges.<br>
+ * Used by {@link SortedIntSet} for dense sets. This class is not thread-safe.
+ * @author SergeyT
+ */
+public final class IntBitmap
+{
+  /** Maximum array container size. Bigger array container takes more memory than bitmap */
+  static final int ARRAY_MAX = 4096;
+
+  private char[] keys;
+  private Container[] containers;
+  private int count;
+  private int cardinality;
+  private int[] cumulative; //cardinality before each container, calculated on demand
+
+  private IntBitmap(int capacity)
+  {
+    keys = new char[capacity];
+    containers = new Container[capacity];
+  }
+
+  public IntBitmap()
+  {
+    this(4);
+  }
+
+  /** Creates bitmap from 'till - from' sorted, deduplicated non-negative values */
+  public static IntBitmap of(int[] sorted, int from, int till)
+  {
+    IntBitmap res = new IntBitmap(till > from ? ((sorted[till - 1] >>> 16) - (sorted[from] >>> 16) + 1) : 0);
+    int i = from;
+    while (i < till)
+    {
+      int high = sorted[i] >>> 16;
+      int chunkEnd = i + 1;
+      while (chunkEnd < till && (sorted[chunkEnd] >>> 16) == high)
+        ++chunkEnd;
+      int card = chunkEnd - i;
+      Container cont;
+      if (card <= ARRAY_MAX)
+      {
+        char[] content = new char[card];
+        for (int j = 0; j < card; ++j)
+          content[j] = (char)sorted[i + j];
+        cont = new ArrayContainer(content, card);
+      }
+      else
+      {
+        BitmapContainer bc = new BitmapContainer();
+        for (int j = i; j < chunkEnd; ++j)
+          bc.words[(sorted[j] & 0xFFFF) >>> 6] |= 1L << sorted[j];
+        bc.card = card;
+        cont = bc;
+      }
+      res.append((char)high, cont.optimize());
+      i = chunkEnd;
+    }
+    return res;
+  }
+
+  /** Creates bitmap with all values from range [from, till) */
+  public static IntBitmap range(int from, int till)
+  {
+    if (from < 0 || from > till)
+      throw new IllegalArgumentException("Wrong range " + from + " - " + till);
+    IntBitmap res = new IntBitmap(till > from ? ((till - 1) >>> 16) - (from >>> 16) + 1 : 0);
+    while (from < till)
+    {
+      int high = from >>> 16;
+      int last = Math.min(till - 1, (high << 16) | 0xFFFF);
+      res.append((char)high, new RunContainer(new char[] {(char)from, (char)(last - from)}, 1));
+      from = last + 1;
+    }
+    return res;
+  }
+
+  /**
+   * Creates bitmap from sorted ranges as pairs of first and last values (as {@link #toRuns()} returns),
+   * 'len' is count of used items of 'runs'. Chunks are stored as runs, so memory depends on count of ranges only
+   */
+  public static IntBitmap ofRuns(int[] runs, int len)
+  {
+    IntBitmap res = new IntBitmap();
+    int[] starts = new int[16];
+    int[] ends = new int[16];
+    int cnt = 0;
+    int high = -1;
+    for (int r = 0; r < len; r += 2)
+    {
+      int first = runs[r];
+      int last = runs[r + 1];
+      if (first < 0 || last < first || r > 0 && first <= runs[r - 1])
+        throw new IllegalArgumentException("Wrong range " + first + " - " + last);
+      while (true)
+      {
+        int h = first >>> 16;
+        int end = Math.min(last, (h << 16) | 0xFFFF);
+        if (h != high)
+        {
+          res.append((char)high, RunContainer.fromRanges(starts, ends, cnt));
+          cnt = 0;
+          high = h;
+        }
+        if (cnt > 0 && ends[cnt - 1] + 1 == (first & 0xFFFF))
+          ends[cnt - 1] = end & 0xFFFF; //adjacent ranges
+        else
+        {
+          if (cnt == starts.length)
+          {
+            starts = Arrays.copyOf(starts, cnt * 2);
+            ends = Arrays.copyOf(ends, cnt * 2);
+          }
+          starts[cnt] = first & 0xFFFF;
+          ends[cnt++] = end & 0xFFFF;
+        }
+        if (end == last)
+          break;
+        first = end + 1;
+      }
+    }
+    res.append((char)high, RunContainer.fromRanges(starts, ends, cnt));
+    return res;
+  }
+
+  private void append(char key, Container cont)
+  {
+    if (cont == null)
+      return;
+    if (count == keys.length)
+    {
+      int newCapacity = Math.max(4, count * 2);
+      keys = Arrays.copyOf(keys, newCapacity);
+      containers = Arrays.copyOf(containers, newCapacity);
+    }
+    keys[count] = key;
+    containers[count++] = cont;
+    cardinality += cont.cardinality();
+    cumulative = null;
+  }
+
+  public IntBitmap copy()
+  {
+    IntBitmap res = new IntBitmap(count);
+    for (int i = 0; i < count; ++i)
+      res.append(keys[i], containers[i].copy());
+    return res;
+  }
+
+  public int cardinality()
+  {
+    return cardinality;
+  }
+
+  public boolean isEmpty()
+  {
+    return cardinality == 0;
+  }
+
+  private int findContainer(int high)
+  {
+    int low = 0;
+    int hi = count - 1;
+    while (low <= hi)
+    {
+      int middle = (low + hi) >>> 1;
+      int key = keys[middle];
+      if (key < high)
+        low = middle + 1;
+      else if (key > high)
+        hi = middle - 1;
+      else
+        return middle;
+    }
+    return -(low + 1);
+  }
+
+  public boolean contains(int value)
+  {
+    if (value < 0)
+      return false;
+    int idx = findContainer(value >>> 16);
+    return idx >= 0 && containers[idx].contains((char)value);
+  }
+
+  /** Add non-negative value. Returns false if value already present */
+  public boolean add(int value)
+  {
+    if (value < 0)
+      throw new IllegalArgumentException("Negative value " + value);
+    int idx = findContainer(value >>> 16);
+    if (idx < 0)
+    {
+      idx = -idx - 1;
+      if (count == keys.length)
+      {
+        keys = Arrays.copyOf(keys, count * 2 + 1);
+        containers = Arrays.copyOf(containers, count * 2 + 1);
+      }
+      System.arraycopy(keys, idx, keys, idx + 1, count - idx);
+      System.arraycopy(containers, idx, containers, idx + 1, count - idx);
+      keys[idx] = (char)(value >>> 16);
+      containers[idx] = new ArrayContainer(new char[4], 0);
+      ++count;
+    }
+    Container cont = containers[idx];
+    int oldCard = cont.cardinality();
+    containers[idx] = cont = cont.add((char)value);
+    if (cont.cardinality() == oldCard)
+      return false;
+    ++cardinality;
+    cumulative = null;
+    return true;
+  }
+
+  /** Remove value. Returns false if value is absent */
+  public boolean remove(int value)
+  {
+    if (value < 0)
+      return false;
+    int idx = findContainer(value >>> 16);
+    if (idx < 0)
+      return false;
+    Container cont = containers[idx];
+    int oldCard = cont.cardinality();
+    cont = cont.remove((char)value);
+    if (cont.cardinality() == oldCard)
+      return false;
+    --cardinality;
+    cumulative = null;
+    if (cont.cardinality() > 0)
+      containers[idx] = cont;
+    else
+    {
+      System.arraycopy(keys, idx + 1, keys, idx, count - idx - 1);
+      System.arraycopy(containers, idx + 1, containers, idx, count - idx - 1);
+      containers[--count] = null;
+    }
+    return true;
+  }
+
+  /** Returns value by 0-based index in ascending order */
+  public int select(int index)
+  {
+    if (index < 0 || index >= cardinality)
+      throw new IndexOutOfBoundsException("Bitmap size is " + cardinality + ", no " + index + "th element");
+    if (cumulative == null)
+    {
+      int[] cum = new int[count];
+      int sum = 0;
+      for (int i = 0; i < count; ++i)
+      {
+        cum[i] = sum;
+        sum += containers[i].cardinality();
+      }
+      cumulative = cum;
+    }
+    int idx = Arrays.binarySearch(cumulative, 0, count, index);
+    if (idx < 0)
+      idx = -idx - 2;
+    return (keys[idx] << 16) | containers[idx].select(index - cumulative[idx]);
+  }
+
+  /** Smallest value. Bitmap should not be empty */
+  public int first()
+  {
+    if (count == 0)
+      throw new NoSuchElementException();
+    return (keys[0] << 16) | containers[0].first();
+  }
+
+  /** Biggest value. Bitmap should not be empty */
+  public int last()
+  {
+    if (count == 0)
+      throw new NoSuchElementException();
+    return (keys[count - 1] << 16) | containers[count - 1].last();
+  }
+
+  /** Returns all values sorted ascending */
+  public int[] toArray()
+  {
+    int[] res = new int[cardinality];
+    int pos = 0;
+    for (int i = 0; i < count; ++i)
+      pos = containers[i].toArray(res, pos, keys[i] << 16);
+    return res;
+  }
+
+  /** Iterates values in ascending order */
+  public PrimitiveIterator.OfInt iterator()
+  {
+    return new PrimitiveIterator.OfInt()
+    {
+      int idx = -1;
+      int high;
+      PrimitiveIterator.OfInt cur;
+
+      @Override
+      public boolean hasNext()
+      {
+        while (cur == null || !cur.hasNext())
+        {
+          if (++idx >= count)
+            return false;
+          high = keys[idx] << 16;
+          cur = containers[idx].iterator();
+        }
+        return true;
+      }
+
+      @Override
+      public int nextInt()
+      {
+        if (!hasNext())
+          throw new NoSuchElementException();
+        return high | cur.nextInt();
+      }
+    };
+  }
+
+  /** Returns count of contiguous ranges */
+  public int numberOfRuns()
+  {
+    int res = 0;
+    int prevEnd = -2;
+    for (int i = 0; i < count; ++i)
+    {
+      Container cont = containers[i];
+      res += cont.numberOfRuns();
+      if (prevEnd + 1 == ((keys[i] << 16) | cont.first()))
+        --res; //range continues from previous container
+      prevEnd = (keys[i] << 16) | cont.last();
+    }
+    return res;
+  }
+
+  /** Returns contiguous ranges as pairs of first and last values: [first0, last0, first1, last1...] */
+  public int[] toRuns()
+  {
+    int[] res = new int[numberOfRuns() * 2];
+    int w = 0;
+    for (int i = 0; i < count; ++i)
+    {
+      int high = keys[i] << 16;
+      Container cont = containers[i];
+      if (cont instanceof RunContainer)
+      {
+        RunContainer runs = (RunContainer)cont;
+        for (int r = 0; r < runs.nruns; ++r)
+          w = appendRun(res, w, high | runs.start(r), high | runs.end(r));
+      }
+      else
+        for (PrimitiveIterator.OfInt it = cont.iterator(); it.hasNext();)
+        {
+          int val = high | it.nextInt();
+          w = appendRun(res, w, val, val);
+        }
+    }
+    return res;
+  }
+
+  /** Adds range [first, last] to runs, joins it with previous run if possible. Returns new runs length */
+  private static int appendRun(int[] runs, int w, int first, int last)
+  {
+    if (w > 0 && runs[w - 1] + 1 == first)
+    {
+      runs[w - 1] = last;
+      return w;
+    }
+    runs[w++] = first;
+    runs[w++] = last;
+    return w;
+  }
+
+  /** Approximate memory usage */
+  public long sizeInBytes()
+  {
+    long res = 16 + count * 8L;
+    for (int i = 0; i < count; ++i)
+      res += containers[i].sizeInBytes();
+    return res;
+  }
+
+  /** Returns new bitmap with values, that exist at both bitmaps */
+  public IntBitmap and(IntBitmap other)
+  {
+    IntBitmap res = new IntBitmap(Math.min(count, other.count));
+    int pos1 = 0;
+    int pos2 = 0;
+    while (pos1 < count && pos2 < other.count)
+    {
+      char key1 = keys[pos1];
+      char key2 = other.keys[pos2];
+      if (key1 < key2)
+        ++pos1;
+      else if (key1 > key2)
+        ++pos2;
+      else
+      {
+        res.append(key1, containers[pos1++].and(other.containers[pos2++]));
+      }
+    }
+    return res;
+  }
+
+  /** Returns new bitmap with values, that exist at any bitmap */
+  public IntBitmap or(IntBitmap other)
+  {
+    IntBitmap res = new IntBitmap(count + other.count);
+    int pos1 = 0;
+    int pos2 = 0;
+    while (pos1 < count || pos2 < other.count)
+    {
+      int key1 = pos1 < count ? keys[pos1] : Integer.MAX_VALUE;
+      int key2 = pos2 < other.count ? other.keys[pos2] : Integer.MAX_VALUE;
+      if (key1 < key2)
+        res.append((char)key1, containers[pos1++].copy());
+      else if (key1 > key2)
+        res.append((char)key2, other.containers[pos2++].copy());
+      else
+        res.append((char)key1, containers[pos1++].or(other.containers[pos2++]));
+    }
+    return res;
+  }
+
+  /** Returns new bitmap with values of this bitmap, that absent at other */
+  public IntBitmap andNot(IntBitmap other)
+  {
+    IntBitmap res = new IntBitmap(count);
+    int pos2 = 0;
+    for (int pos1 = 0; pos1 < count; ++pos1)
+    {
+      char key1 = keys[pos1];
+      while (pos2 < other.count && other.keys[pos2] < key1)
+        ++pos2;
+      if (pos2 < other.count && other.keys[pos2] == key1)
+        res.append(key1, containers[pos1].andNot(other.containers[pos2]));
+      else
+        res.append(key1, containers[pos1].copy());
+    }
+    return res;
+  }
+
+  /** Returns count of bytes required by {@link #writeTo(ByteBuffer)} */
+  public int serializedSize()
+  {
+    int res = 4;
+    for (int i = 0; i < count; ++i)
+      res += 2 + containers[i].serializedSize();
+    return res;
+  }
+
+  /** Write bitmap to 'dst' */
+  public void writeTo(ByteBuffer dst)
+  {
+    dst.putInt(count);
+    for (int i = 0; i < count; ++i)
+    {
+      dst.putChar(keys[i]);
+      containers[i].writeTo(dst);
+    }
+  }
+
+  /** Read bitmap, written by {@link #writeTo(ByteBuffer)} */
+  public static IntBitmap readFrom(ByteBuffer src)
+  {
+    int cnt = src.getInt();
+    if (cnt < 0 || cnt > 0x10000)
+      throw new IllegalArgumentException("Wrong containers count " + cnt);
+    IntBitmap res = new IntBitmap(cnt);
+    for (int i = 0; i < cnt; ++i)
+    {
+      char key = src.getChar();
+      res.append(key, Container.readFrom(src));
+    }
+    return res;
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return cardinality;
+  }
+
+  @Override
+  public boolean equals(Object obj)
+  {
+    if (obj == null || getClass() != obj.getClass())
+      return false;
+    IntBitmap other = (IntBitmap) obj;
+    if (cardinality != other.cardinality || count != other.count)
+      return false;
+    PrimitiveIterator.OfInt it1 = iterator();
+    PrimitiveIterator.OfInt it2 = other.iterator();
+    while (it1.hasNext())
+      if (it1.nextInt() != it2.nextInt())
+        return false;
+    return true;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "IntBitmap: " + cardinality + " values at " + count + " containers";
+  }
+
+  /** Set of 16-bit values, part of IntBitmap */
+  abstract static class Container
+  {
+    static final byte ARRAY = 0;
+    static final byte BITMAP = 1;
+    static final byte RUNS = 2;
+
+    static Container readFrom(ByteBuffer src)
+    {
+      byte type = src.get();
+      switch (type)
+      {
+        case ARRAY:
+          char[] content = new char[src.getInt()];
+          for (int i = 0; i < content.length; ++i)
+            content[i] = src.getChar();
+          return new ArrayContainer(content, content.length);
+        case BITMAP:
+          BitmapContainer bc = new BitmapContainer();
+          for (int i = 0; i < bc.words.length; ++i)
+          {
+            bc.words[i] = src.getLong();
+            bc.card += Long.bitCount(bc.words[i]);
+          }
+          return bc;
+        case RUNS:
+          char[] runs = new char[src.getInt() * 2];
+          for (int i = 0; i < runs.length; ++i)
+            runs[i] = src.getChar();
+          return new RunContainer(runs, runs.length / 2);
+        default:
+          throw new IllegalArgumentException("Wrong container type " + type);
+      }
+    }
+
+    abstract int cardinality();
+    abstract boolean contains(char value);
+    /** Returns this or converted container */
+    abstract Container add(char value);
+    /** Returns this or converted container */
+    abstract Container remove(char value);
+    abstract int select(int index);
+    abstract int first();
+    abstract int last();
+    abstract int numberOfRuns();
+    abstract int sizeInBytes();
+    /** Returns count of bytes written by writeTo(), including type */
+    abstract int serializedSize();
+    abstract void writeTo(ByteBuffer dst);
+    abstract Container copy();
+    abstract BitmapContainer toBitmap();
+    abstract int toArray(int[] dst, int pos, int high);
+    abstract PrimitiveIterator.OfInt iterator();
+
+    /** Returns new container (or null if empty) */
+    abstract Container and(Container other);
+    /** Returns new container */
+    abstract Container or(Container other);
+    /** Returns new container (or null if empty) */
+    abstract Container andNot(Container other);
+
+    /** Convert to most compact container type. Returns null for empty container */
+    final Container optimize()
+    {
+      int card = cardinality();
+      if (card == 0)
+        return null;
+      int runsSize = numberOfRuns() * 4;
+      int arraySize = card <= ARRAY_MAX ? card * 2 : Integer.MAX_VALUE;
+      if (runsSize < arraySize && runsSize < BitmapContainer.BYTES)
+        return this instanceof RunContainer ? this : RunContainer.from(this);
+      if (arraySize <= BitmapContainer.BYTES)
+        return this instanceof ArrayContainer ? this : new ArrayContainer(this);
+      return this instanceof BitmapContainer ? this : toBitmap();
+    }
+  }
+
+  static final class ArrayContainer extends Container
+  {
+    char[] content;
+    int card;
+
+    ArrayContainer(char[] content, int card)
+    {
+      this.content = content;
+      this.card = card;
+    }
+
+    ArrayContainer(Container other)
+    {
+      this.card = other.cardinality();
+      this.content = new char[card];
+      int pos = 0;
+      for (PrimitiveIterator.OfInt it = other.iterator(); it.hasNext();)
+        content[pos++] = (char)it.nextInt();
+    }
+
+    @Override
+    int cardinality()
+    {
+      return card;
+    }
+
+    @Override
+    boolean contains(char value)
+    {
+      return Arrays.binarySearch(content, 0, card, value) >= 0;
+    }
+
+    @Override
+    Container add(char value)
+    {
+      int idx = Arrays.binarySearch(content, 0, card, value);
+      if (idx >= 0)
+        return this;
+      if (card >= ARRAY_MAX)
+        return toBitmap().add(value);
+      idx = -idx - 1;
+      if (card == content.length)
+        content = Arrays.copyOf(content, Math.min(ARRAY_MAX, Math.max(4, card * 2)));
+      System.arraycopy(content, idx, content, idx + 1, card - idx);
+      content[idx] = value;
+      ++card;
+      return this;
+    }
+
+    @Override
+    Container remove(char value)
+    {
+      int idx = Arrays.binarySearch(content, 0, card, value);
+      if (idx >= 0)
+      {
+        System.arraycopy(content, idx + 1, content, idx, card - idx - 1);
+        --card;
+      }
+      return this;
+    }
+
+    @Override
+    int select(int index)
+    {
+      return content[index];
+    }
+
+    @Override
+    int first()
+    {
+      return content[0];
+    }
+
+    @Override
+    int last()
+    {
+      return content[card - 1];
+    }
+
+    @Override
+    int numberOfRuns()
+    {
+      if (card == 0)
+        return 0;
+      int res = 1;
+      for (int i = 1; i < card; ++i)
+        if (content[i] != content[i - 1] + 1)
+          ++res;
+      return res;
+    }
+
+    @Override
+    int sizeInBytes()
+    {
+      return 16 + content.length * 2;
+    }
+
+    @Override
+    int serializedSize()
+    {
+      return 5 + card * 2;
+    }
+
+    @Override
+    void writeTo(ByteBuffer dst)
+    {
+      dst.put(ARRAY);
+      dst.putInt(card);
+      for (int i = 0; i < card; ++i)
+        dst.putChar(content[i]);
+    }
+
+    @Override
+    Container copy()
+    {
+      return new ArrayContainer(Arrays.copyOf(content, card), card);
+    }
+
+    @Override
+    BitmapContainer toBitmap()
+    {
+      BitmapContainer res = new BitmapContainer();
+      for (int i = 0; i < card; ++i)
+        res.words[content[i] >>> 6] |= 1L << content[i];
+      res.card = card;
+      return res;
+    }
+
+    @Override
+    int toArray(int[] dst, int pos, int high)
+    {
+      for (int i = 0; i < card; ++i)
+        dst[pos++] = high | content[i];
+      return pos;
+    }
+
+    @Override
+    PrimitiveIterator.OfInt iterator()
+    {
+      return new PrimitiveIterator.OfInt()
+      {
+        int pos;
+
+        @Override
+        public boolean hasNext()
+        {
+          return pos < card;
+        }
+
+        @Override
+        public int nextInt()
+        {
+          return content[pos++];
+        }
+      };
+    }
+
+    /** Keep values of this container, that present (or absent when 'keep' is false) at other */
+    private Container filter(Container other, boolean keep)
+    {
+      char[] res = new char[card];
+      int w = 0;
+      for (int i = 0; i < card; ++i)
+        if (other.contains(content[i]) == keep)
+          res[w++] = content[i];
+      return w == 0 ? null : new ArrayContainer(res, w);
+    }
+
+    @Override
+    Container and(Container other)
+    {
+      if (!(other instanceof ArrayContainer))
+        return filter(other, true);
+      ArrayContainer arr = (ArrayContainer) other;
+      char[] res = new char[Math.min(card, arr.card)];
+      int w = 0;
+      int pos1 = 0;
+      int pos2 = 0;
+      while (pos1 < card && pos2 < arr.card)
+      {
+        char v1 = content[pos1];
+        char v2 = arr.content[pos2];
+        if (v1 < v2)
+          ++pos1;
+        else if (v1 > v2)
+          ++pos2;
+        else
+        {
+          res[w++] = v1;
+          ++pos1;
+          ++pos2;
+        }
+      }
+      return w == 0 ? null : new ArrayContainer(res, w);
+    }
+
+    @Override
+    Container or(Container other)
+    {
+      if (!(other instanceof ArrayContainer))
+        return other.or(this);
+      ArrayContainer arr = (ArrayContainer) other;
+      if (card + arr.card > ARRAY_MAX)
+      {
+        BitmapContainer res = toBitmap();
+        for (int i = 0; i < arr.card; ++i)
+          res.set(arr.content[i]);
+        return res.optimize();
+      }
+      char[] res = new char[card + arr.card];
+      int w = 0;
+      int pos1 = 0;
+      int pos2 = 0;
+      while (pos1 < card || pos2 < arr.card)
+      {
+        int v1 = pos1 < card ? content[pos1] : Integer.MAX_VALUE;
+        int v2 = pos2 < arr.card ? arr.content[pos2] : Integer.MAX_VALUE;
+        if (v1 <= v2)
+          ++pos1;
+        if (v2 <= v1)
+          ++pos2;
+        res[w++] = (char)Math.min(v1, v2);
+      }
+      return new ArrayContainer(res, w).optimize();
+    }
+
+    @Override
+    Container andNot(Container other)
+    {
+      return filter(other, false);
+    }
+  }
+
+  static final class BitmapContainer extends Container
+  {
+    static final int BYTES = 8192;
+    final long[] words = new long[1024];
+    int card;
+    private int[] ranks; //cardinality before each 16 words, calculated on demand
+
+    void set(char value)
+    {
+      long mask = 1L << value;
+      if ((words[value >>> 6] & mask) == 0)
+      {
+        words[value >>> 6] |= mask;
+        ++card;
+        ranks = null;
+      }
+    }
+
+    /** Set all bits at range [from, to] */
+    void setRange(int from, int to)
+    {
+      int firstWord = from >>> 6;
+      int lastWord = to >>> 6;
+      long firstMask = -1L << from;
+      long lastMask = -1L >>> (63 - (to & 63));
+      if (firstWord == lastWord)
+        words[firstWord] |= firstMask & lastMask;
+      else
+      {
+        words[firstWord] |= firstMask;
+        for (int i = firstWord + 1; i < lastWord; ++i)
+          words[i] = -1L;
+        words[lastWord] |= lastMask;
+      }
+      recount();
+    }
+
+    void recount()
+    {
+      int res = 0;
+      for (long word: words)
+        res += Long.bitCount(word);
+      card = res;
+      ranks = null;
+    }
+
+    @Override
+    int cardinality()
+    {
+      return card;
+    }
+
+    @Override
+    boolean contains(char value)
+    {
+      return (words[value >>> 6] & (1L << value)) != 0;
+    }
+
+    @Override
+    Container add(char value)
+    {
+      set(value);
+      return this;
+    }
+
+    @Override
+    Container remove(char value)
+    {
+      long mask = 1L << value;
+      if ((words[value >>> 6] & mask) != 0)
+      {
+        words[value >>> 6] &= ~mask;
+        --card;
+        ranks = null;
+        if (card <= ARRAY_MAX)
+          return new ArrayContainer(this);
+      }
+      return this;
+    }
+
+    @Override
+    int select(int index)
+    {
+      if (ranks == null)
+      {
+        int[] r = new int[64];
+        int sum = 0;
+        for (int b = 0; b < 64; ++b)
+        {
+          r[b] = sum;
+          for (int i = b * 16; i < b * 16 + 16; ++i)
+            sum += Long.bitCount(words[i]);
+        }
+        ranks = r;
+      }
+      int block = Arrays.binarySearch(ranks, index);
+      if (block < 0)
+        block = -block - 2;
+      else
+        while (block + 1 < 64 && ranks[block + 1] == index) //empty blocks have same rank
+          ++block;
+      index -= ranks[block];
+      for (int i = block * 16; ; ++i)
+      {
+        long word = words[i];
+        int bits = Long.bitCount(word);
+        if (index < bits)
+        {
+          while (--index >= 0)
+            word &= word - 1;
+          return i * 64 + Long.numberOfTrailingZeros(word);
+        }
+        index -= bits;
+      }
+    }
+
+    @Override
+    int first()
+    {
+      int i = 0;
+      while (words[i] == 0)
+        ++i;
+      return i * 64 + Long.numberOfTrailingZeros(words[i]);
+    }
+
+    @Override
+    int last()
+    {
+      int i = words.length - 1;
+      while (words[i] == 0)
+        --i;
+      return i * 64 + 63 - Long.numberOfLeadingZeros(words[i]);
+    }
+
+    @Override
+    int numberOfRuns()
+    {
+      int res = 0;
+      long prevTop = 0;
+      for (long word: words)
+      {
+        res += Long.bitCount(word & ~((word << 1) | prevTop));
+        prevTop = word >>> 63;
+      }
+      return res;
+    }
+
+    @Override
+    int sizeInBytes()
+    {
+      return 16 + BYTES;
+    }
+
+    @Override
+    int serializedSize()
+    {
+      return 1 + BYTES;
+    }
+
+    @Override
+    void writeTo(ByteBuffer dst)
+    {
+      dst.put(BITMAP);
+      for (long word: words)
+        dst.putLong(word);
+    }
+
+    @Override
+    Container copy()
+    {
+      BitmapContainer res = new BitmapContainer();
+      System.arraycopy(words, 0, res.words, 0, words.length);
+      res.card = card;
+      return res;
+    }
+
+    @Override
+    BitmapContainer toBitmap()
+    {
+      return this;
+    }
+
+    @Override
+    int toArray(int[] dst, int pos, int high)
+    {
+      for (int i = 0; i < words.length; ++i)
+      {
+        long word = words[i];
+        while (word != 0)
+        {
+          dst[pos++] = high | (i * 64 + Long.numberOfTrailingZeros(word));
+          word &= word - 1;
+        }
+      }
+      return pos;
+    }
+
+    @Override
+    PrimitiveIterator.OfInt iterator()
+    {
+      return new PrimitiveIterator.OfInt()
+      {
+        int idx;
+        long word = words[0];
+
+        @Override
+        public boolean hasNext()
+        {
+          while (word == 0 && ++idx < words.length)
+            word = words[idx];
+          return word != 0;
+        }
+
+        @Override
+        public int nextInt()
+        {
+          hasNext();
+          int res = idx * 64 + Long.numberOfTrailingZeros(word);
+          word &= word - 1;
+          return res;
+        }
+      };
+    }
+
+    @Override
+    Container and(Container other)
+    {
+      if (other instanceof ArrayContainer)
+        return other.and(this);
+      BitmapContainer bc = other.toBitmap();
+      BitmapContainer res = new BitmapContainer();
+      for (int i = 0; i < words.length; ++i)
+        res.words[i] = words[i] & bc.words[i];
+      res.recount();
+      return res.optimize();
+    }
+
+    @Override
+    Container or(Container other)
+    {
+      BitmapContainer res = (BitmapContainer) copy();
+      if (other instanceof ArrayContainer)
+      {
+        ArrayContainer arr = (ArrayContainer) other;
+        for (int i = 0; i < arr.card; ++i)
+          res.set(arr.content[i]);
+      }
+      else
+      {
+        BitmapContainer bc = other.toBitmap();
+        for (int i = 0; i < words.length; ++i)
+          res.words[i] |= bc.words[i];
+        res.recount();
+      }
+      return res.optimize();
+    }
+
+    @Override
+    Container andNot(Container other)
+    {
+      BitmapContainer res = (BitmapContainer) copy();
+      if (other instanceof ArrayContainer)
+      {
+        ArrayContainer arr = (ArrayContainer) other;
+        for (int i = 0; i < arr.card; ++i)
+          res.words[arr.content[i] >>> 6] &= ~(1L << arr.content[i]);
+      }
+      else
+      {
+        BitmapContainer bc = other.toBitmap();
+        for (int i = 0; i < words.length; ++i)
+          res.words[i] &= ~bc.words[i];
+      }
+      res.recount();
+      return res.optimize();
+    }
+  }
+
+  static final class RunContainer extends Container
+  {
+    final char[] runs; //pairs of start and (length - 1)
+    final int nruns;
+    private final int card;
+
+    RunContainer(char[] runs, int nruns)
+    {
+      this.runs = runs;
+      this.nruns = nruns;
+      int sum = 0;
+      for (int i = 0; i < nruns; ++i)
+        sum += runs[2 * i + 1] + 1;
+      this.card = sum;
+    }
+
+    static RunContainer from(Container other)
+    {
+      char[] res = new char[other.numberOfRuns() * 2];
+      int w = 0;
+      int start = -2;
+      int prev = -2;
+      for (PrimitiveIterator.OfInt it = other.iterator(); it.hasNext();)
+      {
+        int val = it.nextInt();
+        if (val != prev + 1)
+        {
+          if (start >= 0)
+          {
+            res[w++] = (char)start;
+            res[w++] = (char)(prev - start);
+          }
+          start = val;
+        }
+        prev = val;
+      }
+      if (start >= 0)
+      {
+        res[w++] = (char)start;
+        res[w++] = (char)(prev - start);
+      }
+      return new RunContainer(res, w / 2);
+    }
+
+    /** Creates container from ranges [starts[i], ends[i]]. Returns null if there are no ranges */
+    private static Container fromRanges(int[] starts, int[] ends, int cnt)
+    {
+      if (cnt == 0)
+        return null;
+      char[] res = new char[cnt * 2];
+      for (int i = 0; i < cnt; ++i)
+      {
+        res[2 * i] = (char)starts[i];
+        res[2 * i + 1] = (char)(ends[i] - starts[i]);
+      }
+      return new RunContainer(res, cnt).optimize();
+    }
+
+    private int start(int run)
+    {
+      return runs[2 * run];
+    }
+
+    private int end(int run)
+    {
+      return runs[2 * run] + runs[2 * run + 1];
+    }
+
+    @Override
+    int cardinality()
+    {
+      return card;
+    }
+
+    @Override
+    boolean contains(char value)
+    {
+      int low = 0;
+      int high = nruns - 1;
+      while (low <= high)
+      {
+        int middle = (low + high) >>> 1;
+        if (start(middle) > value)
+          high = middle - 1;
+        else if (end(middle) < value)
+          low = middle + 1;
+        else
+          return true;
+      }
+      return false;
+    }
+
+    @Override
+    Container add(char value)
+    {
+      if (contains(value))
+        return this;
+      return toBitmap().add(value);
+    }
+
+    @Override
+    Container remove(char value)
+    {
+      if (!contains(value))
+        return this;
+      return toBitmap().remove(value);
+    }
+
+    @Override
+    int select(int index)
+    {
+      for (int i = 0; i < nruns; ++i)
+      {
+        int len = runs[2 * i + 1] + 1;
+        if (index < len)
+          return start(i) + index;
+        index -= len;
+      }
+      throw new IndexOutOfBoundsException();
+    }
+
+    @Override
+    int first()
+    {
+      return start(0);
+    }
+
+    @Override
+    int last()
+    {
+      return end(nruns - 1);
+    }
+
+    @Override
+    int numberOfRuns()
+    {
+      return nruns;
+    }
+
+    @Override
+    int sizeInBytes()
+    {
+      return 16 + nruns * 4;
+    }
+
+    @Override
+    int serializedSize()
+    {
+      return 5 + nruns * 4;
+    }
+
+    @Override
+    void writeTo(ByteBuffer dst)
+    {
+      dst.put(RUNS);
+      dst.putInt(nruns);
+      for (int i = 0; i < nruns * 2; ++i)
+        dst.putChar(runs[i]);
+    }
+
+    @Override
+    Container copy()
+    {
+      return new RunContainer(Arrays.copyOf(runs, nruns * 2), nruns);
+    }
+
+    @Override
+    BitmapContainer toBitmap()
+    {
+      BitmapContainer res = new BitmapContainer();
+      for (int i = 0; i < nruns; ++i)
+        res.setRange(start(i), end(i));
+      return res;
+    }
+
+    @Override
+    int toArray(int[] dst, int pos, int high)
+    {
+      for (int i = 0; i < nruns; ++i)
+        for (int v = start(i), end = end(i); v <= end; ++v)
+          dst[pos++] = high | v;
+      return pos;
+    }
+
+    @Override
+    PrimitiveIterator.OfInt iterator()
+    {
+      return new PrimitiveIterator.OfInt()
+      {
+        int run;
+        int next = nruns > 0 ? start(0) : 0;
+
+        @Override
+        public boolean hasNext()
+        {
+          return run < nruns;
+        }
+
+        @Override
+        public int nextInt()
+        {
+          int res = next;
+          if (next == end(run))
+          {
+            if (++run < nruns)
+              next = start(run);
+          }
+          else
+            ++next;
+          return res;
+        }
+      };
+    }
+
+    @Override
+    Container and(Container other)
+    {
+      if (other instanceof ArrayContainer)
+        return other.and(this);
+      if (!(other instanceof RunContainer))
+        return toBitmap().and(other);
+      RunContainer rc = (RunContainer) other;
+      int[] starts = new int[nruns + rc.nruns];
+      int[] ends = new int[nruns + rc.nruns];
+      int w = 0;
+      int pos1 = 0;
+      int pos2 = 0;
+      while (pos1 < nruns && pos2 < rc.nruns)
+      {
+        int from = Math.max(start(pos1), rc.start(pos2));
+        int to = Math.min(end(pos1), rc.end(pos2));
+        if (from <= to)
+        {
+          starts[w] = from;
+          ends[w++] = to;
+        }
+        if (end(pos1) < rc.end(pos2))
+          ++pos1;
+        else
+          ++pos2;
+      }
+      return fromRanges(starts, ends, w);
+    }
+
+    @Override
+    Container or(Container other)
+    {
+      if (!(other instanceof RunContainer))
+        return toBitmap().or(other);
+      RunContainer rc = (RunContainer) other;
+      int[] starts = new int[nruns + rc.nruns];
+      int[] ends = new int[nruns + rc.nruns];
+      int w = 0;
+      int pos1 = 0;
+      int pos2 = 0;
+      while (pos1 < nruns || pos2 < rc.nruns)
+      {
+        int from, to;
+        if (pos2 >= rc.nruns || (pos1 < nruns && start(pos1) <= rc.start(pos2)))
+        {
+          from = start(pos1);
+          to = end(pos1++);
+        }
+        else
+        {
+          from = rc.start(pos2);
+          to = rc.end(pos2++);
+        }
+        if (w > 0 && from <= ends[w - 1] + 1)
+          ends[w - 1] = Math.max(ends[w - 1], to);
+        else
+        {
+          starts[w] = from;
+          ends[w++] = to;
+        }
+      }
+      return fromRanges(starts, ends, w);
+    }
+
+    @Override
+    Container andNot(Container other)
+    {
+      if (!(other instanceof RunContainer))
+        return toBitmap().andNot(other);
+      RunContainer rc = (RunContainer) other;
+      int[] starts = new int[nruns + rc.nruns];
+      int[] ends = new int[nruns + rc.nruns];
+      int w = 0;
+      int pos2 = 0;
+      for (int pos1 = 0; pos1 < nruns; ++pos1)
+      {
+        int from = start(pos1);
+        int to = end(pos1);
+        while (pos2 < rc.nruns && rc.end(pos2) < from)
+          ++pos2;
+        int p = pos2;
+        while (from <= to && p < rc.nruns && rc.start(p) <= to)
+        {
+          if (rc.start(p) > from)
+          {
+            starts[w] = from;
+            ends[w++] = rc.start(p) - 1;
+          }
+          from = Math.max(from, rc.end(p) + 1);
+          ++p;
+        }
+        if (from <= to)
+        {
+          starts[w] = from;
+          ends[w++] = to;
+        }
+      }
+      return fromRanges(starts, ends, w);
+    }
+  }
+}
@@ -0,0 +1,122 @@
+package datalist.types;
+
+import java.util.Arrays;
+
+/**
+ * Map from long to int without objects per entry (open addressing, linear probing).<br>
+ * This class is not thread-safe.
+ * @author SergeyT
+ */
+public final class LongIntMap
+{
+  private static final long FREE = Long.MIN_VALUE; //marks free slot, this key is stored separately
+
+  private long[] keys;
+  private int[] values;
+  private int size;
+  private boolean hasFreeKey;
+  private int freeKeyValue;
+
+  public LongIntMap()
+  {
+    this(16);
+  }
+
+  public LongIntMap(int expectedSize)
+  {
+    allocate(Integer.highestOneBit(Math.max(expectedSize, 2) * 2 - 1) << 1);
+  }
+
+  private void allocate(int capacity)
+  {
+    keys = new long[capacity];
+    Arrays.fill(keys, FREE);
+    values = new int[capacity];
+  }
+
+  private static int hash(long key)
+  {
+    return ObjectIntMap.hash((int)(key ^ (key >>> 32)));
+  }
+
+  /** Returns slot of key or free slot for it */
+  private int slot(long key)
+  {
+    int mask = keys.length - 1;
+    int pos = hash(key) & mask;
+    while (keys[pos] != FREE && keys[pos] != key)
+      pos = (pos + 1) & mask;
+    return pos;
+  }
+
+  public int size()
+  {
+    return size;
+  }
+
+  public boolean isEmpty()
+  {
+    return size == 0;
+  }
+
+  public boolean containsKey(long key)
+  {
+    if (key == FREE)
+      return hasFreeKey;
+    return keys[slot(key)] == key;
+  }
+
+  /** Returns value for key or 'defaultValue' if key is absent */
+  public int get(long key, int defaultValue)
+  {
+    if (key == FREE)
+      return hasFreeKey ? freeKeyValue : defaultValue;
+    int pos = slot(key);
+    return keys[pos] == key ? values[pos] : defaultValue;
+  }
+
+  public void put(long key, int value)
+  {
+    if (key == FREE)
+    {
+      if (!hasFreeKey)
+        ++size;
+      hasFreeKey = true;
+      freeKeyValue = value;
+      return;
+    }
+    int pos = slot(key);
+    if (keys[pos] != key)
+    {
+      if ((size + 1) * 2 > keys.length)
+      {
+        grow();
+        pos = slot(key);
+      }
+      keys[pos] = key;
+      ++size;
+    }
+    values[pos] = value;
+  }
+
+  public void clear()
+  {
+    Arrays.fill(keys, FREE);
+    size = 0;
+    hasFreeKey = false;
+  }
+
+  private void grow()
+  {
+    long[] oldKeys = keys;
+    int[] oldValues = values;
+    allocate(keys.length * 2);
+    for (int i = 0; i < oldKeys.length; ++i)
+      if (oldKeys[i] != FREE)
+      {
+        int pos = slot(oldKeys[i]);
+        keys[pos] = oldKeys[i];
+        values[pos] = oldValues[i];
+      }
+  }
+}
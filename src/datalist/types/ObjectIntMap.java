@@ -0,0 +1,262 @@
+package datalist.types;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Map from object (null allowed) to int without objects per entry. Keeps insertion order.<br>
+ * Entries are stored at arrays of keys and values, open addressing hash table (linear probing) keeps entry numbers.
+ * Removed entries are skipped and compacted on next resize.<br>
+ * This class is not thread-safe.
+ * @param <K> the type of keys
+ * @author SergeyT
+ */
+public final class ObjectIntMap<K>
+{
+  private static final Object NULL_KEY = new Object();
+  private static final Object REMOVED = new Object();
+
+  private Object[] keys;
+  private int[] values;
+  private int[] table; //entry number + 1, 0 for free slot
+  private int used; //entries count, including removed
+  private int size;
+
+  public ObjectIntMap()
+  {
+    this(16);
+  }
+
+  public ObjectIntMap(int expectedSize)
+  {
+    int capacity = Math.max(expectedSize, 4);
+    keys = new Object[capacity];
+    values = new int[capacity];
+    table = new int[tableSize(capacity)];
+  }
+
+  /** Power of two, at least twice bigger than entries count */
+  private static int tableSize(int entries)
+  {
+    return Integer.highestOneBit(Math.max(entries, 2) * 2 - 1) << 1;
+  }
+
+  static int hash(int h)
+  {
+    h *= 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  private static Object mask(Object key)
+  {
+    return key == null ? NULL_KEY : key;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <K> K unmask(Object key)
+  {
+    return key == NULL_KEY ? null : (K)key;
+  }
+
+  /** Returns entry number or -1 */
+  private int find(Object masked)
+  {
+    int mask = table.length - 1;
+    int pos = hash(masked.hashCode()) & mask;
+    int entry;
+    while ((entry = table[pos]) != 0)
+    {
+      if (masked.equals(keys[entry - 1]))
+        return entry - 1;
+      pos = (pos + 1) & mask;
+    }
+    return -1;
+  }
+
+  public int size()
+  {
+    return size;
+  }
+
+  public boolean isEmpty()
+  {
+    return size == 0;
+  }
+
+  public boolean containsKey(K key)
+  {
+    return find(mask(key)) >= 0;
+  }
+
+  /** Returns value for key or 'defaultValue' if key is absent */
+  public int get(K key, int defaultValue)
+  {
+    int entry = find(mask(key));
+    return entry < 0 ? defaultValue : values[entry];
+  }
+
+  public void put(K key, int value)
+  {
+    Object masked = mask(key);
+    int entry = find(masked);
+    if (entry >= 0)
+      values[entry] = value;
+    else
+      insert(masked, value);
+  }
+
+  /** Adds 'delta' to value (absent key has 0 value). Returns new value */
+  public int addTo(K key, int delta)
+  {
+    Object masked = mask(key);
+    int entry = find(masked);
+    if (entry >= 0)
+      return values[entry] += delta;
+    insert(masked, delta);
+    return delta;
+  }
+
+  /** Returns true if key was removed */
+  public boolean remove(K key)
+  {
+    int entry = find(mask(key));
+    if (entry < 0)
+      return false;
+    keys[entry] = REMOVED; //table slot is kept to not break probe sequences
+    --size;
+    return true;
+  }
+
+  public void clear()
+  {
+    Arrays.fill(keys, 0, used, null);
+    Arrays.fill(table, 0);
+    used = 0;
+    size = 0;
+  }
+
+  /** Call 'action' for each key and value in insertion order */
+  public void forEach(ObjIntConsumer<? super K> action)
+  {
+    for (int i = 0; i < used; ++i)
+      if (keys[i] != REMOVED)
+        action.accept(unmask(keys[i]), values[i]);
+  }
+
+  /** Returns keys view, that supports iteration in insertion order and removal */
+  public Set<K> keySet()
+  {
+    return new AbstractSet<K>()
+    {
+      @Override
+      public Iterator<K> iterator()
+      {
+        return new Iterator<K>()
+        {
+          private int pos = skipRemoved(0);
+          private int last = -1;
+
+          @Override
+          public boolean hasNext()
+          {
+            return pos < used;
+          }
+
+          @Override
+          public K next()
+          {
+            if (pos >= used)
+              throw new NoSuchElementException();
+            last = pos;
+            pos = skipRemoved(pos + 1);
+            return unmask(keys[last]);
+          }
+
+          @Override
+          public void remove()
+          {
+            if (last < 0 || keys[last] == REMOVED)
+              throw new IllegalStateException();
+            keys[last] = REMOVED;
+            --size;
+          }
+        };
+      }
+
+      @Override
+      public boolean contains(Object key)
+      {
+        return find(mask(key)) >= 0;
+      }
+
+      @Override
+      public int size()
+      {
+        return size;
+      }
+    };
+  }
+
+  private int skipRemoved(int pos)
+  {
+    while (pos < used && keys[pos] == REMOVED)
+      ++pos;
+    return pos;
+  }
+
+  private void insert(Object masked, int value)
+  {
+    if (used == keys.length)
+      resize();
+    keys[used] = masked;
+    values[used] = value;
+    ++used;
+    ++size;
+    place(used);
+  }
+
+  /** Put entry number to hash table */
+  private void place(int entryPlusOne)
+  {
+    int mask = table.length - 1;
+    int pos = hash(keys[entryPlusOne - 1].hashCode()) & mask;
+    while (table[pos] != 0)
+      pos = (pos + 1) & mask;
+    table[pos] = entryPlusOne;
+  }
+
+  /** Drops removed entries and grows arrays if they are mostly used */
+  private void resize()
+  {
+    int w = 0;
+    for (int i = 0; i < used; ++i)
+      if (keys[i] != REMOVED)
+      {
+        keys[w] = keys[i];
+        values[w] = values[i];
+        ++w;
+      }
+    Arrays.fill(keys, w, used, null);
+    used = w;
+    if (used * 4 > keys.length * 3)
+    {
+      keys = Arrays.copyOf(keys, keys.length * 2);
+      values = Arrays.copyOf(values, values.length * 2);
+    }
+    table = new int[tableSize(keys.length)];
+    for (int i = 1; i <= used; ++i)
+      place(i);
+  }
+
+  @Override
+  public String toString()
+  {
+    StringBuilder sb = new StringBuilder("{");
+    forEach((key, value) -> sb.append(sb.length() > 1 ? ", " : "").append(key).append('=').append(value));
+    return sb.append('}').toString();
+  }
+}
@@ -0,0 +1,189 @@
+package datalist.types;
+
+import datalist.io.BuffersPool;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Read-only sorted set of int values, that stored out of java heap. Useful to keep big results (for example, found
+ * rows of user sessions) without GC pressure.<br>
+ * Sets up to "datalist.offheap_direct_limit" bytes (64MB by default) are stored at direct memory, bigger sets are
+ * stored at temporary mapped file.<br>
+ * Set is reference counted: each {@link #retain()} should be followed by {@link #close()}. Memory is released
+ * (direct memory is freed, file is unmapped and deleted) when the last reference closed, any access after that throws
+ * IllegalStateException. Retain the set before passing it to other thread: memory must not be released while it
+ * is read.<br>
+ * Read methods are thread-safe.
+ * @author SergeyT
+ */
+public final class OffHeapIntSet implements IntArray, AutoCloseable
+{
+  private static final long DIRECT_LIMIT = Long.getLong("datalist.offheap_direct_limit", 64L << 20);
+
+  private final int size;
+  private final AtomicInteger refs = new AtomicInteger(1);
+  private final FileChannel fc; //null for direct memory
+  private final ByteBuffer memory; //direct or mapped buffer, that is released by close
+  private volatile IntBuffer data;
+
+  private OffHeapIntSet(int size, ByteBuffer buffer, FileChannel fc)
+  {
+    this.size = size;
+    this.memory = buffer;
+    this.data = buffer.order(ByteOrder.nativeOrder()).asIntBuffer();
+    this.fc = fc;
+  }
+
+  /** Copy values of set to off-heap storage */
+  public static OffHeapIntSet of(SortedIntSet set)
+  {
+    int size = set.size();
+    long bytes = (long)size * 4;
+    OffHeapIntSet res;
+    if (bytes <= DIRECT_LIMIT)
+      res = new OffHeapIntSet(size, ByteBuffer.allocateDirect((int)bytes), null);
+    else if (bytes > Integer.MAX_VALUE)
+      throw new IllegalArgumentException("Set is too big: " + size + " items");
+    else
+      res = mapped(size, bytes);
+    IntBuffer dst = res.data;
+    int[] pos = new int[1];
+    set.forEachInt(x -> dst.put(pos[0]++, x));
+    return res;
+  }
+
+  private static OffHeapIntSet mapped(int size, long bytes)
+  {
+    FileChannel fc = null;
+    try
+    {
+      Path file = Files.createTempFile("datalist-set-", ".tmp");
+      fc = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+      return new OffHeapIntSet(size, fc.map(FileChannel.MapMode.READ_WRITE, 0, bytes), fc);
+    }
+    catch (IOException ex)
+    {
+      closeChannel(fc);
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  /** Add reference to set. Returns this */
+  public OffHeapIntSet retain()
+  {
+    int cur;
+    do
+    {
+      cur = refs.get();
+      if (cur <= 0)
+        throw new IllegalStateException("Set is closed");
+    } while (!refs.compareAndSet(cur, cur + 1));
+    return this;
+  }
+
+  /** Release reference. Storage is released by the last one */
+  @Override
+  public void close()
+  {
+    int left = refs.decrementAndGet();
+    if (left > 0)
+      return;
+    if (left < 0)
+      throw new IllegalStateException("Set is already closed");
+    data = null;
+    try
+    {
+      BuffersPool.free(memory);
+    }
+    finally
+    {
+      closeChannel(fc);
+    }
+  }
+
+  private static void closeChannel(FileChannel fc)
+  {
+    if (fc == null)
+      return;
+    try
+    {
+      fc.close();
+    }
+    catch (IOException ex)
+    {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  private IntBuffer buffer()
+  {
+    IntBuffer res = data;
+    if (res == null)
+      throw new IllegalStateException("Set is closed");
+    return res;
+  }
+
+  /** Copy values to java heap */
+  public SortedIntSet toSortedIntSet()
+  {
+    IntBuffer src = buffer();
+    int[] res = new int[size];
+    for (int i = 0; i < size; ++i)
+      res[i] = src.get(i);
+    return SortedIntSet.wrap(res).trim();
+  }
+
+  @Override
+  public boolean contains(int val)
+  {
+    IntBuffer src = buffer();
+    int low = 0;
+    int high = size - 1;
+    while (low <= high)
+    {
+      int middle = (low + high) >>> 1;
+      int item = src.get(middle);
+      if (item < val)
+        low = middle + 1;
+      else if (item > val)
+        high = middle - 1;
+      else
+        return true;
+    }
+    return false;
+  }
+
+  @Override
+  public int get(int index)
+  {
+    if (index < 0 || index >= size)
+      throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+    return buffer().get(index);
+  }
+
+  @Override
+  public boolean isEmpty()
+  {
+    return size == 0;
+  }
+
+  @Override
+  public int size()
+  {
+    return size;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "OffHeapIntSet, " + size + " items" + (data == null ? ", closed" : "");
+  }
+}
@@ -4,15 +4,39 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Iterator;
+import java.util.Comparator;
+import java.util.NoSuchElementException;
 import java.util.List;
+import java.util.PrimitiveIterator;
 import java.util.StringJoiner;
-import java.util.function.Predicate;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
 
-/** SortedIntSet keep items sorted to simplify union/intersersection */
+/**
+ * SortedIntSet keep items sorted to simplify union/intersersection.<br>
+ * Big dense sets (for example, filter that keeps most of rows) and sets of few contiguous ranges (for example, rows
+ * of data imported in date order) are stored as {@link IntBitmap}: it takes less memory, set operations works with
+ * 64-bit words or whole ranges. Minimal size to use bitmap specified by "datalist.bitmap_min_size"
+ * system variable (8192 by default).<br>
+ * Operations with big arrays (see "datalist.parallel_min_size" system variable, 1M items by default) are split by
+ * value ranges and executed at common {@link ForkJoinPool}.
+ */
 public class SortedIntSet implements IntArray
 {
+  private static final int BITMAP_MIN_SIZE = Integer.getInteger("datalist.bitmap_min_size", 8192);
+  /** Bitmap is used when there is at least one item for each BITMAP_DENSITY values */
+  private static final int BITMAP_DENSITY = 16;
+  /** Bitmap is used when there are at least BITMAP_RUN_LENGTH items per contiguous range (at average) */
+  private static final int BITMAP_RUN_LENGTH = 8;
+  /** Galloping search is used for intersection when one set is GALLOP_RATIO times bigger than other */
+  private static final int GALLOP_RATIO = 8;
+  /** Sets with at least PARALLEL_MIN_SIZE items (at total) are sorted, intersected and merged at ForkJoinPool */
+  private static final int PARALLEL_MIN_SIZE = Integer.getInteger("datalist.parallel_min_size", 1 << 20);
+
   private int[] data;
+  private IntBitmap bitmap; //not null for compressed set, data is null in this case
   private int size;
   private boolean sorted;
 
@@ -36,7 +60,7 @@ public class SortedIntSet implements IntArray
   public SortedIntSet(int... c)
   {
     this(c.length);
-    for (Integer elem: c)
+    for (int elem: c)
       data[size++] = elem;
   }
 
@@ -52,10 +76,23 @@ public class SortedIntSet implements IntArray
     return new SortedIntSet(data, data.length, false);
   }
 
+  /** Creates compressed set, that uses 'bitmap' as is */
+  public static SortedIntSet wrap(IntBitmap bitmap)
+  {
+    SortedIntSet res = new SortedIntSet(null, 0, true);
+    res.setBitmap(bitmap);
+    return res;
+  }
+
   public SortedIntSet copy()
   {
     SortedIntSet res;
-    if (data != null)
+    if (bitmap != null)
+    {
+      res = new SortedIntSet(null, size, true);
+      res.bitmap = bitmap.copy();
+    }
+    else if (data != null)
       res = new SortedIntSet(Arrays.copyOf(data, size), size, sorted);
     else
       res = new SortedIntSet(null, size, sorted);
@@ -75,14 +112,29 @@ public class SortedIntSet implements IntArray
 
   public boolean allValuesList()
   {
-    return size > 0 && data == null;
+    return size > 0 && data == null && bitmap == null;
+  }
+
+  /** Copy set out of java heap, see {@link OffHeapIntSet} */
+  public OffHeapIntSet toOffHeap()
+  {
+    return OffHeapIntSet.of(this);
+  }
+
+  /** Returns true if set stored as compressed bitmap */
+  public boolean isBitmap()
+  {
+    return bitmap != null;
   }
 
   @Override
-  public Iterator<Integer> iterator()
+  public PrimitiveIterator.OfInt iterator()
   {
+    if (bitmap != null)
+      return bitmap.iterator();
+    sortDeduplicate();
     if (data == null)
-      return new Iterator<Integer>()
+      return new PrimitiveIterator.OfInt()
       {
         int pos;
 
@@ -93,13 +145,15 @@ public class SortedIntSet implements IntArray
         }
 
         @Override
-        public Integer next()
+        public int nextInt()
         {
+          if (pos >= size)
+            throw new NoSuchElementException();
           return pos++;
         }
       };
     else
-      return new Iterator<Integer>()
+      return new PrimitiveIterator.OfInt()
       {
         int pos;
 
@@ -110,19 +164,53 @@ public class SortedIntSet implements IntArray
         }
 
         @Override
-        public Integer next()
+        public int nextInt()
         {
+          if (pos >= size)
+            throw new NoSuchElementException();
           return data[pos++];
         }
       };
   }
 
+  @Override
+  public void forEachInt(IntConsumer action)
+  {
+    if (bitmap != null)
+      bitmap.iterator().forEachRemaining(action);
+    else if (data == null)
+      for (int i = 0; i < size; ++i)
+        action.accept(i);
+    else
+    {
+      sortDeduplicate();
+      for (int i = 0; i < size; ++i)
+        action.accept(data[i]);
+    }
+  }
+
+  @Override
+  public IntStream stream()
+  {
+    if (data == null && bitmap == null)
+      return IntStream.range(0, size);
+    if (data != null)
+    {
+      sortDeduplicate();
+      return Arrays.stream(data, 0, size);
+    }
+    return IntArray.super.stream();
+  }
+
   private void sortDeduplicate()
   {
     if ((data == null || sorted) || size <= 0)
       return;
 
-    Arrays.sort(data, 0, size);
+    if (size >= PARALLEL_MIN_SIZE)
+      Arrays.parallelSort(data, 0, size);
+    else
+      Arrays.sort(data, 0, size);
     
     //deduplicate
     int i = 0;
@@ -139,10 +227,11 @@ public class SortedIntSet implements IntArray
     sorted = true;
   }
 
-  public boolean removeIf(Predicate<Integer> filter)
+  public boolean removeIf(IntPredicate filter)
   {
     if (size == 0)
       return false;
+    unpackBitmap();
 
     if (data == null)
     {
@@ -180,22 +269,58 @@ public class SortedIntSet implements IntArray
   {
     if (size == 0 || arr.size == 0)
       return false;
-    if (this == arr || arr.data == null)
+    if (this == arr || (arr.allValuesList() && arr.size > biggest()))
     {
-      size = 0;
-      data = null;
+      makeEmpty();
       return true;
     }
+    if (arr.allValuesList()) //remove [0, arr.size)
+    {
+      if (allValuesList())
+      {
+        bitmap = IntBitmap.range(arr.size, size);
+        size = bitmap.cardinality();
+        return true;
+      }
+      if (bitmap != null)
+      {
+        int oldSize = size;
+        setBitmap(bitmap.andNot(IntBitmap.range(0, arr.size)));
+        return size < oldSize;
+      }
+      return removeIf(x -> x < arr.size);
+    }
 
     sortDeduplicate();
     arr.sortDeduplicate();
 
-    if (data == null) //any value from [0, size)
-      return this.removeIf(x -> arr.contains(x)); //rewrite when speed is critical
+    if (bitmap != null || arr.bitmap != null || allValuesList())
+      return removeAllBitmap(arr);
+    else if (isParallel(arr))
+      return setParallelResult(SortedIntSet::differencePart, arr);
     else
       return removeAll_main(arr);
   }
 
+  private boolean removeAllBitmap(SortedIntSet arr)
+  {
+    int oldSize = size;
+    if (data != null) //arr is bitmap
+    {
+      int w = 0;
+      for (int i = 0; i < size; ++i)
+        if (!arr.bitmap.contains(data[i]))
+          data[w++] = data[i];
+      size = w;
+    }
+    else
+    {
+      IntBitmap cur = bitmap != null ? bitmap : IntBitmap.range(0, size);
+      setBitmap(cur.andNot(arr.toBitmap()));
+    }
+    return size < oldSize;
+  }
+
   private boolean removeAll_main(SortedIntSet arr)
   {
     int pos1 = 0;
@@ -266,26 +391,47 @@ public class SortedIntSet implements IntArray
       makeEmpty();
       return true;
     }
-    if (arr.data == null) //arr has all values, nothing to remove
+    if (arr.allValuesList()) //arr has all values, nothing to remove
     {
       if (this.biggest() < arr.size)
         return false;
+      else if (bitmap != null)
+      {
+        setBitmap(bitmap.and(IntBitmap.range(0, arr.size)));
+        return true;
+      }
       else
         return removeIf(x -> x >= arr.size);
     }
-    if (data == null) //this list contains all values, arr not empty and not full, copy values from arr
+    if (allValuesList()) //this list contains all values, arr not empty and not full, copy values from arr
     {
       int oldSize = size;
+      if (arr.bitmap != null)
+      {
+        if (arr.biggest() < oldSize)
+          setBitmap(arr.bitmap.copy());
+        else
+          setBitmap(arr.bitmap.and(IntBitmap.range(0, oldSize)));
+        return true;
+      }
       data = Arrays.copyOf(arr.data, arr.size);
       size = arr.size;
       sorted = arr.sorted;
       removeIf(x -> x >= oldSize);
       return true;
     }
+    if (bitmap != null || arr.bitmap != null)
+      return intersectBitmap(arr);
 
     //usual arrays with filled data[]
     sortDeduplicate();
     arr.sortDeduplicate();
+    if ((long)size * GALLOP_RATIO < arr.size)
+      return intersectWithBigger(arr);
+    if ((long)arr.size * GALLOP_RATIO < size)
+      return intersectWithSmaller(arr);
+    if (isParallel(arr))
+      return setParallelResult(SortedIntSet::intersectionPart, arr);
     int w = 0;
     int pos2 = 0;
     int idx;
@@ -308,8 +454,248 @@ public class SortedIntSet implements IntArray
     return true;
   }
 
+  /** Intersection cost is proportional to this.size * log(arr.size) */
+  private boolean intersectWithBigger(SortedIntSet arr)
+  {
+    int w = 0;
+    int pos2 = 0;
+    for (int idx = 0; idx < size; ++idx)
+    {
+      int item = data[idx];
+      pos2 = gallop(arr.data, pos2, arr.size, item);
+      if (pos2 >= arr.size)
+        break;
+      if (arr.data[pos2] == item)
+        data[w++] = item;
+    }
+    if (w == size)
+      return false;
+    size = w;
+    return true;
+  }
+
+  /** Intersection cost is proportional to arr.size * log(this.size) */
+  private boolean intersectWithSmaller(SortedIntSet arr)
+  {
+    int w = 0;
+    int pos1 = 0;
+    for (int idx = 0; idx < arr.size; ++idx)
+    {
+      int item = arr.data[idx];
+      pos1 = gallop(data, pos1, size, item);
+      if (pos1 >= size)
+        break;
+      if (data[pos1] == item)
+      {
+        data[w++] = item; //w <= pos1, so not processed items are not overwritten
+        ++pos1;
+      }
+    }
+    if (w == size)
+      return false;
+    size = w;
+    return true;
+  }
+
+  /**
+   * Returns first position at [from, till) with array[pos] &gt;= value (or 'till' if there is no such position).<br>
+   * Checks positions from+1, from+3, from+7... and then use binary search, so near values are found fast.
+   */
+  static int gallop(int[] array, int from, int till, int value)
+  {
+    if (from >= till || array[from] >= value)
+      return from;
+    int lo = from; //array[lo] < value
+    int step = 1;
+    while (lo + step < till && array[lo + step] < value)
+    {
+      lo += step;
+      step <<= 1;
+    }
+    int pos = Arrays.binarySearch(array, lo + 1, Math.min(lo + step, till), value);
+    return pos >= 0 ? pos : -pos - 1;
+  }
+
+  /**
+   * Intersect with all sets. Sets are applied from the smallest one, so each next step works with small result.<br>
+   * Returns true if this set was changed
+   */
+  public boolean intersectAll(Collection<SortedIntSet> sets)
+  {
+    List<SortedIntSet> bySize = new ArrayList<>(sets);
+    bySize.sort(Comparator.comparingInt(SortedIntSet::size));
+    boolean res = false;
+    for (SortedIntSet item: bySize)
+    {
+      if (isEmpty())
+        break;
+      res |= intersect(item);
+    }
+    return res;
+  }
+
+  private boolean isParallel(SortedIntSet arr)
+  {
+    return (long)size + arr.size >= PARALLEL_MIN_SIZE && ForkJoinPool.getCommonPoolParallelism() > 1;
+  }
+
+  /** Operation with this[from1, till1) and arr[from2, till2) parts of sorted arrays */
+  private interface PartOperation
+  {
+    int[] apply(int[] data1, int from1, int till1, int[] data2, int from2, int till2);
+  }
+
+  /**
+   * Split both sorted arrays to parts by values of this array and execute operation for each part at ForkJoinPool.
+   * Results are concatenated to data[]. Returns true if size is changed
+   */
+  private boolean setParallelResult(PartOperation operation, SortedIntSet arr)
+  {
+    final int parts = ForkJoinPool.getCommonPoolParallelism() * 4;
+    final int[] bounds1 = new int[parts + 1];
+    final int[] bounds2 = new int[parts + 1];
+    for (int i = 1; i < parts; ++i)
+    {
+      bounds1[i] = (int)((long)size * i / parts);
+      bounds2[i] = gallop(arr.data, bounds2[i - 1], arr.size, data[bounds1[i]]);
+    }
+    bounds1[parts] = size;
+    bounds2[parts] = arr.size;
+
+    final int[] data1 = data;
+    final int[] data2 = arr.data;
+    int[][] results = IntStream.range(0, parts).parallel()
+        .mapToObj(i -> operation.apply(data1, bounds1[i], bounds1[i + 1], data2, bounds2[i], bounds2[i + 1]))
+        .toArray(int[][]::new);
+
+    int total = 0;
+    for (int[] part: results)
+      total += part.length;
+    int[] res = total <= data.length ? data : new int[total]; //parts are already read, data[] might be reused
+    int w = 0;
+    for (int[] part: results)
+    {
+      System.arraycopy(part, 0, res, w, part.length);
+      w += part.length;
+    }
+    int oldSize = size;
+    data = res;
+    size = total;
+    sorted = true;
+    return size != oldSize;
+  }
+
+  private static int[] intersectionPart(int[] data1, int from1, int till1, int[] data2, int from2, int till2)
+  {
+    int[] res = new int[Math.min(till1 - from1, till2 - from2)];
+    int w = 0;
+    while (from1 < till1 && from2 < till2)
+    {
+      int item1 = data1[from1];
+      int item2 = data2[from2];
+      if (item1 < item2)
+        ++from1;
+      else if (item1 > item2)
+        ++from2;
+      else
+      {
+        res[w++] = item1;
+        ++from1;
+        ++from2;
+      }
+    }
+    return w == res.length ? res : Arrays.copyOf(res, w);
+  }
+
+  private static int[] unionPart(int[] data1, int from1, int till1, int[] data2, int from2, int till2)
+  {
+    int[] res = new int[till1 - from1 + till2 - from2];
+    int w = 0;
+    while (from1 < till1 && from2 < till2)
+    {
+      int item1 = data1[from1];
+      int item2 = data2[from2];
+      if (item1 <= item2)
+      {
+        res[w++] = item1;
+        ++from1;
+        if (item1 == item2)
+          ++from2;
+      }
+      else
+      {
+        res[w++] = item2;
+        ++from2;
+      }
+    }
+    System.arraycopy(data1, from1, res, w, till1 - from1);
+    w += till1 - from1;
+    System.arraycopy(data2, from2, res, w, till2 - from2);
+    w += till2 - from2;
+    return w == res.length ? res : Arrays.copyOf(res, w);
+  }
+
+  private static int[] differencePart(int[] data1, int from1, int till1, int[] data2, int from2, int till2)
+  {
+    int[] res = new int[till1 - from1];
+    int w = 0;
+    while (from1 < till1 && from2 < till2)
+    {
+      int item1 = data1[from1];
+      int item2 = data2[from2];
+      if (item1 < item2)
+      {
+        res[w++] = item1;
+        ++from1;
+      }
+      else if (item1 > item2)
+        ++from2;
+      else
+      {
+        ++from1;
+        ++from2;
+      }
+    }
+    System.arraycopy(data1, from1, res, w, till1 - from1);
+    w += till1 - from1;
+    return w == res.length ? res : Arrays.copyOf(res, w);
+  }
+
+  private boolean intersectBitmap(SortedIntSet arr)
+  {
+    int oldSize = size;
+    if (bitmap != null && arr.bitmap != null)
+      setBitmap(bitmap.and(arr.bitmap));
+    else if (bitmap != null) //keep arr items, that are in this bitmap
+    {
+      arr.sortDeduplicate();
+      int[] res = new int[arr.size];
+      int w = 0;
+      for (int i = 0; i < arr.size; ++i)
+        if (bitmap.contains(arr.data[i]))
+          res[w++] = arr.data[i];
+      bitmap = null;
+      data = res;
+      size = w;
+      sorted = true;
+      if (w == 0)
+        makeEmpty();
+    }
+    else
+    {
+      int w = 0;
+      for (int i = 0; i < size; ++i)
+        if (arr.bitmap.contains(data[i]))
+          data[w++] = data[i];
+      size = w;
+    }
+    return size < oldSize;
+  }
+
   private int biggest()
   {
+    if (bitmap != null)
+      return bitmap.last();
     if (data == null)
       return size - 1;
     if (sorted)
@@ -322,6 +708,15 @@ public class SortedIntSet implements IntArray
   {
     if (this == arr || arr.isEmpty())
       return;
+    if ((bitmap != null || arr.bitmap != null) && unionBitmap(arr))
+      return;
+    if (isEmpty())
+    {
+      data = arr.data == null? null : Arrays.copyOf(arr.data, arr.size);
+      size = arr.size;
+      sorted = arr.sorted;
+      return;
+    }
     if (allValuesList())
     {
       if (this.size > arr.biggest())
@@ -343,29 +738,277 @@ public class SortedIntSet implements IntArray
       return;
     }
 
-    sorted = false;
-    if (size + arr.size > data.length)
-      data = Arrays.copyOf(data, size + arr.size);
-    System.arraycopy(arr.data, 0, data, size, arr.size);
-    size += arr.size;
+    mergeSorted(arr);
+  }
+
+  /** Linear merge of two arrays with filled data[] */
+  private void mergeSorted(SortedIntSet arr)
+  {
+    sortDeduplicate();
+    arr.sortDeduplicate();
+    if (data[size - 1] < arr.data[0]) //just append
+    {
+      if (size + arr.size > data.length)
+        data = Arrays.copyOf(data, size + arr.size);
+      System.arraycopy(arr.data, 0, data, size, arr.size);
+      size += arr.size;
+      return;
+    }
+    if (isParallel(arr))
+    {
+      setParallelResult(SortedIntSet::unionPart, arr);
+      return;
+    }
+    int[] res = new int[size + arr.size];
+    int w = 0;
+    int pos1 = 0;
+    int pos2 = 0;
+    while (pos1 < size && pos2 < arr.size)
+    {
+      int item1 = data[pos1];
+      int item2 = arr.data[pos2];
+      if (item1 <= item2)
+      {
+        res[w++] = item1;
+        ++pos1;
+        if (item1 == item2)
+          ++pos2;
+      }
+      else
+      {
+        res[w++] = item2;
+        ++pos2;
+      }
+    }
+    System.arraycopy(data, pos1, res, w, size - pos1);
+    w += size - pos1;
+    System.arraycopy(arr.data, pos2, res, w, arr.size - pos2);
+    w += arr.size - pos2;
+    data = res;
+    size = w;
+    sorted = true;
+  }
+
+  /**
+   * Returns union of all sets. Arrays are merged at one pass with heap of current values, so cost is
+   * O(n * log(k)) for k sets with n values at total.<br>
+   * Sets are not changed (but might be sorted).
+   */
+  public static SortedIntSet unionAll(Collection<SortedIntSet> sets)
+  {
+    List<SortedIntSet> arrays = new ArrayList<>(sets.size());
+    SortedIntSet special = new SortedIntSet(); //all values lists and bitmaps are merged at usual way
+    int total = 0;
+    for (SortedIntSet item: sets)
+    {
+      if (item.isEmpty())
+        continue;
+      if (item.data == null)
+        special.union(item);
+      else
+      {
+        item.sortDeduplicate();
+        arrays.add(item);
+        total += item.size;
+      }
+    }
+    SortedIntSet res;
+    if (arrays.isEmpty())
+      return special;
+    else if (arrays.size() == 1)
+      res = arrays.get(0).copy();
+    else
+      res = mergeAll(arrays, total);
+    res.union(special);
+    return res;
+  }
+
+  private static SortedIntSet mergeAll(List<SortedIntSet> arrays, int total)
+  {
+    final int k = arrays.size();
+    final int[][] datas = new int[k][];
+    final int[] sizes = new int[k];
+    final int[] pos = new int[k];
+    final int[] heap = new int[k]; //numbers of arrays, ordered by current value
+    for (int i = 0; i < k; ++i)
+    {
+      datas[i] = arrays.get(i).data;
+      sizes[i] = arrays.get(i).size;
+      heap[i] = i;
+    }
+    for (int i = k / 2 - 1; i >= 0; --i)
+      siftDown(heap, k, i, datas, pos);
+
+    int[] res = new int[total];
+    int w = 0;
+    int heapSize = k;
+    while (heapSize > 0)
+    {
+      int top = heap[0];
+      int val = datas[top][pos[top]];
+      if (w == 0 || res[w - 1] != val)
+        res[w++] = val;
+      if (++pos[top] >= sizes[top])
+        heap[0] = heap[--heapSize];
+      if (heapSize > 0)
+        siftDown(heap, heapSize, 0, datas, pos);
+    }
+    return new SortedIntSet(res, w, true);
+  }
+
+  private static void siftDown(int[] heap, int heapSize, int idx, int[][] datas, int[] pos)
+  {
+    int item = heap[idx];
+    int val = datas[item][pos[item]];
+    while (true)
+    {
+      int child = idx * 2 + 1;
+      if (child >= heapSize)
+        break;
+      int childVal = datas[heap[child]][pos[heap[child]]];
+      if (child + 1 < heapSize)
+      {
+        int rightVal = datas[heap[child + 1]][pos[heap[child + 1]]];
+        if (rightVal < childVal)
+        {
+          ++child;
+          childVal = rightVal;
+        }
+      }
+      if (val <= childVal)
+        break;
+      heap[idx] = heap[child];
+      idx = child;
+    }
+    heap[idx] = item;
+  }
+
+  /** Union when any set is bitmap. Returns false if bitmap could not be used (negative values) */
+  private boolean unionBitmap(SortedIntSet arr)
+  {
+    if (isEmpty())
+    {
+      setBitmap(arr.bitmap.copy());
+      return true;
+    }
+    if (arr.allValuesList())
+    {
+      if (biggest() < arr.size)
+      {
+        bitmap = null;
+        size = arr.size;
+      }
+      else
+        setBitmap(bitmap.or(IntBitmap.range(0, arr.size)));
+      return true;
+    }
+    if (allValuesList())
+    {
+      if (arr.biggest() >= size)
+        setBitmap(IntBitmap.range(0, size).or(arr.bitmap));
+      return true;
+    }
+    SortedIntSet other = bitmap != null ? arr : this;
+    other.sortDeduplicate();
+    if (other.data != null && other.size > 0 && other.data[0] < 0)
+    {
+      unpackBitmap();
+      arr.unpackBitmap();
+      return false;
+    }
+    IntBitmap res = (bitmap != null ? bitmap : toBitmap()).or(arr.toBitmap());
+    data = null;
+    setBitmap(res);
+    return true;
+  }
+
+  /** Returns bitmap with all non-negative values of this set. Might return internal bitmap (do not modify it) */
+  private IntBitmap toBitmap()
+  {
+    if (bitmap != null)
+      return bitmap;
+    if (allValuesList())
+      return IntBitmap.range(0, size);
+    if (size == 0)
+      return new IntBitmap();
+    sortDeduplicate();
+    int from = 0;
+    while (from < size && data[from] < 0)
+      ++from;
+    return IntBitmap.of(data, from, size);
+  }
+
+  private void setBitmap(IntBitmap newBitmap)
+  {
+    if (newBitmap.isEmpty())
+    {
+      makeEmpty();
+      return;
+    }
+    data = null;
+    bitmap = newBitmap;
+    size = newBitmap.cardinality();
+    sorted = true;
+  }
+
+  /** Convert compressed set to usual sorted array */
+  private void unpackBitmap()
+  {
+    if (bitmap == null)
+      return;
+    data = bitmap.toArray();
+    size = data.length;
+    sorted = true;
+    bitmap = null;
+  }
+
+  /** Compress big dense (or consisting of long ranges) sorted array to bitmap */
+  private void packIfCompressible()
+  {
+    if (data == null || size < BITMAP_MIN_SIZE)
+      return;
+    sortDeduplicate();
+    if (size < BITMAP_MIN_SIZE || data[0] < 0)
+      return;
+    boolean dense = (long)data[size - 1] - data[0] < (long)size * BITMAP_DENSITY;
+    if (dense || countRuns() * BITMAP_RUN_LENGTH <= size)
+      setBitmap(IntBitmap.of(data, 0, size));
+  }
+
+  /** Count of contiguous ranges at sorted data[] */
+  private int countRuns()
+  {
+    int res = 1;
+    for (int i = 1; i < size; ++i)
+      if (data[i] != data[i - 1] + 1)
+        ++res;
+    return res;
   }
 
   private void makeEmpty()
   {
     size = 0;
     data = null;
+    bitmap = null;
   }
 
   public void clear()
   {
-    size = 0;
-    data = null;
+    makeEmpty();
   }
 
   public boolean remove(int val)
   {
     if (size == 0)
       return false;
+    else if (bitmap != null)
+    {
+      if (!bitmap.remove(val))
+        return false;
+      if (--size == 0)
+        makeEmpty();
+      return true;
+    }
     else if (data == null)
       return (val < size) && removeIf(i -> i == val);
 
@@ -381,6 +1024,16 @@ public class SortedIntSet implements IntArray
 
   public void add(int value)
   {
+    if (bitmap != null)
+    {
+      if (value >= 0)
+      {
+        bitmap.add(value);
+        size = bitmap.cardinality();
+        return;
+      }
+      unpackBitmap();
+    }
     if (allValuesList())
     {
       if (value > size)
@@ -421,30 +1074,58 @@ public class SortedIntSet implements IntArray
   {
     if (values.isEmpty())
       return;
+    unpackBitmap();
     if (allValuesList())
     {
       if (!values.stream().anyMatch(x -> x >= size))
         return;
       unpackData(values.size());
     }
-    else if (data == null)
+    else
+      reserve(values.size());
+    for (Integer val: values)
+      data[size++] = val;
+    sorted = false;
+  }
+
+  public void addAll(int... values)
+  {
+    if (values.length == 0)
+      return;
+    unpackBitmap();
+    if (allValuesList())
     {
-      data = new int[Math.max(values.size(), 128)];
+      if (!Arrays.stream(values).anyMatch(x -> x >= size))
+        return;
+      unpackData(values.length);
     }
-    else if (size + values.size() >= data.length)
+    else
+      reserve(values.length);
+    System.arraycopy(values, 0, data, size, values.length);
+    size += values.length;
+    sorted = false;
+  }
+
+  /** Ensure data[] has place for 'count' new items */
+  private void reserve(int count)
+  {
+    if (data == null)
+    {
+      data = new int[Math.max(count, 128)];
+    }
+    else if (size + count >= data.length)
     {
       sortDeduplicate(); //sometimes it remove duplicates
-      if (size + values.size() >= data.length)
-        data = Arrays.copyOf(data, Math.max(size + values.size(), size * 2));
+      if (size + count >= data.length)
+        data = Arrays.copyOf(data, Math.max(size + count, size * 2));
     }
-    for (Integer val: values)
-      data[size++] = val;
-    sorted = false;
   }
 
   @Override
   public int get(int index)
   {
+    if (bitmap != null)
+      return bitmap.select(index);
     if (data == null)
     {
       if (index < size)
@@ -462,6 +1143,8 @@ public class SortedIntSet implements IntArray
   public boolean contains(int val)
   {
     sortDeduplicate();
+    if (bitmap != null)
+      return bitmap.contains(val);
     if (data != null)
       return Arrays.binarySearch(data, 0, size, val) >= 0;
     else
@@ -490,7 +1173,8 @@ public class SortedIntSet implements IntArray
       else
       {
         sortDeduplicate(); //removes duplicates
-        if (data.length * 3./4. > size)
+        packIfCompressible();
+        if (data != null && data.length * 3./4. > size)
           data = Arrays.copyOf(data, size);
       }
     }
@@ -516,6 +1200,16 @@ public class SortedIntSet implements IntArray
     if (size == 0)
       return true;
 
+    if (bitmap != null || other.bitmap != null)
+    {
+      PrimitiveIterator.OfInt it1 = iterator();
+      PrimitiveIterator.OfInt it2 = other.iterator();
+      while (it1.hasNext())
+        if (it1.nextInt() != it2.nextInt())
+          return false;
+      return true;
+    }
+
     //check if one array is fullfilled till N (data=null) and other is [0..N-1]
     if (data == null || other.data == null)
       return containsAllValues(data, size) || containsAllValues(other.data, size);
@@ -575,6 +1269,8 @@ public class SortedIntSet implements IntArray
   {
     if (size == 0)
       return Collections.emptyList();
+    if (bitmap != null)
+      return bitmapRanges();
     if (data == null)
       return Collections.singletonList(new Range<>(0, size-1));
 
@@ -596,4 +1292,13 @@ public class SortedIntSet implements IntArray
     res.add(new Range<>(strt, prev));
     return res;
   }
+
+  private List<Range<Integer>> bitmapRanges()
+  {
+    int[] runs = bitmap.toRuns();
+    List<Range<Integer>> res = new ArrayList<>(runs.length / 2);
+    for (int i = 0; i < runs.length; i += 2)
+      res.add(new Range<>(runs[i], runs[i + 1]));
+    return res;
+  }
 }
\ No newline at end of file
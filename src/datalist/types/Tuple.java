@@ -0,0 +1,81 @@
+package datalist.types;
+
+import java.util.Arrays;
+
+/**
+ * Immutable list of comparable values, used as key of composite index (see {@link datalist.stream.TupleStreamer}).<br>
+ * Tuples are compared lexicographically, null values are bigger than others (as at indexes). Shorter tuple is less
+ * than longer one with the same prefix, so for index of (a, b) pairs rows with a == 5 and any b are found by range
+ * [Tuple.of(5), Tuple.of(5, null)], rows with a == 5 and b in [1, 10] are found by range [Tuple.of(5, 1), Tuple.of(5, 10)].
+ * @author SergeyT
+ */
+public final class Tuple implements Comparable<Tuple>
+{
+  private final Comparable<?>[] values;
+
+  private Tuple(Comparable<?>[] values)
+  {
+    this.values = values;
+  }
+
+  public static Tuple of(Comparable<?>... values)
+  {
+    return new Tuple(values.clone());
+  }
+
+  /** Returns count of values */
+  public int size()
+  {
+    return values.length;
+  }
+
+  /** Returns value at position 'idx' */
+  @SuppressWarnings("unchecked")
+  public <T extends Comparable<T>> T get(int idx)
+  {
+    return (T)values[idx];
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public int compareTo(Tuple other)
+  {
+    int len = Math.min(values.length, other.values.length);
+    for (int i = 0; i < len; ++i)
+    {
+      Comparable<Object> a = (Comparable<Object>)values[i];
+      Object b = other.values[i];
+      if (a == b)
+        continue;
+      if (a == null)
+        return 1;
+      if (b == null)
+        return -1;
+      int res = a.compareTo(b);
+      if (res != 0)
+        return res;
+    }
+    return Integer.compare(values.length, other.values.length);
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return Arrays.hashCode(values);
+  }
+
+  @Override
+  public boolean equals(Object obj)
+  {
+    return obj instanceof Tuple && Arrays.equals(values, ((Tuple)obj).values);
+  }
+
+  @Override
+  public String toString()
+  {
+    StringBuilder sb = new StringBuilder("(");
+    for (int i = 0; i < values.length; ++i)
+      sb.append(i == 0 ? "" : ", ").append(values[i]);
+    return sb.append(')').toString();
+  }
+}
@@ -0,0 +1,91 @@
+package datalist.index;
+
+import datalist.stream.DBDataStreamers;
+import datalist.types.SortedIntSet;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class BTreeIndexTest
+{
+  @Test
+  public void testAppendGenerated() throws IOException
+  {
+    Random rnd = new Random();
+    File idxFile = createTempFile();
+    List<Integer> keys = new ArrayList<>();
+    try (BTreeIndex<Integer> index = new BTreeIndex<>(idxFile, DBDataStreamers.ints_with_nulls, 100))
+    {
+      for (int batch = 0; batch < 20; ++batch)
+      {
+        List<KeyToIndex<Integer>> data = new ArrayList<>();
+        for (int i = rnd.nextInt(300); i >= 0; --i)
+        {
+          Integer key = rnd.nextInt(30) == 0 ? null : rnd.nextInt(500);
+          data.add(new KeyToIndex<>(key, keys.size()));
+          keys.add(key);
+        }
+        if (batch == 3)
+          index.recreate(KeyToIndexBuffer.of(allPairs(keys)).sort());
+        else
+          index.append(KeyToIndexBuffer.of(data).sort());
+        index.setIndexedRows(keys.size());
+        check(index, keys, rnd);
+      }
+    }
+    //close and reopen
+    try (BTreeIndex<Integer> index = new BTreeIndex<>(idxFile, DBDataStreamers.ints_with_nulls, 100))
+    {
+      assertEquals(keys.size(), index.indexedRows());
+      check(index, keys, rnd);
+      index.clear();
+      assertEquals(0, index.indexedRows());
+      assertEquals(0, index.valuesFor(0, 1000).size());
+    }
+  }
+
+  private List<KeyToIndex<Integer>> allPairs(List<Integer> keys)
+  {
+    List<KeyToIndex<Integer>> res = new ArrayList<>(keys.size());
+    for (int i = 0; i < keys.size(); ++i)
+      res.add(new KeyToIndex<>(keys.get(i), i));
+    return res;
+  }
+
+  private void check(BTreeIndex<Integer> index, List<Integer> keys, Random rnd)
+  {
+    for (int iter = 0; iter < 100; ++iter)
+    {
+      int min = rnd.nextInt(520) - 10;
+      int max = min + rnd.nextInt(iter % 2 == 0 ? 2 : 100);
+      SortedIntSet expected = new SortedIntSet();
+      for (int i = 0; i < keys.size(); ++i)
+        if (keys.get(i) != null && keys.get(i) >= min && keys.get(i) <= max)
+          expected.add(i);
+      assertEquals(expected, index.valuesFor(min, max));
+      assertEquals(expected.size(), index.countFor(min, max));
+    }
+    SortedIntSet nulls = new SortedIntSet();
+    TreeSet<Integer> allKeys = new TreeSet<>();
+    for (int i = 0; i < keys.size(); ++i)
+      if (keys.get(i) == null)
+        nulls.add(i);
+      else
+        allKeys.add(keys.get(i));
+    assertEquals(nulls, index.valuesFor((Integer)null));
+    assertEquals(new ArrayList<>(allKeys), index.allKeys(false));
+  }
+
+  private File createTempFile() throws IOException
+  {
+    File idxFile = Files.createTempFile("test-index-", "").toFile();
+    idxFile.deleteOnExit();
+    return idxFile;
+  }
+}
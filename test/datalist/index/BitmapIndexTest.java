@@ -0,0 +1,106 @@
+package datalist.index;
+
+import datalist.stream.DBDataStreamers;
+import datalist.types.IntBitmap;
+import datalist.types.Range;
+import datalist.types.SortedIntSet;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntPredicate;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+public class BitmapIndexTest
+{
+  @Test
+  public void testGeneral() throws IOException
+  {
+    Random rnd = new Random();
+    File idxFile = Files.createTempFile("test-index-", "").toFile();
+    idxFile.deleteOnExit();
+    int[] keys = new int[200000];
+    List<KeyToIndex<Integer>> data = new ArrayList<>(keys.length);
+    for (int i = 0; i < keys.length; ++i)
+    {
+      //dense, sparse and run-like keys
+      keys[i] = i >= 50000 && i < 90000 ? 7 : rnd.nextInt(1000) == 0 ? 0 : rnd.nextInt(5) + 1;
+      data.add(new KeyToIndex<>(keys[i] == 0 ? null : keys[i], i));
+    }
+    try (BitmapIndex<Integer> index = new BitmapIndex<>(idxFile, DBDataStreamers.ints_with_nulls))
+    {
+      index.recreate(data);
+      check(index, keys);
+    }
+    //close and reopen
+    try (BitmapIndex<Integer> index = new BitmapIndex<>(idxFile, DBDataStreamers.ints_with_nulls))
+    {
+      check(index, keys);
+      index.clear();
+      assertEquals(0, index.valuesFor(7).size());
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void check(BitmapIndex<Integer> index, int[] keys)
+  {
+    assertEquals(Arrays.asList(1, 2, 3, 4, 5, 7, null), index.allKeys(true));
+    assertEquals(expected(keys, x -> x == 7), index.valuesFor(7));
+    assertEquals(expected(keys, x -> x == 0), index.valuesFor((Integer)null));
+    assertEquals(expected(keys, x -> x == 1 || x == 7), index.valuesFor(Arrays.asList(1, 6, 7)));
+    assertEquals(expected(keys, x -> x >= 2 && x <= 4), index.valuesFor(2, 4));
+    assertEquals(expected(keys, x -> x >= 2 && x <= 4).size(), index.countFor(2, 4));
+    assertEquals(expected(keys, x -> x == 1 || x >= 5), index.valuesFor(new Range<>(1, 1), new Range<>(5, 10)));
+    assertEquals(expected(keys, x -> x % 2 == 1), index.valuesFor(x -> x != null && x % 2 == 1));
+    assertEquals(expected(keys, x -> x == 3).size(), index.countFor(3));
+    assertEquals(0, index.valuesFor(6).size());
+    try
+    {
+      index.countFor(5, 1);
+      fail("Inverse range");
+    }
+    catch (IllegalArgumentException ex)
+    {
+    }
+    try
+    {
+      index.valuesFor(1, null);
+      fail("Range with nulls");
+    }
+    catch (IllegalArgumentException ex)
+    {
+    }
+  }
+
+  private SortedIntSet expected(int[] keys, IntPredicate filter)
+  {
+    SortedIntSet res = new SortedIntSet();
+    for (int i = 0; i < keys.length; ++i)
+      if (filter.test(keys[i]))
+        res.add(i);
+    return res;
+  }
+
+  @Test
+  public void testSerialization()
+  {
+    Random rnd = new Random();
+    int[] rows = new int[100000];
+    int cnt = 0;
+    for (int i = 0; cnt < rows.length; ++i)
+      if (i < 30000 || i > 1000000 && i < 1040000 || rnd.nextInt(50) == 0)
+        rows[cnt++] = i;
+    IntBitmap bitmap = IntBitmap.of(rows, 0, rows.length);
+    ByteBuffer bb = ByteBuffer.allocate(bitmap.serializedSize());
+    bitmap.writeTo(bb);
+    assertEquals(0, bb.remaining());
+    bb.flip();
+    assertEquals(SortedIntSet.wrap(rows), SortedIntSet.wrap(IntBitmap.readFrom(bb)));
+  }
+}
@@ -0,0 +1,66 @@
+package datalist.index;
+
+import datalist.stream.DBDataStreamers;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class CoveringIndexTest
+{
+  @Test
+  public void testEntries() throws IOException
+  {
+    Random rnd = new Random();
+    File idxFile = Files.createTempFile("test-index-", "").toFile();
+    idxFile.deleteOnExit();
+    int[] keys = new int[3000];
+    List<KeyToIndex<Integer>> data = new ArrayList<>(keys.length);
+    for (int i = 0; i < keys.length; ++i)
+    {
+      keys[i] = rnd.nextInt(500);
+      data.add(new KeyToIndex<>(keys[i] == 0 ? null : keys[i], i));
+    }
+    try (CoveringIndex<Integer, Long> index = new CoveringIndex<>(idxFile, DBDataStreamers.ints_with_nulls, DBDataStreamers.longs_no_nulls))
+    {
+      //file with old bigger data
+      index.recreate(KeyToIndexBuffer.of(data), row -> 1L);
+      index.recreate(KeyToIndexBuffer.of(data.subList(0, 2000)), row -> row * 10L);
+      check(index, keys, 2000, rnd);
+    }
+    //close and reopen
+    try (CoveringIndex<Integer, Long> index = new CoveringIndex<>(idxFile, DBDataStreamers.ints_with_nulls, DBDataStreamers.longs_no_nulls))
+    {
+      check(index, keys, 2000, rnd);
+      assertEquals(8 + 2000 * (4 + 4 + 8), idxFile.length());
+    }
+  }
+
+  private void check(CoveringIndex<Integer, Long> index, int[] keys, int size, Random rnd)
+  {
+    for (int iter = 0; iter < 100; ++iter)
+    {
+      int min = rnd.nextInt(520) - 10;
+      int max = min + rnd.nextInt(20);
+      List<CoveringIndex.Entry<Integer, Long>> found = index.entriesFor(min, max);
+      assertEquals(index.valuesFor(min, max).size(), found.size());
+      Integer prev = null;
+      for (CoveringIndex.Entry<Integer, Long> entry: found)
+      {
+        assertEquals(keys[entry.getRow()], (int)entry.getKey());
+        assertEquals(entry.getRow() * 10L, (long)entry.getExtra());
+        assertTrue(entry.getKey() >= min && entry.getKey() <= max && entry.getRow() < size);
+        assertTrue(prev == null || prev <= entry.getKey());
+        prev = entry.getKey();
+      }
+    }
+    for (CoveringIndex.Entry<Integer, Long> entry: index.entriesFor((Integer)null))
+      assertEquals(0, keys[entry.getRow()]);
+    assertEquals(index.countFor((Integer)null), index.entriesFor((Integer)null).size());
+  }
+}
@@ -0,0 +1,86 @@
+package datalist.index;
+
+import datalist.stream.DBDataStreamers;
+import datalist.types.SortedIntSet;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class HashIndexTest
+{
+  @Test
+  public void testAppendAndReopen() throws IOException
+  {
+    Random rnd = new Random();
+    File idxFile = Files.createTempFile("test-index-", "").toFile();
+    idxFile.deleteOnExit();
+    List<Long> keys = new ArrayList<>();
+    try (HashIndex<Long> index = new HashIndex<>(idxFile, DBDataStreamers.longs_with_nulls))
+    {
+      for (int batch = 0; batch < 30; ++batch)
+      {
+        List<KeyToIndex<Long>> data = new ArrayList<>();
+        for (int i = rnd.nextInt(batch < 10 ? 5 : 500); i >= 0; --i)
+        {
+          //mostly unique keys, few duplicates and nulls
+          Long key = rnd.nextInt(100) == 0 ? null : rnd.nextInt(20) == 0 ? 7L : rnd.nextLong();
+          data.add(new KeyToIndex<>(key, keys.size()));
+          keys.add(key);
+        }
+        if (batch == 0)
+          index.recreate(data);
+        else
+          index.append(KeyToIndexBuffer.of(data).sort());
+        index.setIndexedRows(keys.size());
+        check(index, keys, rnd);
+      }
+    }
+    //close and reopen
+    try (HashIndex<Long> index = new HashIndex<>(idxFile, DBDataStreamers.longs_with_nulls))
+    {
+      assertEquals(keys.size(), index.indexedRows());
+      check(index, keys, rnd);
+      index.clear();
+      assertEquals(0, index.indexedRows());
+      assertEquals(0, index.valuesFor(7L).size());
+      index.append(KeyToIndexBuffer.of(Arrays.asList(new KeyToIndex<>(7L, 3))).sort());
+      assertEquals(SortedIntSet.wrap(new int[] {3}), index.valuesFor(7L));
+    }
+  }
+
+  private void check(HashIndex<Long> index, List<Long> keys, Random rnd)
+  {
+    for (int iter = 0; iter < 50; ++iter)
+    {
+      Long key = keys.get(rnd.nextInt(keys.size()));
+      assertEquals(expected(keys, key), index.valuesFor(key));
+      assertEquals(expected(keys, key).size(), index.countFor(key));
+    }
+    assertEquals(expected(keys, 7L), index.valuesFor(7L));
+    assertEquals(expected(keys, null), index.valuesFor((Long)null));
+    assertEquals(0, index.valuesFor(-1L).size());
+    SortedIntSet seven = expected(keys, 7L);
+    seven.union(expected(keys, null));
+    assertEquals(seven, index.valuesFor(Arrays.asList(7L, null, 7L)));
+    SortedIntSet positive = new SortedIntSet();
+    for (int i = 0; i < keys.size(); ++i)
+      if (keys.get(i) != null && keys.get(i) >= 0)
+        positive.add(i);
+    assertEquals(positive, index.valuesFor(0L, Long.MAX_VALUE));
+  }
+
+  private SortedIntSet expected(List<Long> keys, Long key)
+  {
+    SortedIntSet res = new SortedIntSet();
+    for (int i = 0; i < keys.size(); ++i)
+      if (key == null ? keys.get(i) == null : key.equals(keys.get(i)))
+        res.add(i);
+    return res;
+  }
+}
@@ -6,7 +6,9 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.PrimitiveIterator;
 import java.util.Random;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
@@ -75,6 +77,21 @@ public class SetIndexTest
       Assert.assertEquals(3, index.allKeys(true).size());
       Assert.assertEquals(2, index.allKeys(false).size());
       Assert.assertEquals(new SortedIntSet(0, 3), index.valuesFor((Double)null));
+      Assert.assertEquals(2, index.countFor((Double)null));
+      Assert.assertEquals(1, index.countFor(2.5));
+      Assert.assertEquals(2, index.countFor(1., 5.));
+      Assert.assertEquals(0, index.countFor(4., 5.));
+      Assert.assertEquals(2, index.countFor(2.5, 3.7));
+      Assert.assertEquals(1, index.countFor(2.5, 2.5));
+      Assert.assertEquals(new SortedIntSet(1, 2), index.valuesFor(1., 5.));
+      try
+      {
+        index.countFor(5., 1.);
+        fail("Inverse range");
+      }
+      catch (IllegalArgumentException ex)
+      {
+      }
     }
     //close and reopen
     try (SetIndex<Double> index = new SetIndex<>(idxFile, DBDataStreamers.doubles_with_nulls))
@@ -82,6 +99,10 @@ public class SetIndexTest
       Assert.assertEquals(3, index.allKeys(true).size());
       Assert.assertEquals(2, index.allKeys(false).size());
       Assert.assertEquals(new SortedIntSet(0, 3), index.valuesFor((Double)null));
+      Assert.assertEquals(2, index.countFor((Double)null));
+      Assert.assertEquals(1, index.countFor(2.5));
+      Assert.assertEquals(2, index.countFor(1., 5.));
+      Assert.assertEquals(0, index.countFor(4., 5.));
     }
   }
 
@@ -125,6 +146,66 @@ public class SetIndexTest
     }
   }
 
+  @Test
+  public void testSpilledBuffer() throws IOException
+  {
+    final int keysCount = 50;
+    final int itemsPerKey = 200;
+    Random rnd = new Random();
+    List<KeyToIndex<Integer>> map = createMap(keysCount, itemsPerKey);
+    Collections.shuffle(map, rnd);
+    try (KeyToIndexBuffer<Integer> buffer = new KeyToIndexBuffer<>(1000);
+         SetIndex<Integer> index = new SetIndex<>(createTempFile(), DBDataStreamers.ints_with_nulls))
+    {
+      for (KeyToIndex<Integer> pair: map)
+        buffer.add(pair.getKey(), pair.getIndex());
+      buffer.add(null, keysCount * itemsPerKey);
+      Assert.assertTrue(buffer.toString().contains("spilled"));
+      index.recreate(buffer.sort());
+      checkResult(index, keysCount, itemsPerKey);
+      Assert.assertEquals(keysCount * itemsPerKey, buffer.size() - 1);
+      Assert.assertNull(buffer.key(keysCount));
+      Assert.assertEquals(1, index.valuesFor((Integer)null).size());
+
+      int prev = -1;
+      for (PrimitiveIterator.OfInt it = buffer.rows(); it.hasNext();)
+      {
+        int row = it.nextInt();
+        if (prev >= 0 && row % keysCount == prev % keysCount)
+          Assert.assertTrue(row > prev);
+        prev = row;
+      }
+    }
+  }
+
+  @Test
+  public void testMergedBuffers() throws IOException
+  {
+    final int keysCount = 50;
+    final int itemsPerKey = 200;
+    List<KeyToIndex<Integer>> map = createMap(keysCount, itemsPerKey);
+    Collections.shuffle(map, new Random());
+    try (KeyToIndexBuffer<Integer> buffer = new KeyToIndexBuffer<>(1000);
+         KeyToIndexBuffer<Integer> spilled = new KeyToIndexBuffer<>(1000);
+         KeyToIndexBuffer<Integer> small = new KeyToIndexBuffer<>(1000);
+         SetIndex<Integer> index = new SetIndex<>(createTempFile(), DBDataStreamers.ints_with_nulls))
+    {
+      //chunks of rows are collected to own buffers, like at parallel rebuild of indexes
+      for (KeyToIndex<Integer> pair: map.subList(0, 3000))
+        buffer.add(pair.getKey(), pair.getIndex());
+      for (KeyToIndex<Integer> pair: map.subList(3000, 9500))
+        spilled.add(pair.getKey(), pair.getIndex());
+      for (KeyToIndex<Integer> pair: map.subList(9500, map.size()))
+        small.add(pair.getKey(), pair.getIndex());
+      Assert.assertTrue(spilled.toString().contains("spilled"));
+      buffer.addAll(spilled);
+      buffer.addAll(small);
+      Assert.assertEquals(keysCount * itemsPerKey, buffer.size());
+      index.recreate(buffer.sort());
+      checkResult(index, keysCount, itemsPerKey);
+    }
+  }
+
   private List<KeyToIndex<Integer>> createMap(final int keysCount, final int itemsPerKey)
   {
     List<KeyToIndex<Integer>> map = new ArrayList<>(keysCount * itemsPerKey);
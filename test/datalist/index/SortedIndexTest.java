@@ -6,6 +6,7 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
@@ -40,6 +41,7 @@ public class SortedIndexTest
                 vals = index.valuesFor(i + offset, j + offset);
                 assertEquals(String.format("size=%d, offs=%d, i=%d, j=%d", arraySize, offset, i, j), j - i + 1, vals.size());
               }
+              assertEquals(j - i + 1, index.countFor(i + offset, j + offset));
               int exp = i - 1;
               for (Integer val : vals)
                 if (++exp != val) //for easy debug
@@ -134,6 +136,10 @@ public class SortedIndexTest
       assertEquals(2.5, index.min(), 0.01);
       assertEquals(3.7, index.max(), 0.01);
       assertEquals(new SortedIntSet(0, 3), index.valuesFor((Double) null));
+      assertEquals(2, index.countFor((Double) null));
+      assertEquals(1, index.countFor(2.5));
+      assertEquals(2, index.countFor(1., 5.));
+      assertEquals(0, index.countFor(4., 5.));
     }
     //close and reopen
     try (SortedIndex<Double> index = new SortedIndex<>(idxFile, DBDataStreamers.doubles_with_nulls))
@@ -143,9 +149,96 @@ public class SortedIndexTest
       assertEquals(2.5, index.min(), 0.01);
       assertEquals(3.7, index.max(), 0.01);
       assertEquals(new SortedIntSet(0, 3), index.valuesFor((Double) null));
+      assertEquals(2, index.countFor((Double) null));
+      assertEquals(1, index.countFor(2.5));
+      assertEquals(2, index.countFor(1., 5.));
+      assertEquals(0, index.countFor(4., 5.));
     }
   }
 
+  @Test
+  public void testSmallBlocks() throws IOException
+  {
+    Random rnd = new Random();
+    File idxFile = createTempFile();
+    int[] keys = new int[5000];
+    ArrayList<KeyToIndex<Integer>> data = new ArrayList<>(keys.length);
+    for (int i = 0; i < keys.length; ++i)
+    {
+      keys[i] = rnd.nextInt(700);
+      data.add(new KeyToIndex<>(keys[i] == 0 ? null : keys[i], i));
+    }
+    try (SortedIndex<Integer> index = new SortedIndex<>(idxFile, DBDataStreamers.ints_with_nulls, 20, true))
+    {
+      index.recreate(data);
+      checkBlocks(index, keys, rnd);
+    }
+    //close and reopen
+    try (SortedIndex<Integer> index = new SortedIndex<>(idxFile, DBDataStreamers.ints_with_nulls, 13, true))
+    {
+      checkBlocks(index, keys, rnd);
+    }
+  }
+
+  @Test
+  public void testMerged() throws IOException
+  {
+    Random rnd = new Random();
+    File idxFile = createTempFile();
+    int[] keys = new int[5000];
+    List<List<KeyToIndex<Integer>>> data = new ArrayList<>();
+    for (int i = 0; i < 3; ++i)
+      data.add(new ArrayList<>());
+    for (int i = 0; i < keys.length; ++i)
+    {
+      keys[i] = rnd.nextInt(700);
+      data.get(rnd.nextInt(data.size())).add(new KeyToIndex<>(keys[i] == 0 ? null : keys[i], i));
+    }
+    List<SortedIndex<Integer>> sources = new ArrayList<>();
+    try (SortedIndex<Integer> index = new SortedIndex<>(idxFile, DBDataStreamers.ints_with_nulls, 20, false))
+    {
+      for (List<KeyToIndex<Integer>> part: data)
+      {
+        sources.add(new SortedIndex<>(createTempFile(), DBDataStreamers.ints_with_nulls, 20, false));
+        sources.get(sources.size() - 1).recreate(part);
+      }
+      sources.add(new SortedIndex<>(createTempFile(), DBDataStreamers.ints_with_nulls, 20, false)); //empty
+      index.recreateMerged(sources);
+      assertEquals(keys.length, index.pairsCount());
+      checkBlocks(index, keys, rnd);
+    }
+    finally
+    {
+      for (SortedIndex<Integer> source: sources)
+        source.close();
+    }
+    //close and reopen
+    try (SortedIndex<Integer> index = new SortedIndex<>(idxFile, DBDataStreamers.ints_with_nulls, 13, false))
+    {
+      checkBlocks(index, keys, rnd);
+    }
+  }
+
+  private void checkBlocks(SortedIndex<Integer> index, int[] keys, Random rnd)
+  {
+    for (int iter = 0; iter < 500; ++iter)
+    {
+      int min = rnd.nextInt(720) - 10;
+      int max = min + rnd.nextInt(iter % 2 == 0 ? 3 : 100);
+      SortedIntSet expected = new SortedIntSet();
+      for (int i = 0; i < keys.length; ++i)
+        if (keys[i] != 0 && keys[i] >= min && keys[i] <= max)
+          expected.add(i);
+      assertEquals(expected, index.valuesFor(min, max));
+      assertEquals(expected.size(), index.countFor(min, max));
+    }
+    SortedIntSet nulls = new SortedIntSet();
+    for (int i = 0; i < keys.length; ++i)
+      if (keys[i] == 0)
+        nulls.add(i);
+    assertEquals(nulls, index.valuesFor((Integer)null));
+  }
+
   private File createTempFile() throws IOException
   {
     File idxFile = Files.createTempFile("test-index-", "").toFile();
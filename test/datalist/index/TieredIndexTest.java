@@ -0,0 +1,111 @@
+package datalist.index;
+
+import datalist.stream.DBDataStreamers;
+import datalist.types.SortedIntSet;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class TieredIndexTest
+{
+  @Test
+  public void testRunsAndCompaction() throws IOException, InterruptedException
+  {
+    Random rnd = new Random();
+    File dir = Files.createTempDirectory("test-tiered-").toFile();
+    List<Integer> keys = new ArrayList<>();
+    try (TieredIndex<Integer> index = new TieredIndex<>(dir, DBDataStreamers.ints_with_nulls, 4))
+    {
+      for (int batch = 0; batch < 12; ++batch)
+      {
+        List<KeyToIndex<Integer>> data = new ArrayList<>();
+        for (int i = rnd.nextInt(300); i >= 0; --i)
+        {
+          Integer key = rnd.nextInt(30) == 0 ? null : rnd.nextInt(500);
+          data.add(new KeyToIndex<>(key, keys.size()));
+          keys.add(key);
+        }
+        if (batch == 0)
+          index.recreate(data);
+        else
+          index.append(KeyToIndexBuffer.of(data).sort());
+        index.setIndexedRows(keys.size());
+        check(index, keys, rnd);
+      }
+      //background compaction
+      for (int wait = 0; wait < 100 && index.runsCount() > 4; ++wait)
+        Thread.sleep(50);
+      assertTrue(index.runsCount() <= 4);
+      check(index, keys, rnd);
+    }
+    //close and reopen
+    try (TieredIndex<Integer> index = new TieredIndex<>(dir, DBDataStreamers.ints_with_nulls, 4))
+    {
+      assertEquals(keys.size(), index.indexedRows());
+      check(index, keys, rnd);
+      index.compact();
+      assertEquals(1, index.runsCount());
+      check(index, keys, rnd);
+      assertEquals(2, dir.list().length); //the only run and list of runs
+    }
+  }
+
+  @Test
+  public void testBaseRunIsKept() throws IOException, InterruptedException
+  {
+    File dir = Files.createTempDirectory("test-tiered-").toFile();
+    List<Integer> keys = new ArrayList<>();
+    try (TieredIndex<Integer> index = new TieredIndex<>(dir, DBDataStreamers.ints_with_nulls, 4))
+    {
+      List<KeyToIndex<Integer>> base = new ArrayList<>();
+      for (int i = 0; i < 5000; ++i)
+      {
+        base.add(new KeyToIndex<>(i % 500, keys.size()));
+        keys.add(i % 500);
+      }
+      index.recreate(base);
+      for (int batch = 0; batch < 20; ++batch)
+      {
+        List<KeyToIndex<Integer>> data = new ArrayList<>();
+        for (int i = 0; i < 100; ++i)
+        {
+          data.add(new KeyToIndex<>(i * 5, keys.size()));
+          keys.add(i * 5);
+        }
+        index.append(KeyToIndexBuffer.of(data).sort());
+      }
+      for (int wait = 0; wait < 100 && index.runsCount() > 4; ++wait)
+        Thread.sleep(50);
+      assertTrue(index.runsCount() <= 4);
+      assertTrue(new File(dir, "run-0").exists()); //small runs are merged without the base one
+      check(index, keys, new Random());
+    }
+  }
+
+  private void check(TieredIndex<Integer> index, List<Integer> keys, Random rnd)
+  {
+    for (int iter = 0; iter < 50; ++iter)
+    {
+      int min = rnd.nextInt(520) - 10;
+      int max = min + rnd.nextInt(iter % 2 == 0 ? 2 : 100);
+      SortedIntSet expected = new SortedIntSet();
+      for (int i = 0; i < keys.size(); ++i)
+        if (keys.get(i) != null && keys.get(i) >= min && keys.get(i) <= max)
+          expected.add(i);
+      assertEquals(expected, index.valuesFor(min, max));
+      assertEquals(expected.size(), index.countFor(min, max));
+    }
+    SortedIntSet nulls = new SortedIntSet();
+    for (int i = 0; i < keys.size(); ++i)
+      if (keys.get(i) == null)
+        nulls.add(i);
+    assertEquals(nulls, index.valuesFor((Integer)null));
+    assertEquals(nulls.size(), index.countFor((Integer)null));
+  }
+}
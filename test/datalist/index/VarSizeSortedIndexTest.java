@@ -0,0 +1,105 @@
+package datalist.index;
+
+import datalist.stream.DBDataStreamers;
+import datalist.types.SortedIntSet;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class VarSizeSortedIndexTest
+{
+  private static final String[] PREFIXES = {"", "a", "ab", "abc", "b", "ба", "бал", "x😀", "x😁"};
+
+  @Test
+  public void testGenerated() throws IOException
+  {
+    Random rnd = new Random();
+    String[] keys = new String[5000];
+    List<KeyToIndex<String>> data = new ArrayList<>(keys.length);
+    for (int i = 0; i < keys.length; ++i)
+    {
+      keys[i] = rnd.nextInt(50) == 0 ? null : PREFIXES[rnd.nextInt(PREFIXES.length)] + rnd.nextInt(300);
+      data.add(new KeyToIndex<>(keys[i], i));
+    }
+    File idxFile = createTempFile();
+    try (VarSizeSortedIndex<String> index = new VarSizeSortedIndex<>(idxFile, DBDataStreamers.strings, true, 100))
+    {
+      index.recreate(data);
+      check(index, keys, rnd);
+    }
+    //close and reopen
+    try (VarSizeSortedIndex<String> index = VarSizeSortedIndex.strings(idxFile))
+    {
+      check(index, keys, rnd);
+    }
+  }
+
+  private void check(VarSizeSortedIndex<String> index, String[] keys, Random rnd)
+  {
+    for (int iter = 0; iter < 300; ++iter)
+    {
+      String min = PREFIXES[rnd.nextInt(PREFIXES.length)] + rnd.nextInt(300);
+      String max = iter % 2 == 0 ? min : min + "5";
+      SortedIntSet expected = new SortedIntSet();
+      for (int i = 0; i < keys.length; ++i)
+        if (keys[i] != null && keys[i].compareTo(min) >= 0 && keys[i].compareTo(max) <= 0)
+          expected.add(i);
+      assertEquals(expected, index.valuesFor(min, max));
+      assertEquals(expected.size(), index.countFor(min, max));
+      if (min.equals(max))
+        assertEquals(expected.size(), index.countFor(min));
+
+      String prefix = PREFIXES[rnd.nextInt(PREFIXES.length)] + (iter % 3 == 0 ? "" : rnd.nextInt(30));
+      expected = new SortedIntSet();
+      for (int i = 0; i < keys.length; ++i)
+        if (keys[i] != null && keys[i].startsWith(prefix))
+          expected.add(i);
+      assertEquals(expected, index.valuesStartingWith(prefix));
+    }
+    SortedIntSet nulls = new SortedIntSet();
+    for (int i = 0; i < keys.length; ++i)
+      if (keys[i] == null)
+        nulls.add(i);
+    assertEquals(nulls, index.valuesFor((String)null));
+    assertEquals(nulls.size(), index.countFor((String)null));
+
+    List<String> all = index.allKeys(true);
+    assertTrue(all.get(all.size() - 1) == null);
+    List<String> sorted = new ArrayList<>(all.subList(0, all.size() - 1));
+    sorted.sort(null);
+    assertEquals(sorted, all.subList(0, all.size() - 1));
+    assertEquals(keys.length, index.valuesFor(all).size());
+  }
+
+  @Test
+  public void testDoubles() throws IOException
+  {
+    List<KeyToIndex<Double>> data = Arrays.asList(new KeyToIndex<>(3.5, 0), new KeyToIndex<>(-1., 1),
+      new KeyToIndex<>(3.5, 2), new KeyToIndex<>(null, 3), new KeyToIndex<>(7., 4));
+    try (VarSizeSortedIndex<Double> index = new VarSizeSortedIndex<>(createTempFile(), DBDataStreamers.doubles_with_nulls))
+    {
+      index.recreate(new ArrayList<>(data));
+      assertEquals(new SortedIntSet(0, 2), index.valuesFor(3.5));
+      assertEquals(new SortedIntSet(0, 1, 2), index.valuesFor(-5., 4.));
+      assertEquals(SortedIntSet.wrap(new int[] {3}), index.valuesFor((Double)null));
+      assertEquals(3, index.allKeys(false).size());
+      index.clear();
+      assertTrue(index.isEmpty());
+      assertEquals(0, index.valuesFor(-5., 4.).size());
+    }
+  }
+
+  private File createTempFile() throws IOException
+  {
+    File idxFile = Files.createTempFile("test-index-", "").toFile();
+    idxFile.deleteOnExit();
+    return idxFile;
+  }
+}
@@ -1,13 +1,17 @@
 package datalist.io;
 
 import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import static java.nio.file.StandardOpenOption.CREATE;
 import static java.nio.file.StandardOpenOption.READ;
 import static java.nio.file.StandardOpenOption.WRITE;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 import org.junit.Test;
 
 public class ReadBufferTest
@@ -40,6 +44,99 @@ public class ReadBufferTest
     }
   }
 
+  @Test
+  public void testBigArrays() throws IOException
+  {
+    byte[] big = new byte[100];
+    for (int i = 0; i < big.length; ++i)
+      big[i] = (byte)i;
+    String text = new String(new char[50]).replace('\0', 'x');
+    FileChannel fc = ChannelBuilder.temporary("test-buff-", "").forRead().forWrite().deleteOnClose().build();
+    try (WriteBuffer wb = new WriteBuffer(fc, 10))
+    {
+      wb.putInt(1);
+      wb.put(big);
+      wb.putString(text);
+      wb.put(ByteBuffer.wrap(big));
+      wb.putInt(2);
+    }
+
+    try (ReadBuffer rb = new ReadBuffer(fc, 10))
+    {
+      assertEquals(1, rb.getInt());
+      byte[] read = new byte[big.length];
+      rb.get(read);
+      assertArrayEquals(big, read);
+      assertEquals(text, rb.getString());
+      ByteBuffer bb = ByteBuffer.allocate(big.length);
+      rb.get(bb);
+      assertArrayEquals(big, bb.array());
+      assertEquals(2, rb.getInt());
+      assertEquals(-1, rb.read(read, 0, 10));
+    }
+  }
+
+  @Test
+  public void testGrowingBuffer() throws IOException
+  {
+    FileChannel fc = ChannelBuilder.temporary("test-buff-", "").forRead().forWrite().deleteOnClose().build();
+    try (WriteBuffer wb = new WriteBuffer(fc, 16))
+    {
+      for (int i = 0; i < 10000; ++i)
+        wb.putInt(i);
+    }
+
+    try (ReadBuffer rb = new ReadBuffer(fc, 16))
+    {
+      for (int i = 0; i < 10000; ++i)
+        assertEquals(i, rb.getInt());
+      for (int i = 9999; i >= 0; i -= 7)
+        assertEquals(i, rb.position(i * 4).getInt());
+      rb.position(0);
+      for (int i = 0; i < 10000; ++i)
+        assertEquals(i, rb.getInt());
+    }
+  }
+
+  @Test
+  public void testReadPastEnd() throws IOException
+  {
+    FileChannel fc = ChannelBuilder.temporary("test-buff-", "").forRead().forWrite().deleteOnClose().build();
+    try (WriteBuffer wb = new WriteBuffer(fc, 16))
+    {
+      for (int i = 0; i < 10; ++i)
+        wb.putInt(i);
+    }
+
+    for (int size: new int[]{20, 60})
+    {
+      //small reads are buffered, big ones are direct
+      try (ReadBuffer rb = new ReadBuffer(fc, 32).sequential())
+      {
+        rb.get(new byte[36]);
+        try
+        {
+          rb.get(new byte[size]);
+          fail("Read " + size + " bytes past the end");
+        }
+        catch (BufferUnderflowException ex)
+        {
+          //expected
+        }
+        rb.position(36);
+        try
+        {
+          rb.get(ByteBuffer.allocate(size));
+          fail("Read " + size + " bytes past the end");
+        }
+        catch (BufferUnderflowException ex)
+        {
+          //expected
+        }
+      }
+    }
+  }
+
   private FileChannel prepareTestData() throws IOException
   {
     Path testFile = Files.createTempFile("test-", "-buff");
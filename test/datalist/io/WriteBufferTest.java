@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.nio.channels.FileChannel;
 import java.util.Random;
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import org.junit.Test;
 
 public class WriteBufferTest
@@ -28,4 +29,43 @@ public class WriteBufferTest
       assertArrayEquals(buff, buff2);
     }
   }
+
+  @Test
+  public void putVariableLength() throws IOException
+  {
+    int[] ints = {0, 1, 127, 128, 16383, 16384, -1, Integer.MAX_VALUE, Integer.MIN_VALUE};
+    int[] sorted = {3, 5, 100, 101, 102, 5000, 1_000_000, 1_000_001};
+    long[] longs = {0, 40, 1L << 40, Long.MAX_VALUE, Long.MIN_VALUE, -5};
+
+    FileChannel fc = ChannelBuilder.temporary("test-buff-", "").forRead().forWrite().deleteOnClose().build();
+    try (WriteBuffer wb = new WriteBuffer(fc, 16))
+    {
+      for (int val: ints)
+        wb.putVarInt(val);
+      for (long val: longs)
+        wb.putZigZagLong(val);
+      wb.putZigZagInts(ints, 0, ints.length);
+      wb.putDeltaInts(sorted, 0, sorted.length);
+      wb.putDeltaLongs(longs, 0, longs.length);
+      wb.putInt(42);
+    }
+
+    try (ReadBuffer rb = new ReadBuffer(fc, 16))
+    {
+      for (int val: ints)
+        assertEquals(val, rb.getVarInt());
+      for (long val: longs)
+        assertEquals(val, rb.getZigZagLong());
+      int[] ints2 = new int[ints.length];
+      rb.getZigZagInts(ints2, 0, ints2.length);
+      assertArrayEquals(ints, ints2);
+      int[] sorted2 = new int[sorted.length];
+      rb.getDeltaInts(sorted2, 0, sorted2.length);
+      assertArrayEquals(sorted, sorted2);
+      long[] longs2 = new long[longs.length];
+      rb.getDeltaLongs(longs2, 0, longs2.length);
+      assertArrayEquals(longs, longs2);
+      assertEquals(42, rb.getInt());
+    }
+  }
 }
@@ -1,11 +1,16 @@
 package datalist.list;
 
+import datalist.index.BTreeIndex;
+import datalist.index.CoveringIndex;
+import datalist.index.SetIndex;
 import datalist.index.SortedIndex;
 import datalist.io.ReadBuffer;
 import datalist.io.WriteBuffer;
 import datalist.stream.DBDataStreamer;
 import datalist.stream.DBDataStreamers;
+import datalist.stream.TupleStreamer;
 import datalist.types.SortedIntSet;
+import datalist.types.Tuple;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.util.Arrays;
@@ -14,8 +19,11 @@ import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import org.junit.Test;
 
 public class DataListTest
@@ -136,6 +144,208 @@ public class DataListTest
     }
   }
 
+  @Test
+  public void testSublistRanges() throws IOException
+  {
+    Database db = Database.temporary();
+    try (DataList<String> stringDB = new DataList<>(db, "test", DBDataStreamers.strings))
+    {
+      for (int i = 0; i < 2000; ++i)
+        stringDB.add("item " + i);
+      SortedIntSet indexes = new SortedIntSet(5, 1999);
+      for (int i = 100; i < 1000; ++i)
+        indexes.add(i);
+      for (int i = 0; i < 4; ++i) //short runs are read through cache
+      {
+        indexes.add(1200 + i);
+        if (i < 3)
+          indexes.add(1500 + i * 2);
+      }
+      int pos = 0;
+      for (String item: stringDB.sublist(indexes))
+        assertEquals("item " + indexes.get(pos++), item);
+      assertEquals(indexes.size(), pos);
+    }
+  }
+
+  @Test
+  public void testAsyncWhere() throws IOException
+  {
+    Database db = Database.temporary();
+    try (DataList<Long> longDB = new DataList<>(db, "test", DBDataStreamers.longs_no_nulls))
+    {
+      SortedIndex<Long> mod200 = new SortedIndex<>(Files.createTempFile("test-", "").toFile(), DBDataStreamers.longs_no_nulls);
+      SortedIndex<Long> value = new SortedIndex<>(Files.createTempFile("test-", "").toFile(), DBDataStreamers.longs_no_nulls);
+      longDB.withIndex(mod200, x->x%200, true).withIndex(value, x->x, true);
+      longDB.addAll(Arrays.<Long>asList(100L, 200L, 300L, 400L, 300L, 200L, 100L));
+      Where sync = longDB.where(mod200, 100L).and(value, 150L, 400L);
+      Where async = new Where(longDB).async().and(mod200, 100L).and(value, 150L, 400L);
+      assertEquals(new SortedIntSet(2, 4), async.getIndexes());
+      assertEquals(sync.getIndexes(), async.getIndexes());
+      assertTrue(new Where(longDB).async().and(mod200, 100L).and(value, 400L).isEmpty());
+    }
+  }
+
+  @Test
+  public void testListenersAfterIndexes() throws IOException
+  {
+    Database db = Database.temporary();
+    try (DataList<Long> longDB = new DataList<>(db, "test", DBDataStreamers.longs_no_nulls))
+    {
+      SortedIndex<Long> mod200 = new SortedIndex<>(Files.createTempFile("test-", "").toFile(), DBDataStreamers.longs_no_nulls);
+      longDB.withIndex(mod200, x->x%200, true);
+      AtomicInteger found = new AtomicInteger(-1);
+      longDB.addListener(new DataListChangedListener<Long>()
+      {
+        @Override
+        public void cleaned(DataList<Long> list)
+        {
+        }
+
+        @Override
+        public void dataAdded(DataList<Long> list, int from, int till)
+        {
+          throw new IllegalStateException("Failed listener");
+        }
+      });
+      longDB.addListener(new DataListChangedListener<Long>()
+      {
+        @Override
+        public void cleaned(DataList<Long> list)
+        {
+        }
+
+        @Override
+        public void dataAdded(DataList<Long> list, int from, int till)
+        {
+          try
+          {
+            Thread.sleep(50); //finishes after the failed listener
+          }
+          catch (InterruptedException ex)
+          {
+            Thread.currentThread().interrupt();
+          }
+          found.set(list.where(mod200, 100L).getIndexes().size());
+        }
+      });
+      try
+      {
+        longDB.addAll(Arrays.<Long>asList(100L, 200L, 300L, 400L, 300L));
+        fail("Listener error is lost");
+      }
+      catch (IllegalStateException ex)
+      {
+        assertEquals("Failed listener", ex.getMessage());
+      }
+      assertEquals(3, found.get()); //index is ready, when other listeners are called, and all of them are finished
+    }
+  }
+
+  @Test
+  public void testAppendableIndexOfExistingRows() throws IOException
+  {
+    Database db = Database.temporary();
+    try (DataList<Long> longDB = new DataList<>(db, "test", DBDataStreamers.longs_no_nulls))
+    {
+      longDB.addAll(Arrays.<Long>asList(100L, 200L, 300L));
+      BTreeIndex<Long> mod200 = new BTreeIndex<>(Files.createTempFile("test-", "").toFile(), DBDataStreamers.longs_no_nulls);
+      longDB.withIndex(mod200, x->x%200, true);
+      longDB.addAll(Arrays.<Long>asList(400L, 500L));
+      assertEquals(new SortedIntSet(0, 2, 4), longDB.where(mod200, 100L).getIndexes()); //old rows are indexed too
+      assertEquals(5, mod200.indexedRows());
+      longDB.addAll(Arrays.<Long>asList(700L));
+      assertEquals(new SortedIntSet(0, 2, 4, 5), longDB.where(mod200, 100L).getIndexes());
+      assertEquals(6, mod200.indexedRows());
+      mod200.setIndexedRows(2); //index is behind, for example after failed update
+      longDB.addAll(Arrays.<Long>asList(800L));
+      assertEquals(new SortedIntSet(1, 3, 6), longDB.where(mod200, 0L).getIndexes());
+      assertEquals(7, mod200.indexedRows());
+    }
+  }
+
+  @Test
+  public void testWhereCount() throws IOException
+  {
+    Database db = Database.temporary();
+    try (DataList<Long> longDB = new DataList<>(db, "test", DBDataStreamers.longs_no_nulls))
+    {
+      SetIndex<Long> mod200 = new SetIndex<>(Files.createTempFile("test-", "").toFile(), DBDataStreamers.longs_no_nulls);
+      SortedIndex<Long> value = new SortedIndex<>(Files.createTempFile("test-", "").toFile(), DBDataStreamers.longs_no_nulls);
+      longDB.withIndex(mod200, x->x%200, true).withIndex(value, x->x, true);
+      longDB.addAll(Arrays.<Long>asList(100L, 200L, 300L, 400L, 300L, 200L, 100L));
+      assertEquals(4, longDB.where(mod200, 100L).count());
+      assertEquals(4, longDB.where(value, 150L, 350L).count());
+      assertEquals(2, longDB.where(mod200, 100L).and(value, 150L, 400L).count());
+      Where where = longDB.where(value, 300L);
+      assertEquals(2, where.count());
+      assertEquals(new SortedIntSet(2, 4), where.getIndexes());
+      assertEquals(2, where.count());
+      assertTrue(longDB.where(value, 500L).isEmpty());
+    }
+  }
+
+  @Test
+  public void testAppendIndex() throws IOException
+  {
+    Database db = Database.temporary();
+    try (DataList<Long> longDB = new DataList<>(db, "test", DBDataStreamers.longs_no_nulls))
+    {
+      BTreeIndex<Long> mod200 = new BTreeIndex<>(Files.createTempFile("test-", "").toFile(), DBDataStreamers.longs_no_nulls);
+      SortedIndex<Long> value = new SortedIndex<>(Files.createTempFile("test-", "").toFile(), DBDataStreamers.longs_no_nulls);
+      longDB.withIndex(mod200, x->x%200, true).withIndex(value, x->x, true);
+      longDB.addAll(Arrays.<Long>asList(100L, 200L, 300L, 400L));
+      longDB.addAll(Arrays.<Long>asList(300L, 200L, 100L));
+      assertEquals(new SortedIntSet(0, 2, 4, 6), longDB.where(mod200, 100L).getIndexes());
+      assertEquals(new SortedIntSet(1, 5), longDB.where(value, 200L).getIndexes());
+      assertEquals(2, longDB.where(mod200, 100L).and(value, 150L, 400L).count());
+    }
+  }
+
+  @Test
+  public void testCompositeIndex() throws IOException
+  {
+    Database db = Database.temporary();
+    try (DataList<Long> longDB = new DataList<>(db, "test", DBDataStreamers.longs_no_nulls))
+    {
+      SortedIndex<Tuple> index = new SortedIndex<>(Files.createTempFile("test-", "").toFile(),
+        TupleStreamer.fixed(DBDataStreamers.longs_no_nulls, DBDataStreamers.longs_no_nulls));
+      longDB.withIndex(index, x -> Tuple.of(x % 3, x / 10), true);
+      for (long i = 0; i < 100; ++i)
+        longDB.add(i);
+      SortedIntSet expected = new SortedIntSet();
+      for (int i = 20; i < 50; ++i)
+        if (i % 3 == 1)
+          expected.add(i);
+      assertEquals(expected, longDB.where(index, Tuple.of(1L, 2L), Tuple.of(1L, 4L)).getIndexes());
+      assertEquals(33, longDB.where(index, Tuple.of(2L), Tuple.of(2L, null)).count());
+    }
+  }
+
+  @Test
+  public void testCoveringIndex() throws IOException
+  {
+    Database db = Database.temporary();
+    try (DataList<Long> longDB = new DataList<>(db, "test", DBDataStreamers.longs_no_nulls))
+    {
+      CoveringIndex<Long, Tuple> index = new CoveringIndex<>(Files.createTempFile("test-", "").toFile(),
+        DBDataStreamers.longs_no_nulls, TupleStreamer.fixed(DBDataStreamers.longs_no_nulls, DBDataStreamers.ints_no_nulls));
+      longDB.withCoveringIndex(index, x -> x % 200, x -> Tuple.of(x, (int)(x / 100)), true);
+      longDB.addAll(Arrays.<Long>asList(100L, 200L, 300L, 400L));
+      longDB.addAll(Arrays.<Long>asList(300L, 500L));
+      List<CoveringIndex.Entry<Long, Tuple>> found = index.entriesFor(100L);
+      assertEquals(4, found.size());
+      for (CoveringIndex.Entry<Long, Tuple> entry: found)
+        assertEquals(Tuple.of(longDB.get(entry.getRow()), (int)(longDB.get(entry.getRow()) / 100)), entry.getExtra());
+      assertEquals(new SortedIntSet(0, 2, 4, 5), longDB.where(index, 100L).getIndexes());
+      assertEquals(2, longDB.where(index, 0L, 50L).count());
+      assertTrue(longDB.hasIndex(index));
+      assertTrue(longDB.getIndexes().isEmpty());
+      longDB.clear();
+      assertEquals(0, index.pairsCount());
+    }
+  }
+
   @Test
   public void testComplexIndex() throws IOException
   {
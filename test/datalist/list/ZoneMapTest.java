@@ -0,0 +1,99 @@
+package datalist.list;
+
+import datalist.index.SortedIndex;
+import datalist.stream.DBDataStreamers;
+import datalist.types.SortedIntSet;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class ZoneMapTest
+{
+  @Test
+  public void testSortedData() throws IOException
+  {
+    Random rnd = new Random();
+    Database db = Database.temporary();
+    File zonesFile = Files.createTempFile("test-zones-", "").toFile();
+    List<Long> values = new ArrayList<>();
+    try (DataList<Long> list = new DataList<>(db, "test", DBDataStreamers.longs_no_nulls);
+      ZoneMap<Long> zones = new ZoneMap<>(zonesFile, DBDataStreamers.longs_no_nulls, 100))
+    {
+      list.withZoneMap(zones, ZoneMapTest::mapper);
+      try (DataList<Long>.DataAppender appender = list.getAppender(77))
+      {
+        //nearly sorted values, like dates of imported data
+        for (int i = 0; i < 2000; ++i)
+        {
+          long value = i + (long)rnd.nextInt(30);
+          appender.addItem(value);
+          values.add(value);
+        }
+      }
+      assertEquals(2000, zones.rowsCount());
+      assertEquals(values.stream().filter(x -> mapper(x) == null).count(), zones.nullsCount());
+      check(list, zones, values, rnd);
+      SortedIntSet candidates = zones.candidates(500L, 510L, list.size());
+      assertTrue(candidates.size() <= 300);
+      assertTrue(candidates.isBitmap()); //blocks are kept as ranges
+      SortedIntSet nulls = new SortedIntSet();
+      for (int i = 0; i < values.size(); ++i)
+        if (mapper(values.get(i)) == null)
+          nulls.add(i);
+      assertEquals(nulls, new Where(list).andNull(zones).getIndexes());
+      assertEquals(SortedIntSet.wrap(new int[]{2000, 2001}), zones.candidates(-10L, -5L, list.size() + 2)); //rows without statistics
+
+      SortedIndex<Long> index = new SortedIndex<>(Files.createTempFile("test-", "").toFile(), DBDataStreamers.longs_no_nulls);
+      list.withIndex(index, x -> x % 2, true);
+      list.add(1L);
+      values.add(1L);
+      assertEquals(2001, zones.rowsCount());
+      assertEquals(expected(values, 900, 1100, 1L), list.where(index, 1L).and(zones, 900L, 1100L).getIndexes());
+      assertEquals(expected(values, 0, 10, 1L), new Where(list).async().and(zones, 0L, 10L).and(index, 1L).getIndexes());
+    }
+    //reopen and add zone map to the existing list
+    try (DataList<Long> list = new DataList<>(db, "test", DBDataStreamers.longs_no_nulls);
+      ZoneMap<Long> zones = new ZoneMap<>(zonesFile, DBDataStreamers.longs_no_nulls, 100);
+      ZoneMap<Long> other = new ZoneMap<>(Files.createTempFile("test-zones-", "").toFile(), DBDataStreamers.longs_no_nulls, 64))
+    {
+      list.withZoneMap(zones, ZoneMapTest::mapper).withZoneMap(other, ZoneMapTest::mapper);
+      assertEquals(2001, zones.rowsCount());
+      assertEquals(2001, other.rowsCount());
+      check(list, zones, values, rnd);
+      check(list, other, values, rnd);
+      list.clear();
+      assertEquals(0, zones.rowsCount());
+    }
+  }
+
+  /** Values with 7 at the end are not known */
+  private static Long mapper(Long value)
+  {
+    return value % 10 == 7 ? null : value;
+  }
+
+  private void check(DataList<Long> list, ZoneMap<Long> zones, List<Long> values, Random rnd)
+  {
+    for (int iter = 0; iter < 20; ++iter)
+    {
+      long min = rnd.nextInt(2100) - 50;
+      long max = min + rnd.nextInt(100);
+      assertEquals(expected(values, min, max, null), list.where(zones, min, max).getIndexes());
+    }
+  }
+
+  private SortedIntSet expected(List<Long> values, long min, long max, Long mod2)
+  {
+    SortedIntSet res = new SortedIntSet();
+    for (int i = 0; i < values.size(); ++i)
+      if (mapper(values.get(i)) != null && values.get(i) >= min && values.get(i) <= max && (mod2 == null || values.get(i) % 2 == mod2))
+        res.add(i);
+    return res;
+  }
+}
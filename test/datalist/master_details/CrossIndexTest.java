@@ -1,6 +1,10 @@
 package datalist.master_details;
 
+import datalist.io.ChannelBuilder;
+import datalist.io.ChannelRegistry;
+import datalist.io.WriteBuffer;
 import datalist.types.SortedIntSet;
+import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import static org.junit.Assert.assertEquals;
@@ -31,6 +35,54 @@ public class CrossIndexTest
     checkIntersection(cross, mastOne, detAll, mastOne, detOne);
   }
 
+  @Test
+  public void testSharedChannel() throws IOException
+  {
+    File storage = Files.createTempFile("cross-", "-index").toFile();
+    try (ChannelRegistry channels = new ChannelRegistry())
+    {
+      CrossIndex cross = new CrossIndex(storage, channels);
+      int[] indexes = new int[] {1, 1, 2, 2, 0};
+      cross.add(indexes, 2);
+      cross.add(new int[] {2, 2, 0}, 3);
+      assertEquals(1, channels.size());
+      cross.reload();
+      assertEquals(1, channels.size());
+      checkIntersection(cross, SortedIntSet.allValues(3), new SortedIntSet(new int[]{2, 3}),
+        new SortedIntSet(new int[]{2}), new SortedIntSet(new int[]{2, 3}));
+
+      assertEquals(5, new CrossIndex(storage).size());
+      cross.clean();
+      assertEquals(0, new CrossIndex(storage, channels).size());
+    }
+  }
+
+  @Test
+  public void testRegistryClosedInUse() throws IOException
+  {
+    File storage = Files.createTempFile("cross-", "-index").toFile();
+    storage.deleteOnExit();
+    ChannelRegistry channels = new ChannelRegistry();
+    try (WriteBuffer inUse = new ChannelBuilder(storage).shared(channels).writer())
+    {
+      channels.close(); //channel in use stays opened till release
+      try (WriteBuffer reopened = new ChannelBuilder(storage).shared(channels).writer())
+      {
+        inUse.putInt(1);
+        inUse.flush();
+        reopened.position(4);
+        reopened.putInt(2);
+        reopened.flush();
+        assertEquals(1, channels.size());
+      }
+      assertEquals(1, channels.size()); //release of the old channel does not touch the new one
+    }
+    assertEquals(1, channels.size());
+    assertEquals(8, storage.length());
+    channels.close();
+    assertEquals(0, channels.size());
+  }
+
   private void checkIntersection(CrossIndex cross, SortedIntSet initialMaster, SortedIntSet initialDetails, SortedIntSet resultMaster, SortedIntSet resultDetails)
   {
     SortedIntSet master = initialMaster.copy();
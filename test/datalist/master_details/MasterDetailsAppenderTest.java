@@ -0,0 +1,43 @@
+package datalist.master_details;
+
+import datalist.index.HashIndex;
+import datalist.list.DataList;
+import datalist.list.Database;
+import datalist.stream.DBDataStreamers;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class MasterDetailsAppenderTest
+{
+  @Test
+  public void testKeyIndex() throws IOException
+  {
+    Database db = Database.temporary();
+    try (DataList<Long> master = new DataList<>(db, "master", DBDataStreamers.longs_no_nulls);
+      DataList<String> details = new DataList<>(db, "details", DBDataStreamers.strings))
+    {
+      HashIndex<Long> keys = new HashIndex<>(Files.createTempFile("test-", "").toFile(), DBDataStreamers.longs_no_nulls);
+      master.withIndex(keys, x -> x, false);
+      MasterDetailsList<Long, String, Map.Entry<Long, String>> list = new MasterDetailsList<>(master, details, SimpleEntry::new);
+      for (int pass = 0; pass < 3; ++pass)
+        try (MasterDetailsAppender<Long, String, Long> appender = MasterDetailsAppender.withKeyIndex(list, x -> x, keys, 7))
+        {
+          for (long i = 0; i < 100; ++i)
+            appender.addItem(i % (30 * (pass + 1)), "item " + i);
+        }
+      assertEquals(90, master.size());
+      assertEquals(300, details.size());
+      for (int i = 0; i < master.size(); ++i)
+        assertEquals(i, (long)master.get(i));
+      for (int i = 0; i < list.size(); ++i)
+      {
+        assertEquals("item " + i % 100, list.get(i).getValue());
+        assertEquals(i % 100 % (30 * (i / 100 + 1)), (long)list.get(i).getKey());
+      }
+    }
+  }
+}
@@ -0,0 +1,41 @@
+package datalist.master_details;
+
+import datalist.types.SortedIntSet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+public class MasterDetailsIndexesTest
+{
+  @Test
+  public void testOffHeap()
+  {
+    MasterDetailsIndexes heap = new MasterDetailsIndexes(new SortedIntSet(1, 5, 7), SortedIntSet.allValues(100_000));
+    MasterDetailsIndexes offHeap = heap.toOffHeap();
+    assertFalse(heap.isOffHeap());
+    assertTrue(offHeap.isOffHeap());
+    assertEquals(heap.getMasterIndexes(), offHeap.getMasterIndexes());
+    assertEquals(heap.getDetailsIndexes(), offHeap.getDetailsIndexes());
+    assertEquals(5, offHeap.getMasterRows().get(1));
+    assertEquals(new SortedIntSet(5, 7),
+      offHeap.createIntersection(new MasterDetailsIndexes(new SortedIntSet(5, 7, 9), SortedIntSet.wrap(new int[]{3}))).getMasterIndexes());
+
+    MasterDetailsIndexes copy = offHeap.toOffHeap(); //shares memory
+    offHeap.close();
+    assertEquals(99_999, copy.getDetailsRows().get(99_999));
+    copy.close();
+    try
+    {
+      copy.getDetailsRows().get(0);
+      fail("Memory is not released");
+    }
+    catch (IllegalStateException ex)
+    {
+      //expected
+    }
+    heap.close(); //nothing happens
+    assertEquals(3, heap.getMasterRows().size());
+  }
+}
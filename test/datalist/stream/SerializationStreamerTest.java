@@ -26,4 +26,24 @@ public class SerializationStreamerTest
       assertEquals(countries2, list.get(1));
     }
   }
+
+  @Test
+  public void testBigObjects() throws IOException
+  {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 5000; ++i)
+      sb.append(i).append(' ');
+    List<String> big = Arrays.asList(sb.toString(), "Small", sb.reverse().toString());
+    List<String> small = Arrays.asList("Monaco");
+
+    Database db = Database.temporary();
+    try (DataList<List<String>> list = new DataList<>(db, "test", new SerializationStreamer<List<String>>()))
+    {
+      list.addAll(Arrays.asList(small, big, small, big));
+      assertEquals(big, list.get(1));
+      assertEquals(small, list.get(2));
+      assertEquals(big, list.get(3));
+      assertEquals(small, list.get(0));
+    }
+  }
 }
@@ -0,0 +1,53 @@
+package datalist.stream;
+
+import datalist.io.ReadBuffer;
+import datalist.io.WriteBuffer;
+import datalist.types.Tuple;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class TupleStreamerTest
+{
+  @Test
+  public void testReadWrite() throws IOException
+  {
+    Path testFile = Files.createTempFile("test-", "-buff");
+    testFile.toFile().deleteOnExit();
+    FixedSizeDataStreamer<Tuple> streamer = TupleStreamer.fixed(DBDataStreamers.ints_with_nulls, DBDataStreamers.longs_with_nulls);
+    assertEquals(12, streamer.itemSize());
+    List<Tuple> data = Arrays.asList(Tuple.of(1, 2L), Tuple.of(null, 3L), Tuple.of(4, null));
+    try (FileChannel fc = FileChannel.open(testFile, CREATE, WRITE, READ))
+    {
+      try (WriteBuffer wb = new WriteBuffer(fc, 100))
+      {
+        for (Tuple tuple: data)
+          streamer.write(wb, tuple);
+      }
+      assertEquals(36, fc.size());
+      ReadBuffer rb = new ReadBuffer(fc, 10);
+      for (Tuple tuple: data)
+        assertEquals(tuple, streamer.read(rb));
+    }
+  }
+
+  @Test
+  public void testOrder()
+  {
+    assertTrue(Tuple.of(1, 5).compareTo(Tuple.of(2, 1)) < 0);
+    assertTrue(Tuple.of(1, 5).compareTo(Tuple.of(1, 6)) < 0);
+    assertTrue(Tuple.of(1, 5).compareTo(Tuple.of(1, null)) < 0);
+    assertTrue(Tuple.of(1).compareTo(Tuple.of(1, 0)) < 0);
+    assertTrue(Tuple.of(1, null).compareTo(Tuple.of(2)) < 0);
+    assertEquals(0, Tuple.of("a", 1).compareTo(Tuple.of("a", 1)));
+  }
+}
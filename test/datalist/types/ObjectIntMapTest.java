@@ -0,0 +1,95 @@
+package datalist.types;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class ObjectIntMapTest
+{
+  @Test
+  public void testGenerated()
+  {
+    Random rnd = new Random();
+    ObjectIntMap<Integer> map = new ObjectIntMap<>();
+    Map<Integer, Integer> expected = new HashMap<>();
+    for (int i = 0; i < 100000; ++i)
+    {
+      Integer key = rnd.nextInt(1000) == 0 ? null : rnd.nextInt(5000);
+      switch (rnd.nextInt(3))
+      {
+        case 0:
+          map.put(key, i);
+          expected.put(key, i);
+          break;
+        case 1:
+          assertEquals(expected.merge(key, 1, Integer::sum).intValue(), map.addTo(key, 1));
+          break;
+        default:
+          assertEquals(expected.remove(key) != null, map.remove(key));
+      }
+      assertEquals(expected.size(), map.size());
+    }
+    for (int i = 0; i < 5000; ++i)
+    {
+      assertEquals(expected.containsKey(i), map.containsKey(i));
+      assertEquals(expected.getOrDefault(i, -1).intValue(), map.get(i, -1));
+    }
+    assertEquals(expected.keySet(), map.keySet());
+  }
+
+  @Test
+  public void testInsertionOrder()
+  {
+    CounterMap<String> counter = new CounterMap<>();
+    counter.addAll(Arrays.asList("c", "a", "b", "a", null, "c", "a"));
+    assertEquals(Arrays.asList("c", "a", "b", null), new ArrayList<>(counter.keySet()));
+    assertEquals(3, counter.getCount("a"));
+    assertEquals(1, counter.getCount(null));
+    assertEquals("a", counter.getBiggest());
+    assertTrue(counter.removeLessThan(2));
+    assertEquals(Arrays.asList("c", "a"), new ArrayList<>(counter.keySet()));
+    assertTrue(counter.decrementOrZero("c"));
+    assertFalse(counter.decrementOrZero("c"));
+    assertFalse(counter.containsKey("c"));
+
+    List<String> keys = new ArrayList<>();
+    ObjectIntMap<String> map = new ObjectIntMap<>(2);
+    for (int i = 0; i < 100; ++i)
+      map.put("key" + i, i);
+    for (Iterator<String> it = map.keySet().iterator(); it.hasNext();)
+      if (it.next().endsWith("5"))
+        it.remove();
+    map.put("key5", 5); //added to the end
+    map.forEach((key, value) -> keys.add(key));
+    assertEquals(91, keys.size());
+    assertEquals("key4", keys.get(4));
+    assertEquals("key5", keys.get(90));
+  }
+
+  @Test
+  public void testLongKeys()
+  {
+    Random rnd = new Random();
+    LongIntMap map = new LongIntMap();
+    Map<Long, Integer> expected = new HashMap<>();
+    for (int i = 0; i < 100000; ++i)
+    {
+      long key = rnd.nextInt(100) == 0 ? Long.MIN_VALUE : rnd.nextLong() % 20000;
+      map.put(key, i);
+      expected.put(key, i);
+    }
+    assertEquals(expected.size(), map.size());
+    for (Map.Entry<Long, Integer> item: expected.entrySet())
+      assertEquals(item.getValue().intValue(), map.get(item.getKey(), -1));
+    assertFalse(map.containsKey(20000));
+    assertEquals(-1, map.get(20000, -1));
+  }
+}
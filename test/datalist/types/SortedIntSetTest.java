@@ -1,7 +1,10 @@
 package datalist.types;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
+import java.util.PrimitiveIterator;
 import java.util.Random;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -234,6 +237,289 @@ public class SortedIntSetTest
     }
   }
 
+  @Test
+  public void testGallopIntersectGenerated()
+  {
+    Random rnd = new Random();
+    int iterations = 1000;
+    while (--iterations >= 0)
+    {
+      SortedIntSet small = genArray(rnd);
+      SortedIntSet big = new SortedIntSet();
+      for (int i = 0; i < 100; ++i)
+        if (rnd.nextBoolean())
+          big.add(i);
+      for (int i = rnd.nextInt(3000); i >= 0; --i)
+        big.add(rnd.nextInt(100000));
+
+      SortedIntSet res1 = small.copy();
+      res1.intersect(big);
+      SortedIntSet res2 = big.copy();
+      res2.intersect(small);
+      assertEquals(res1, res2);
+      for (Integer num: small)
+        assertEquals(big.contains(num), res1.contains(num));
+    }
+  }
+
+  @Test
+  public void testIntersectAll()
+  {
+    SortedIntSet res = SortedIntSet.allValues(1000);
+    SortedIntSet even = new SortedIntSet();
+    for (int i = 0; i < 1000; i += 2)
+      even.add(i);
+    assertTrue(res.intersectAll(Arrays.asList(even, new SortedIntSet(3, 4, 10, 11, 500, 2000))));
+    assertEquals(new SortedIntSet(4, 10, 500), res);
+  }
+
+  @Test
+  public void testUnionAllGenerated()
+  {
+    Random rnd = new Random();
+    int iterations = 1000;
+    while (--iterations >= 0)
+    {
+      List<SortedIntSet> sets = new ArrayList<>();
+      SortedIntSet expected = new SortedIntSet();
+      for (int i = rnd.nextInt(10); i >= 0; --i)
+      {
+        SortedIntSet item = rnd.nextInt(10) == 0 ? SortedIntSet.allValues(rnd.nextInt(50)) : genArray(rnd);
+        sets.add(item);
+        expected.union(item.copy());
+      }
+      SortedIntSet res = SortedIntSet.unionAll(sets);
+      assertEquals(expected, res);
+      for (SortedIntSet item: sets)
+        for (Integer num: item)
+          assertTrue(res.contains(num));
+    }
+  }
+
+  @Test
+  public void testPrimitiveIteration()
+  {
+    SortedIntSet dense = new SortedIntSet();
+    for (int i = 0; i < 20000; i += 2)
+      dense.add(i);
+    dense.trim();
+    assertTrue(dense.isBitmap());
+    for (SortedIntSet set: Arrays.asList(new SortedIntSet(7, 3, 5, 3), SortedIntSet.allValues(5), dense))
+    {
+      int[] expected = new int[set.size()];
+      for (int i = 0; i < expected.length; ++i)
+        expected[i] = set.get(i);
+      assertTrue(Arrays.equals(expected, set.stream().toArray()));
+      int[] collected = new int[expected.length];
+      int[] pos = new int[1];
+      set.forEachInt(x -> collected[pos[0]++] = x);
+      assertTrue(Arrays.equals(expected, collected));
+      PrimitiveIterator.OfInt it = set.iterator();
+      for (int val: expected)
+        assertEquals(val, it.nextInt());
+      assertTrue(!it.hasNext());
+    }
+    dense.removeIf(x -> x % 4 == 0);
+    assertEquals(5000, dense.size());
+    assertEquals(2, dense.get(0));
+  }
+
+  @Test
+  public void testParallelOperations()
+  {
+    Random rnd = new Random();
+    BitSet bits1 = new BitSet();
+    BitSet bits2 = new BitSet();
+    SortedIntSet set1 = genSparse(rnd, bits1);
+    SortedIntSet set2 = genSparse(rnd, bits2);
+
+    SortedIntSet and = set1.copy();
+    and.intersect(set2);
+    SortedIntSet or = set1.copy();
+    or.union(set2);
+    SortedIntSet andNot = set1.copy();
+    andNot.removeAll(set2);
+
+    BitSet expected = (BitSet)bits1.clone();
+    expected.and(bits2);
+    assertTrue(Arrays.equals(expected.stream().toArray(), and.stream().toArray()));
+    expected = (BitSet)bits1.clone();
+    expected.or(bits2);
+    assertTrue(Arrays.equals(expected.stream().toArray(), or.stream().toArray()));
+    expected = (BitSet)bits1.clone();
+    expected.andNot(bits2);
+    assertTrue(Arrays.equals(expected.stream().toArray(), andNot.stream().toArray()));
+  }
+
+  /** About 700K of unsorted values with duplicates, too sparse for bitmap */
+  private SortedIntSet genSparse(Random rnd, BitSet bits)
+  {
+    SortedIntSet res = new SortedIntSet();
+    for (int i = 0; i < 700_000; ++i)
+    {
+      int val = rnd.nextInt(20_000_000);
+      res.add(val);
+      bits.set(val);
+    }
+    return res;
+  }
+
+  @Test
+  public void testRunsBitmap()
+  {
+    SortedIntSet set = new SortedIntSet();
+    for (int i = 0; i < 10000; ++i)
+    {
+      set.add(1_000_000 + i);
+      set.add(500_000_000 + i);
+    }
+    set.add(7);
+    set.trim();
+    assertTrue(set.isBitmap());
+    List<Range<Integer>> ranges = set.getRanges();
+    assertEquals(3, ranges.size());
+    assertEquals(7, (int)ranges.get(0).getMax());
+    assertEquals(1_000_000, (int)ranges.get(1).getMin());
+    assertEquals(1_009_999, (int)ranges.get(1).getMax());
+    assertEquals(500_009_999, (int)ranges.get(2).getMax());
+
+    SortedIntSet other = new SortedIntSet();
+    for (int i = 5000; i < 15000; ++i)
+      other.add(1_000_000 + i);
+    other.trim();
+    assertTrue(other.isBitmap());
+    set.intersect(other);
+    assertEquals(Arrays.asList(new Range<>(1_005_000, 1_009_999)), set.getRanges());
+  }
+
+  @Test
+  public void testBitmapOfRuns()
+  {
+    int[] runs = {5, 9, 10, 20, 65530, 131_080, 200_000, 200_000};
+    IntBitmap bitmap = IntBitmap.ofRuns(runs, runs.length);
+    SortedIntSet expected = new SortedIntSet();
+    for (int i = 0; i < runs.length; i += 2)
+      for (int val = runs[i]; val <= runs[i + 1]; ++val)
+        expected.add(val);
+    assertEquals(expected, SortedIntSet.wrap(bitmap));
+    assertTrue(Arrays.equals(new int[]{5, 20, 65530, 131_080, 200_000, 200_000}, bitmap.toRuns()));
+  }
+
+  @Test
+  public void testOffHeap()
+  {
+    Random rnd = new Random();
+    SortedIntSet set = new SortedIntSet();
+    for (int i = 0; i < 100_000; ++i)
+      set.add(rnd.nextInt(10_000_000));
+    OffHeapIntSet offHeap = set.toOffHeap();
+    assertEquals(set.size(), offHeap.size());
+    for (int i = 0; i < set.size(); i += 7)
+    {
+      assertEquals(set.get(i), offHeap.get(i));
+      assertTrue(offHeap.contains(set.get(i)));
+      assertEquals(set.contains(set.get(i) + 1), offHeap.contains(set.get(i) + 1));
+    }
+    assertEquals(set, offHeap.toSortedIntSet());
+
+    offHeap.retain();
+    offHeap.close();
+    assertEquals(set.get(0), offHeap.get(0)); //still referenced
+    offHeap.close();
+    try
+    {
+      offHeap.get(0);
+      fail("Closed set is accessible");
+    }
+    catch (IllegalStateException ex)
+    {
+      //expected
+    }
+  }
+
+  @Test
+  public void testRemoveAllSmallerFullfilled()
+  {
+    SortedIntSet res = new SortedIntSet(3, 5, 10, 12);
+    res.removeAll(SortedIntSet.allValues(6));
+    assertEquals(new SortedIntSet(10, 12), res);
+  }
+
+  @Test
+  public void testBitmapGenerated()
+  {
+    Random rnd = new Random();
+    int iterations = 50;
+    while (--iterations >= 0)
+    {
+      boolean[] flags1 = new boolean[30000];
+      boolean[] flags2 = new boolean[30000];
+      SortedIntSet set1 = genDense(rnd, flags1);
+      SortedIntSet set2 = genDense(rnd, flags2);
+      assertTrue(set1.isBitmap());
+      assertTrue(set2.isBitmap());
+
+      SortedIntSet and = set1.copy();
+      and.intersect(set2);
+      SortedIntSet or = set1.copy();
+      or.union(set2);
+      SortedIntSet andNot = set1.copy();
+      andNot.removeAll(set2);
+      SortedIntSet full = SortedIntSet.allValues(20000);
+      full.intersect(set1);
+      SortedIntSet small = new SortedIntSet(5, 100, 15000, 29999, 40000);
+      small.intersect(set1);
+
+      SortedIntSet expAnd = new SortedIntSet();
+      SortedIntSet expOr = new SortedIntSet();
+      SortedIntSet expAndNot = new SortedIntSet();
+      SortedIntSet expFull = new SortedIntSet();
+      for (int i = 0; i < flags1.length; ++i)
+      {
+        if (flags1[i] && flags2[i])
+          expAnd.add(i);
+        if (flags1[i] || flags2[i])
+          expOr.add(i);
+        if (flags1[i] && !flags2[i])
+          expAndNot.add(i);
+        if (flags1[i] && i < 20000)
+          expFull.add(i);
+      }
+      assertEquals(expAnd, and);
+      assertEquals(expOr, or);
+      assertEquals(expAndNot, andNot);
+      assertEquals(expFull, full);
+      assertEquals(set1.size(), set1.getRanges().stream().mapToInt(r -> r.getMax() - r.getMin() + 1).sum());
+      for (int i = 0; i < small.size(); ++i)
+        assertTrue(flags1[small.get(i)]);
+      for (int i = 0; i < expAnd.size(); i += 97)
+        assertEquals(expAnd.get(i), and.get(i));
+    }
+  }
+
+  private SortedIntSet genDense(Random rnd, boolean[] flags)
+  {
+    SortedIntSet res = new SortedIntSet(flags.length);
+    int from = rnd.nextInt(1000);
+    while (from < flags.length)
+    {
+      //mix of runs and random values to get all kinds of containers
+      int till = Math.min(flags.length, from + rnd.nextInt(3000));
+      boolean isRun = rnd.nextBoolean();
+      for (int i = from; i < till; ++i)
+        if (isRun || rnd.nextInt(3) == 0)
+        {
+          flags[i] = true;
+          res.add(i);
+        }
+      from = till + rnd.nextInt(500);
+    }
+    res.add(0);
+    res.add(1);
+    flags[0] = flags[1] = true;
+    return res.trim();
+  }
+
   private SortedIntSet genArray(Random rnd)
   {
     int size = rnd.nextInt(100) + 1;